@@ -0,0 +1,60 @@
+package atm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The AuthenticatorBenchmark class measures a successful authentication, which is dominated by
+ * the PBKDF2 hash, at a cheap iteration count and at the production default. The threaded
+ * variant shows how the bounded verifier pool shares the hashing work.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthenticatorBenchmark {
+    @Param({"1000", "600000"})
+    public int iterations;
+
+    private Authenticator authenticator;
+
+    @Setup(Level.Trial)
+    public void open() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        authenticator = new Authenticator(iterations, cores, 1024);
+        authenticator.addUser("7654321", "benchmark-password");
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        authenticator.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean authenticate() {
+        return authenticator.authenticate("7654321", "benchmark-password");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean authenticateConcurrent() {
+        return authenticator.authenticate("7654321", "benchmark-password");
+    }
+}
@@ -0,0 +1,107 @@
+package atm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The BalanceBenchmark class measures a deposit followed by a withdrawal, so the balance stays
+ * level, with no history, synchronous history and background history. The threaded variants
+ * either share one account or give every thread its own; readWhileWriting measures lock-free
+ * balance reads next to a writer on the same account.
+ * Balances and histories are recreated every iteration to keep history memory bounded.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BalanceBenchmark {
+    @Param({"none", "sync", "async"})
+    public String history;
+
+    /**
+     * Account state, either shared by all threads or owned by one.
+     */
+    public abstract static class Account {
+        HistoryRecorder recorder;
+        Balance balance;
+
+        @Setup(Level.Iteration)
+        public void open(BalanceBenchmark benchmark) {
+            recorder = benchmark.history.equals("async") ? new HistoryRecorder() : null;
+            balance = benchmark.history.equals("none")
+                    ? new Balance(0.0, null)
+                    : new Balance(0.0, new History(), recorder);
+        }
+
+        @TearDown(Level.Iteration)
+        public void close() {
+            if (recorder != null) {
+                recorder.close();
+            }
+        }
+    }
+
+    /** One account shared by every benchmark thread. */
+    @State(Scope.Benchmark)
+    public static class SharedAccount extends Account {
+    }
+
+    /** One account per benchmark thread. */
+    @State(Scope.Thread)
+    public static class OwnAccount extends Account {
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean depositWithdraw(OwnAccount account) {
+        account.balance.depositCents(500);
+        return account.balance.withdrawCents(500);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean depositWithdrawSharedAccount(SharedAccount account) {
+        account.balance.depositCents(500);
+        return account.balance.withdrawCents(500);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean depositWithdrawOwnAccounts(OwnAccount account) {
+        account.balance.depositCents(500);
+        return account.balance.withdrawCents(500);
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(3)
+    public long readBalance(SharedAccount account) {
+        return account.balance.getBalanceCents();
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(1)
+    public boolean writeBalance(SharedAccount account) {
+        account.balance.depositCents(500);
+        return account.balance.withdrawCents(500);
+    }
+}
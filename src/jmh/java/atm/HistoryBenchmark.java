@@ -0,0 +1,173 @@
+package atm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The HistoryBenchmark class measures recording, filtering and rendering on histories of
+ * several sizes. Only the rendering benchmarks run with and without the cached timestamp
+ * prefix, since recording and counting never format a timestamp. filteredHistoryLinearScan is
+ * the baseline for the indexed filteredHistoryView over the same entries. Prefilled entries are spaced
+ * 100 ms apart, so about ten consecutive entries share each second.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class HistoryBenchmark {
+    private static final int PAGE = 100; // Entries rendered by the page benchmarks
+    private static final long START = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+
+    /**
+     * A history prefilled once per trial, shared by all threads.
+     */
+    @State(Scope.Benchmark)
+    public abstract static class Prefilled {
+        @Param({"1000", "100000", "10000000"})
+        public int size;
+
+        HeapHistoryStore store; // Columns of history, for the linear-scan baseline
+        History history;
+
+        @Setup(Level.Trial)
+        public void fill() {
+            store = new HeapHistoryStore();
+            history = new History(store, Clock.systemUTC(), cacheTimestamps());
+            for (int i = 0; i < size; i++) {
+                TransactionType type = i % 3 == 2 ? TransactionType.WITHDRAW : TransactionType.DEPOSIT;
+                history.recordTransactionAt(type, 100 + i % 5_000, START + 100L * i);
+            }
+        }
+
+        abstract boolean cacheTimestamps();
+    }
+
+    /** A prefilled history for benchmarks that do not render entries. */
+    @State(Scope.Benchmark)
+    public static class Filled extends Prefilled {
+        @Override
+        boolean cacheTimestamps() {
+            return true;
+        }
+    }
+
+    /** A prefilled history rendered with and without the cached timestamp prefix. */
+    @State(Scope.Benchmark)
+    public static class Rendered extends Prefilled {
+        @Param({"true", "false"})
+        public boolean cacheTimestamps;
+
+        @Override
+        boolean cacheTimestamps() {
+            return cacheTimestamps;
+        }
+    }
+
+    /** A history that grows during an iteration; recreated before each one. */
+    @State(Scope.Benchmark)
+    public static class Recording {
+        History history;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            history = new History(new HeapHistoryStore(), Clock.systemUTC(), true);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public History recordTransaction(Recording recording) {
+        recording.history.recordTransaction(TransactionType.DEPOSIT, 500);
+        return recording.history;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public History recordTransactionContended(Recording recording) {
+        recording.history.recordTransaction(TransactionType.DEPOSIT, 500);
+        return recording.history;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int filteredHistoryView(Filled filled) {
+        return filled.history.getFilteredHistory("withdraw").size();
+    }
+
+    /**
+     * Baseline for filteredHistoryView: counts the same entries by scanning the type column under
+     * the history's lock, as a filter without the type index has to.
+     */
+    @Benchmark
+    @Threads(1)
+    public int filteredHistoryLinearScan(Filled filled) {
+        byte withdraw = TransactionType.WITHDRAW.code();
+        int count = 0;
+        synchronized (filled.history) {
+            for (int i = 0, size = filled.store.size(); i < size; i++) {
+                if (filled.store.type(i) == withdraw) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int filteredHistoryLastPage(Rendered rendered) {
+        return renderLastPage(rendered.history.getFilteredHistory("withdraw"));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int filteredHistoryLastPageConcurrent(Rendered rendered) {
+        return renderLastPage(rendered.history.getFilteredHistory("withdraw"));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int historyPage(Rendered rendered) {
+        return renderLastPage(rendered.history.getPage(rendered.size / 2, PAGE));
+    }
+
+    /**
+     * Streams the whole formatted history to a discarding writer, like {@code getFormattedHistory}
+     * without holding the full text in memory. Reported per call, in milliseconds.
+     */
+    @Benchmark
+    @Threads(1)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Writer formattedHistory(Rendered rendered) throws IOException {
+        Writer out = Writer.nullWriter();
+        rendered.history.writeTo(out);
+        return out;
+    }
+
+    private static int renderLastPage(List<String> entries) {
+        int length = 0;
+        for (int i = Math.max(0, entries.size() - PAGE); i < entries.size(); i++) {
+            length += entries.get(i).length();
+        }
+        return length;
+    }
+}
@@ -0,0 +1,129 @@
+package atm;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The ATMServer class serves many concurrent terminal sessions over a local socket.
+ * Every connection runs the regular {@link ATM_Machine} menu flow on its own virtual thread,
+ * sharing one ledger and one authenticator, so idle sessions cost a parked virtual thread
+ * and a socket rather than a platform thread each. Each connection is its own terminal for
+ * login throttling, and a session that disconnects is logged out.
+ */
+public class ATMServer implements AutoCloseable {
+    private final Ledger ledger;
+    private final Authenticator authenticator;
+    private final Security security;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet(); // Open sessions, closed on shutdown
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private ServerSocket serverSocket;
+
+    /**
+     * Constructor creates a server for the given ledger and authenticator.
+     * @param ledger The accounts shared by all sessions.
+     * @param authenticator The authenticator shared by all sessions.
+     */
+    public ATMServer(Ledger ledger, Authenticator authenticator) {
+        this.ledger = ledger;
+        this.authenticator = authenticator;
+        this.security = new Security(authenticator);
+    }
+
+    /**
+     * Binds to a port on the loopback interface and starts accepting sessions.
+     * @param port The port, or 0 for any free port.
+     * @throws IOException if the port cannot be bound.
+     * @throws IllegalStateException if the server was already started.
+     */
+    public synchronized void start(int port) throws IOException {
+        if (serverSocket != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        Thread.ofVirtual().name("atm-acceptor").start(this::acceptLoop);
+    }
+
+    /**
+     * Returns the port the server listens on.
+     * @return The port.
+     */
+    public synchronized int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns the number of sessions currently connected.
+     * @return The session count.
+     */
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    /**
+     * Stops accepting sessions and disconnects the connected ones.
+     * @throws IOException if the server socket cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        for (Socket connection : connections) {
+            connection.close();
+        }
+    }
+
+    private void acceptLoop() {
+        AtomicInteger sessionIds = new AtomicInteger();
+        while (!serverSocket.isClosed()) {
+            Socket connection;
+            try {
+                connection = serverSocket.accept();
+            } catch (IOException e) {
+                return; // Server socket closed
+            }
+            connections.add(connection);
+            activeSessions.incrementAndGet();
+            Thread.ofVirtual().name("atm-session-" + sessionIds.incrementAndGet()).start(() -> serve(connection));
+        }
+    }
+
+    /**
+     * Runs one terminal session until the user exits or disconnects.
+     */
+    private void serve(Socket connection) {
+        try (connection;
+             Scanner in = new Scanner(connection.getInputStream(), StandardCharsets.UTF_8);
+             PrintStream out = new PrintStream(connection.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            String terminal = terminalId((InetSocketAddress) connection.getRemoteSocketAddress());
+            new ATM_Machine(authenticator, ledger, security, in, out, terminal).start();
+        } catch (IOException | NoSuchElementException e) {
+            // Terminal disconnected or server shut down
+        } finally {
+            connections.remove(connection);
+            activeSessions.decrementAndGet();
+        }
+    }
+
+    /**
+     * Names the terminal behind a connection after its remote address and port, so that
+     * terminals on the same host, such as every client of the loopback listener, are
+     * throttled separately.
+     * @param remote The remote address of the terminal connection.
+     * @return The terminal identifier, e.g. "127.0.0.1:52814".
+     */
+    static String terminalId(InetSocketAddress remote) {
+        return remote.getAddress().getHostAddress() + ":" + remote.getPort();
+    }
+}
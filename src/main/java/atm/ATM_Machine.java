@@ -1,27 +1,63 @@
 package atm;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Scanner;
+import java.util.concurrent.RejectedExecutionException;
+import javax.management.JMException;
 
 /**
  * The ATM_Machine class serves as the main entry point for ATM operations.
  * It manages authentication, balance transactions, security features, and account history.
+ * One instance serves one terminal session. Given a Ledger, it serves whichever account logs in;
+ * many instances can then share the ledger and authenticator, e.g. one per connection of an {@link ATMServer}.
  */
 public class ATM_Machine {
     private final Authenticator authenticator;
-    private final Balance balance;
+    private final Ledger ledger; // Accounts to serve after login (null when bound to one balance)
+    private Balance balance;
     private final Security security;
-    private final History history;
+    private History history;
     private final Scanner keyboard;
+    private final PrintStream out; // Terminal output
+    private final String terminal; // Terminal identifier for login throttling (null if unknown)
+    private String sessionToken; // Session of the logged-in user, null before login
+    private final LoginAttempts attempts = new LoginAttempts(); // Login attempts left to this terminal session
+    private final Metrics metrics = Metrics.global(); // Operation counters and latencies
 
     /**
      * Constructor initializes ATM system with dependencies.
      */
     public ATM_Machine(Authenticator authenticator, Balance balance, Security security, History history, Scanner scanner) {
         this.authenticator = authenticator;
+        this.ledger = null;
         this.balance = balance;
         this.security = security;
         this.history = history;
         this.keyboard = scanner; // Injected scanner (mockable in tests)
+        this.out = System.out;
+        this.terminal = null;
+    }
+
+    /**
+     * Constructor initializes a session that serves any account of the ledger.
+     * @param authenticator The shared authenticator.
+     * @param ledger The shared ledger.
+     * @param security The shared password manager.
+     * @param scanner The terminal input.
+     * @param out The terminal output.
+     * @param terminal The terminal identifier, used to throttle failed logins (can be null).
+     */
+    public ATM_Machine(Authenticator authenticator, Ledger ledger, Security security, Scanner scanner,
+                       PrintStream out, String terminal) {
+        this.authenticator = authenticator;
+        this.ledger = ledger;
+        this.security = security;
+        this.keyboard = scanner;
+        this.out = out;
+        this.terminal = terminal;
     }
 
     /**
@@ -31,32 +67,59 @@ public class ATM_Machine {
         String account;
         String password;
 
-        while (authenticator.hasAttemptsLeft()) { // 🔹 Retry until attempts are exhausted
-            System.out.print("Enter account number: ");
+        while (attempts.hasAttemptsLeft()) { // 🔹 Retry until attempts are exhausted
+            out.print("Enter account number: ");
             account = keyboard.next();
-            System.out.print("Enter password: ");
+            out.print("Enter password: ");
             password = keyboard.next();
 
-            if (authenticator.authenticate(account, password)) {
-                System.out.println("Authentication successful!\n");
-                runATMOperations(account); // 🔹 Proceed with ATM operations
+            try {
+                sessionToken = authenticator.login(terminal, account, password, attempts);
+            } catch (RejectedExecutionException e) {
+                out.println("The ATM is busy. Please try again."); // Not counted as an attempt
+                continue;
+            }
+            if (sessionToken != null) {
+                out.println("Authentication successful!\n");
+                if (ledger != null) {
+                    if (!ledger.hasAccount(account)) {
+                        out.println("No balance is held for account " + account + ".");
+                        authenticator.logout(sessionToken);
+                        return;
+                    }
+                    balance = ledger.getAccount(account);
+                    history = balance.getHistory();
+                }
+                try {
+                    runATMOperations(account); // 🔹 Proceed with ATM operations
+                } finally {
+                    authenticator.logout(sessionToken); // Also when the terminal disconnects mid-session
+                    sessionToken = null;
+                }
                 return; // Exit authentication loop upon success
+            } else if (!authenticator.hasAttemptsLeft(account)) {
+                out.println("Authentication failed. Account " + account + " is temporarily locked.");
             } else {
-                System.out.println("Authentication failed. Attempts remaining: " + authenticator.getAttemptsLeft());
+                out.println("Authentication failed. Attempts remaining: " + attempts.getAttemptsLeft());
             }
         }
 
-        System.out.println("Too many failed attempts. Exiting system."); // When attempts are exhausted
+        out.println("Too many failed attempts. Exiting system."); // When attempts are exhausted
     }
 
     /**
      * Runs the ATM operations after successful authentication.
+     * The session is validated before every operation, without re-verifying the password.
      */
     private void runATMOperations(String account) {
         int option;
         do {
             displayMenu();
             option = getUserInput();
+            if (!authenticator.validateSession(sessionToken, account)) {
+                out.println("Session expired. Please log in again.");
+                return;
+            }
             processOption(option, account);
         } while (option != 6); // Exit when the user selects 6
     }
@@ -65,14 +128,14 @@ public class ATM_Machine {
      * Displays the ATM menu options.
      */
     private void displayMenu() {
-        System.out.println("\nWhat service would you like?");
-        System.out.println("1. Deposit");
-        System.out.println("2. Withdraw");
-        System.out.println("3. Print Balance");
-        System.out.println("4. Print Activities");
-        System.out.println("5. Change Password");
-        System.out.println("6. Exit");
-        System.out.print("Enter your option: ");
+        out.println("\nWhat service would you like?");
+        out.println("1. Deposit");
+        out.println("2. Withdraw");
+        out.println("3. Print Balance");
+        out.println("4. Print Activities");
+        out.println("5. Change Password");
+        out.println("6. Exit");
+        out.print("Enter your option: ");
     }
 
     /**
@@ -97,24 +160,62 @@ public class ATM_Machine {
         switch (option) {
             case 1 -> handleDeposit();
             case 2 -> handleWithdraw();
-            case 3 -> System.out.println("Current Balance: $" + balance.getBalance());
-            case 4 -> System.out.println(history.getFormattedHistory()); // 🔹 Ensure this prints history
+            case 3 -> printBalance();
+            case 4 -> printHistory();
             case 5 -> handlePasswordChange(account);
-            case 6 -> System.out.println("Thank you for using ATM Machine.");
-            default -> System.out.println("Invalid option. Try again.");
+            case 6 -> out.println("Thank you for using ATM Machine.");
+            default -> out.println("Invalid option. Try again.");
         }
     }
 
+    /**
+     * Streams the transaction history to the console without building one large string.
+     * For the session's own account it ends with the balance as of the last entry shown.
+     */
+    protected void printHistory() {
+        long start = Metrics.start();
+        boolean printed = true;
+        // A statement of the session's own account shows the balance as of its last entry
+        BalanceSnapshot statement = history == balance.getHistory() ? balance.getSnapshot() : null;
+        balance.awaitHistory(); // Show this session's own transactions when history is recorded in the background
+        try {
+            if (statement == null) {
+                history.writeTo(out);
+            } else {
+                history.writeTo(out, statement.getHistoryLength());
+                out.println();
+                out.print("Balance after these transactions: $" + statement.getBalance());
+            }
+        } catch (IOException e) {
+            out.print("Unable to print history.");
+            printed = false;
+        }
+        out.println();
+        metrics.record(Metrics.Operation.HISTORY, start, printed);
+    }
+
+    /**
+     * Prints the current balance.
+     */
+    private void printBalance() {
+        long start = Metrics.start();
+        out.println("Current Balance: $" + balance.getBalance());
+        metrics.record(Metrics.Operation.BALANCE, start, true);
+    }
+
     /**
      * Handles deposit operation and logs transaction.
      */
     protected void handleDeposit() {
-        System.out.print("Enter deposit amount: ");
+        out.print("Enter deposit amount: ");
         double amount = keyboard.nextDouble();
-        if (balance.deposit(amount)) {
-            System.out.println("Deposit successful!");
+        long start = Metrics.start();
+        boolean deposited = balance.deposit(amount);
+        metrics.record(Metrics.Operation.DEPOSIT, start, deposited);
+        if (deposited) {
+            out.println("Deposit successful!");
         } else {
-            System.out.println("Invalid deposit amount.");
+            out.println("Invalid deposit amount.");
         }
     }
 
@@ -122,12 +223,15 @@ public class ATM_Machine {
      * Handles withdrawal operation and logs transaction.
      */
     protected void handleWithdraw() {
-        System.out.print("Enter withdrawal amount: ");
+        out.print("Enter withdrawal amount: ");
         double amount = keyboard.nextDouble();
-        if (balance.withdraw(amount)) {
-            System.out.println("Withdrawal successful!");
+        long start = Metrics.start();
+        boolean withdrawn = balance.withdraw(amount);
+        metrics.record(Metrics.Operation.WITHDRAW, start, withdrawn);
+        if (withdrawn) {
+            out.println("Withdrawal successful!");
         } else {
-            System.out.println("Invalid withdrawal amount or insufficient funds.");
+            out.println("Invalid withdrawal amount or insufficient funds.");
         }
     }
 
@@ -136,31 +240,65 @@ public class ATM_Machine {
      * @param account The authenticated user's account number.
      */
     protected void handlePasswordChange(String account) {
-        System.out.print("Enter current password: ");
+        out.print("Enter current password: ");
         String oldPassword = keyboard.next();
-        System.out.print("Enter new password: ");
+        out.print("Enter new password: ");
         String newPassword = keyboard.next();
 
-        if (security.changePassword(account, oldPassword, newPassword)) {
-            System.out.println("Password changed successfully!");
+        long start = Metrics.start();
+        boolean changed = security.changePassword(sessionToken, account, oldPassword, newPassword);
+        metrics.record(Metrics.Operation.PASSWORD_CHANGE, start, changed);
+        if (changed) {
+            out.println("Password changed successfully!");
         } else {
-            System.out.println("Password change failed.");
+            out.println("Password change failed.");
         }
     }
 
     /**
      * **Main method to start the ATM system.**
+     * @param args Optional path of a journal file; when given, balances and histories survive restarts.
+     *             Histories are kept in memory-mapped segments in the {@code <journal>.history} directory.
+     *             With {@code --server <port> [journal]}, terminals connect over a local socket instead.
      */
-    public static void main(String[] args) {
-        Scanner scanner = new Scanner(System.in);
+    public static void main(String[] args) throws IOException {
+        boolean server = args.length > 1 && args[0].equals("--server");
+        String journalPath = server ? (args.length > 2 ? args[2] : null) : (args.length > 0 ? args[0] : null);
         Authenticator authenticator = new Authenticator();
-        History history = new History();
-        Balance balance = new Balance(2000.0, history);
-        Security security = new Security(authenticator);
+        Ledger ledger = new Ledger();
+        if (journalPath != null) {
+            Journal journal = new Journal(Path.of(journalPath));
+            ledger = new Ledger(journal, Path.of(journalPath + ".history"));
+            journal.startPeriodicCheckpoints(Duration.ofMinutes(5)); // History is on disk, so checkpoints lose none
+        }
+        if (!ledger.hasAccount("1234567")) {
+            ledger.openAccount("1234567", 2000.0); // Default account
+        }
+        Scanner scanner = new Scanner(System.in);
 
-        ATM_Machine atm = new ATM_Machine(authenticator, balance, security, history, scanner);
-        atm.start();
+        if (server) {
+            try {
+                Metrics.registerMBean(); // Operation latencies are visible in JConsole while the server runs
+            } catch (JMException e) {
+                System.err.println("Metrics are not available over JMX: " + e.getMessage());
+            }
+            try (ATMServer atmServer = new ATMServer(ledger, authenticator)) {
+                atmServer.start(Integer.parseInt(args[1]));
+                System.out.println("ATM server listening on port " + atmServer.getPort() + ". Press Enter to stop.");
+                scanner.nextLine();
+            }
+            System.out.print(Metrics.global().getReport());
+        } else {
+            Balance balance = ledger.getAccount("1234567");
+            History history = balance.getHistory();
+            Security security = new Security(authenticator);
+
+            ATM_Machine atm = new ATM_Machine(authenticator, balance, security, history, scanner);
+            atm.start();
+        }
 
         scanner.close(); // Close scanner when the application ends
+        ledger.close(); // Flush the journal, if any
+        authenticator.close();
     }
 }
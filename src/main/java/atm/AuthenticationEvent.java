@@ -0,0 +1,41 @@
+package atm;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The AuthenticationEvent class is a JDK Flight Recorder event spanning one password check,
+ * including the wait for a verifier thread.
+ */
+@Name("atm.Authentication")
+@Label("Authentication")
+@Category({"ATM", "Security"})
+@Description("One password check of a login or password change")
+final class AuthenticationEvent extends jdk.jfr.Event {
+    @Label("Account")
+    String account;
+
+    @Label("Terminal")
+    String terminal;
+
+    @Label("Outcome")
+    @Description("success, failure, throttled or busy")
+    String outcome;
+
+    /**
+     * Fills in and commits the event if a recording wants it.
+     * @param account The account number entered.
+     * @param terminal The terminal, or null if unknown.
+     * @param outcome What happened: "success", "failure", "throttled" or "busy".
+     */
+    void finish(String account, String terminal, String outcome) {
+        if (shouldCommit()) {
+            this.account = account;
+            this.terminal = terminal;
+            this.outcome = outcome;
+            commit();
+        }
+    }
+}
@@ -1,63 +1,615 @@
 package atm;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 
 /**
  * The Authenticator class handles user authentication by storing credentials
  * and validating login attempts with a limited number of retries.
+ * It is safe to use from many sessions at once: credentials live in a concurrent map that is
+ * read without locking, and failed attempts are throttled per account, so one user's typos
+ * only lock out that user's account. Failures are also throttled per terminal, so one terminal
+ * cannot try many accounts; attempts on accounts that do not exist are only counted per
+ * terminal, so they cannot crowd real accounts out of the throttle. Throttles recover over time,
+ * and a throttled login is rejected before any password hash is computed. Every attempt counts
+ * as a failure from before its hash is verified until it succeeds, so concurrent attempts cannot
+ * exceed the limits; an attempt that finds the remaining ones all in flight waits for one of
+ * them to settle.
+ * <p>
+ * Passwords are stored as salted PBKDF2 hashes. Verifying one is deliberately slow, so it runs
+ * on a dedicated, size-capped verifier pool with a bounded queue: at most one hash per pool
+ * thread runs at a time, however many sessions are logging in.
+ * <p>
+ * A successful {@link #login} issues a session token. Later operations validate the token
+ * against a {@link SessionCache} instead of re-verifying the password hash; the session keeps
+ * a keyed HMAC of the verified password, so re-entering it can be checked cheaply too.
+ * Changing an account's password invalidates its other sessions.
+ * <p>
+ * Each session, such as one terminal connection, counts its own failed logins in a
+ * {@link LoginAttempts} it owns and passes in; callers that pass none share the authenticator's.
  */
-public class Authenticator {
-    private final Map<String, String> userCredentials; // Stores user credentials
-    private int attemptsLeft; // Number of remaining login attempts
+public class Authenticator implements AutoCloseable {
+    /** Number of consecutive failed attempts allowed per account and per session. */
+    public static final int MAX_ATTEMPTS = 3;
+    /** Time after which an account regains one failed attempt. */
+    public static final Duration ACCOUNT_RECOVERY = Duration.ofMinutes(5);
+    /** Number of failed attempts allowed per terminal in a burst. */
+    public static final int MAX_TERMINAL_FAILURES = 20;
+    /** Time after which a terminal regains one failed attempt. */
+    public static final Duration TERMINAL_RECOVERY = Duration.ofSeconds(15);
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 256;
+    private static final String SESSION_MAC = "HmacSHA256";
+    private static final int TOKEN_BYTES = 16;
+    private static final int THROTTLED_KEYS = 4096; // Accounts and terminals tracked by each limiter
+
+    private final ConcurrentMap<String, Credential> userCredentials; // Stores user credentials
+    private final LoginAttempts attempts = new LoginAttempts(); // Shared by callers without LoginAttempts of their own
+    private final PasswordHasher hasher;
+    private final PasswordHasher.Hash unknownAccountHash; // Verified against for unknown accounts to hide which exist
+    private final ThreadPoolExecutor verifierPool;
+    private final LoginRateLimiter accountLimiter; // Failed attempts per account
+    private final LoginRateLimiter terminalLimiter; // Failed attempts per terminal
+    private final SessionCache sessions; // Live sessions by token
+    private final Metrics metrics = Metrics.global(); // Login counters and latencies
+    private final SecretKeySpec sessionKey; // Per-instance key for password digests in sessions
+    private final ThreadLocal<Mac> sessionMac;
+    private final SecureRandom random = new SecureRandom();
+    private volatile CompletableFuture<Void> nextSettle = new CompletableFuture<>(); // Completed when an attempt in flight settles
 
     /**
-     * Constructor initializes the authenticator with a default user.
+     * A stored password hash and its generation.
+     */
+    private static final class Credential {
+        private volatile PasswordHasher.Hash hash;
+        private volatile int generation; // Bumped on every password change; older sessions are stale
+
+        Credential(PasswordHasher.Hash hash) {
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Constructor initializes the authenticator with a default user, the default hash cost
+     * and one verifier thread per processor.
      */
     public Authenticator() {
-        userCredentials = new HashMap<>();
-        userCredentials.put("1234567", "abcdef"); // Default user
-        attemptsLeft = 3;
+        this(PasswordHasher.defaultIterations(), Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Constructor initializes the authenticator with a default user.
+     * @param iterations The PBKDF2 iteration count for password hashes.
+     * @param verifierThreads The maximum number of hashes verified at the same time.
+     * @param queueCapacity The maximum number of verifications waiting for a thread.
+     */
+    public Authenticator(int iterations, int verifierThreads, int queueCapacity) {
+        this(iterations, verifierThreads, queueCapacity, new SessionCache(), System::nanoTime);
+    }
+
+    /**
+     * Constructor initializes the authenticator with a default user, the given session cache
+     * and the given time source for login throttling.
+     */
+    Authenticator(int iterations, int verifierThreads, int queueCapacity, SessionCache sessions, LongSupplier nanoClock) {
+        this.sessions = sessions;
+        accountLimiter = new LoginRateLimiter(MAX_ATTEMPTS, ACCOUNT_RECOVERY, THROTTLED_KEYS, nanoClock);
+        terminalLimiter = new LoginRateLimiter(MAX_TERMINAL_FAILURES, TERMINAL_RECOVERY, THROTTLED_KEYS, nanoClock);
+        byte[] key = new byte[32];
+        random.nextBytes(key);
+        sessionKey = new SecretKeySpec(key, SESSION_MAC);
+        sessionMac = ThreadLocal.withInitial(this::newSessionMac);
+        hasher = new PasswordHasher(iterations);
+        unknownAccountHash = hasher.hash("");
+        verifierPool = new ThreadPoolExecutor(verifierThreads, verifierThreads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "password-verifier");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        verifierPool.allowCoreThreadTimeOut(true);
+        userCredentials = new ConcurrentHashMap<>();
+        userCredentials.put("1234567", new Credential(hasher.hash("abcdef"))); // Default user
     }
 
     /**
      * Adds a new user with a specified account number and password.
+     * Replacing the password of an existing user keeps that account's throttle
+     * and invalidates all of its sessions.
+     * The password is hashed on the verifier pool, like the ones checked at login.
      * @param account The account number of the user.
      * @param password The password of the user.
+     * @throws RejectedExecutionException if the verifier pool is saturated; nothing is changed
+     *         and the caller should retry later.
      */
     public void addUser(String account, String password) {
-        userCredentials.put(account, password);
+        updatePassword(account, password, null);
+    }
+
+    /**
+     * Sets a user's password and invalidates the user's sessions, except the given one,
+     * which is moved to the new password.
+     * @param account The account number of the user.
+     * @param password The new password.
+     * @param keepToken The token of the session that changed the password, or null.
+     * @throws RejectedExecutionException if the verifier pool is saturated; nothing is changed.
+     */
+    void updatePassword(String account, String password, String keepToken) {
+        PasswordHasher.Hash hash = onVerifierPool(() -> hasher.hash(password));
+        Credential credential = userCredentials.putIfAbsent(account, new Credential(hash));
+        if (credential == null) {
+            return;
+        }
+        int generation;
+        synchronized (credential) {
+            credential.hash = hash;
+            generation = ++credential.generation;
+        }
+        SessionCache.Session kept = keepToken == null ? null : sessions.get(keepToken);
+        if (kept != null && kept.account.equals(account)) {
+            sessions.put(keepToken, new SessionCache.Session(account, digest(password), generation));
+        }
+    }
+
+    /**
+     * Authenticates a user and opens a session.
+     * @param account The account number entered by the user.
+     * @param password The password entered by the user.
+     * @return The session token, or null if authentication failed.
+     * @throws RejectedExecutionException if the verifier pool is saturated and the caller should retry later.
+     */
+    public String login(String account, String password) {
+        return login(null, account, password);
+    }
+
+    /**
+     * Authenticates a user at a terminal and opens a session.
+     * @param terminal The terminal the user logs in from, or null if unknown.
+     * @param account The account number entered by the user.
+     * @param password The password entered by the user.
+     * @return The session token, or null if authentication failed.
+     * @throws RejectedExecutionException if the verifier pool is saturated and the caller should retry later.
+     */
+    public String login(String terminal, String account, String password) {
+        return login(terminal, account, password, attempts);
+    }
+
+    /**
+     * Authenticates a user at a terminal for a session that counts its own attempts, and opens a session.
+     * @param terminal The terminal the user logs in from, or null if unknown.
+     * @param account The account number entered by the user.
+     * @param password The password entered by the user.
+     * @param session The attempts left to the calling session, updated with the outcome.
+     * @return The session token, or null if authentication failed.
+     * @throws RejectedExecutionException if the verifier pool is saturated and the caller should retry later.
+     */
+    public String login(String terminal, String account, String password, LoginAttempts session) {
+        long start = Metrics.start();
+        Credential credential = userCredentials.get(account);
+        int generation = credential == null ? 0 : credential.generation; // Read first: a concurrent change makes this session stale
+        if (!authenticate(terminal, account, password, session)) {
+            metrics.record(Metrics.Operation.LOGIN_FAILURE, start, true);
+            return null;
+        }
+        String token = openSession(account, password, generation);
+        metrics.record(Metrics.Operation.LOGIN_SUCCESS, start, true);
+        return token;
+    }
+
+    /**
+     * Authenticates a user at a terminal and opens a session, without blocking the calling thread.
+     * The calling session's attempt counter is not updated.
+     * @param terminal The terminal the user logs in from, or null if unknown.
+     * @param account The account number entered by the user.
+     * @param password The password entered by the user.
+     * @return A future completed with the session token, or null if authentication failed; failed with a
+     *         RejectedExecutionException if the verifier pool is saturated or the remaining attempts are
+     *         all being verified, and the caller should retry later.
+     */
+    public CompletableFuture<String> loginAsync(String terminal, String account, String password) {
+        return loginAsync(terminal, account, password, null);
+    }
+
+    /**
+     * Authenticates a user at a terminal for a session that counts its own attempts, and opens a
+     * session, without blocking the calling thread. The session's attempts are updated once the
+     * outcome is known; a rejected login is not an attempt.
+     * @param terminal The terminal the user logs in from, or null if unknown.
+     * @param account The account number entered by the user.
+     * @param password The password entered by the user.
+     * @param session The attempts left to the calling session, or null to count none.
+     * @return A future completed with the session token, or null if authentication failed; failed with a
+     *         RejectedExecutionException if the verifier pool is saturated or the remaining attempts are
+     *         all being verified, and the caller should retry later.
+     */
+    public CompletableFuture<String> loginAsync(String terminal, String account, String password,
+                                                LoginAttempts session) {
+        Credential credential = userCredentials.get(account);
+        int generation = credential == null ? 0 : credential.generation;
+        long start = Metrics.start();
+        return authenticateAsync(terminal, account, password).thenApply(success -> {
+            if (session != null) {
+                session.record(success);
+            }
+            String token = success ? openSession(account, password, generation) : null;
+            metrics.record(token != null ? Metrics.Operation.LOGIN_SUCCESS : Metrics.Operation.LOGIN_FAILURE,
+                    start, true);
+            return token;
+        });
+    }
+
+    /**
+     * Checks that a session is live and belongs to the account, without verifying any password hash.
+     * @param token The session token.
+     * @param account The account number.
+     * @return true if the session is valid.
+     */
+    public boolean validateSession(String token, String account) {
+        return liveSession(token, account) != null;
+    }
+
+    /**
+     * Checks a password against the one the session was opened with. This is a cheap keyed digest
+     * comparison, not a hash verification, and does not count as a login attempt.
+     * @param token The session token.
+     * @param account The account number.
+     * @param password The password to check.
+     * @return true if the session is valid and the password matches.
+     */
+    public boolean verifySessionPassword(String token, String account, String password) {
+        SessionCache.Session session = liveSession(token, account);
+        return session != null && MessageDigest.isEqual(digest(password), session.passwordDigest);
+    }
+
+    /**
+     * Closes a session.
+     * @param token The session token.
+     */
+    public void logout(String token) {
+        sessions.remove(token);
+    }
+
+    /**
+     * Returns the session cache, e.g. to read its hit, miss and eviction counters.
+     * @return The session cache.
+     */
+    public SessionCache getSessionCache() {
+        return sessions;
     }
 
     /**
      * Authenticates a user based on the provided credentials.
+     * A throttled account is rejected without checking the password.
+     * The hash is verified on the verifier pool and never on the calling thread, so the number
+     * of hashes computed at once stays bounded however many callers there are.
      * @param account The account number entered by the user.
      * @param password The password entered by the user.
      * @return true if authentication is successful, false otherwise.
+     * @throws RejectedExecutionException if the verifier pool is saturated; the attempt is not
+     *         counted and the caller should retry later.
      */
     public boolean authenticate(String account, String password) {
-        if (userCredentials.containsKey(account) && userCredentials.get(account).equals(password)) {
-            attemptsLeft = 3; // Reset attempts on success
-            return true;
+        return authenticate(null, account, password);
+    }
+
+    /**
+     * Authenticates a user at a terminal. A throttled account or terminal is rejected
+     * without checking the password. If its remaining attempts are all being verified,
+     * the call waits for them first.
+     * @param terminal The terminal the user logs in from, or null if unknown.
+     * @param account The account number entered by the user.
+     * @param password The password entered by the user.
+     * @return true if authentication is successful, false otherwise.
+     * @throws RejectedExecutionException if the verifier pool is saturated; the attempt is not
+     *         counted and the caller should retry later.
+     */
+    public boolean authenticate(String terminal, String account, String password) {
+        return authenticate(terminal, account, password, attempts);
+    }
+
+    /**
+     * Authenticates a user at a terminal for a session that counts its own attempts.
+     * @param terminal The terminal the user logs in from, or null if unknown.
+     * @param account The account number entered by the user.
+     * @param password The password entered by the user.
+     * @param session The attempts left to the calling session, updated with the outcome.
+     * @return true if authentication is successful, false otherwise.
+     * @throws RejectedExecutionException if the verifier pool is saturated; the attempt is not
+     *         counted and the caller should retry later.
+     */
+    public boolean authenticate(String terminal, String account, String password, LoginAttempts session) {
+        AuthenticationEvent event = new AuthenticationEvent();
+        event.begin();
+        boolean success;
+        Credential credential = userCredentials.get(account);
+        if (awaitAttempt(terminal, account, credential) != LoginRateLimiter.ACQUIRED) {
+            success = false;
+            event.finish(account, terminal, "throttled");
         } else {
-            attemptsLeft--;
-            return false;
+            try {
+                success = onVerifierPool(() -> verify(credential, terminal, account, password));
+            } catch (RejectedExecutionException e) {
+                releaseAttempt(terminal, account, credential); // Not the user's failure
+                event.finish(account, terminal, "busy");
+                throw e;
+            } catch (RuntimeException | Error e) {
+                event.finish(account, terminal, "failure");
+                throw e;
+            }
+            event.finish(account, terminal, success ? "success" : "failure");
+        }
+        session.record(success);
+        return success;
+    }
+
+    /**
+     * Authenticates a user without blocking the calling thread.
+     * Per-account throttles are updated; the calling session's counter is not.
+     * @param account The account number entered by the user.
+     * @param password The password entered by the user.
+     * @return A future completed with the result, or failed with a RejectedExecutionException
+     *         if the verifier pool is saturated and the caller should retry later.
+     */
+    public CompletableFuture<Boolean> authenticateAsync(String account, String password) {
+        return authenticateAsync(null, account, password);
+    }
+
+    /**
+     * Authenticates a user at a terminal without blocking the calling thread.
+     * @param terminal The terminal the user logs in from, or null if unknown.
+     * @param account The account number entered by the user.
+     * @param password The password entered by the user.
+     * @return A future completed with the result, or failed with a RejectedExecutionException
+     *         if the verifier pool is saturated and the caller should retry later.
+     */
+    public CompletableFuture<Boolean> authenticateAsync(String terminal, String account, String password) {
+        AuthenticationEvent event = new AuthenticationEvent();
+        event.begin();
+        CompletableFuture<Void> settle = nextSettle; // Read first: a settle after this retries the attempt
+        Credential credential = userCredentials.get(account);
+        int status = acquireAttempt(terminal, account, credential);
+        if (status == LoginRateLimiter.THROTTLED) {
+            event.finish(account, terminal, "throttled");
+            return CompletableFuture.completedFuture(false);
+        }
+        if (status == LoginRateLimiter.BUSY) { // Retried once an attempt in flight settles
+            return settle.thenCompose(settled -> authenticateAsync(terminal, account, password));
+        }
+        CompletableFuture<Boolean> result;
+        try {
+            result = CompletableFuture.supplyAsync(() -> verify(credential, terminal, account, password), verifierPool);
+        } catch (RejectedExecutionException e) {
+            releaseAttempt(terminal, account, credential);
+            event.finish(account, terminal, "busy");
+            return CompletableFuture.failedFuture(e);
+        }
+        if (event.isEnabled()) { // The event ends on the verifier thread; skip the extra stage when not recording
+            result = result.whenComplete((success, failure) ->
+                    event.finish(account, terminal, Boolean.TRUE.equals(success) ? "success" : "failure"));
         }
+        return result;
     }
 
     /**
-     * Checks if the user has remaining login attempts.
+     * Checks if callers that keep no {@link LoginAttempts} of their own have remaining login attempts.
      * @return true if there are attempts left, false otherwise.
      */
     public boolean hasAttemptsLeft() {
-        return attemptsLeft > 0;
+        return attempts.hasAttemptsLeft();
     }
 
     /**
-     * Returns the number of remaining login attempts.
+     * Returns the number of remaining login attempts of callers that keep no {@link LoginAttempts} of their own.
      * @return The number of attempts left.
      */
     public int getAttemptsLeft() {
-        return attemptsLeft;
+        return attempts.getAttemptsLeft();
+    }
+
+    /**
+     * Checks if an account has remaining login attempts.
+     * @param account The account number.
+     * @return true if there are attempts left, false if the account is throttled.
+     */
+    public boolean hasAttemptsLeft(String account) {
+        return getAttemptsLeft(account) > 0;
+    }
+
+    /**
+     * Returns the number of remaining login attempts of an account.
+     * One attempt is regained every {@link #ACCOUNT_RECOVERY}, and all of them on a successful login.
+     * @param account The account number.
+     * @return The number of attempts left.
+     */
+    public int getAttemptsLeft(String account) {
+        return accountLimiter.remaining(account);
+    }
+
+    /**
+     * Stops the verifier pool. Pending verifications are completed first.
+     */
+    @Override
+    public void close() {
+        verifierPool.shutdown();
+    }
+
+    /**
+     * Returns the live session for a token if it belongs to the account and predates no password change.
+     */
+    private SessionCache.Session liveSession(String token, String account) {
+        if (token == null) {
+            return null;
+        }
+        SessionCache.Session session = sessions.get(token);
+        if (session == null || !session.account.equals(account)) {
+            return null;
+        }
+        Credential credential = userCredentials.get(account);
+        if (credential == null || credential.generation != session.generation) {
+            sessions.remove(token); // Password changed since this session was opened
+            return null;
+        }
+        return session;
+    }
+
+    private byte[] digest(String password) {
+        return sessionMac.get().doFinal(password.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newSessionMac() {
+        try {
+            Mac mac = Mac.getInstance(SESSION_MAC);
+            mac.init(sessionKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(SESSION_MAC + " is not available", e);
+        }
+    }
+
+    private String openSession(String account, String password, int generation) {
+        byte[] tokenBytes = new byte[TOKEN_BYTES];
+        random.nextBytes(tokenBytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(tokenBytes);
+        sessions.put(token, new SessionCache.Session(account, digest(password), generation));
+        return token;
+    }
+
+    /**
+     * Runs password hashing work on the verifier pool and waits for it, so the calling thread
+     * never hashes and the number of hashes computed at once stays bounded.
+     * @return The result of the task.
+     * @throws RejectedExecutionException if the pool is saturated; the task does not run.
+     */
+    private <T> T onVerifierPool(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, verifierPool).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Takes one failed attempt from the account and the terminal before a hash is verified.
+     * Accounts that do not exist are only limited per terminal, so made-up account numbers
+     * take no room in the account limiter.
+     * @param credential The account's credential, or null for an unknown account.
+     * @return {@link LoginRateLimiter#ACQUIRED}, or why nothing was taken.
+     */
+    private int acquireAttempt(String terminal, String account, Credential credential) {
+        int status = credential == null ? LoginRateLimiter.ACQUIRED : accountLimiter.tryAcquire(account);
+        if (status == LoginRateLimiter.ACQUIRED && terminal != null) {
+            status = terminalLimiter.tryAcquire(terminal);
+            if (status != LoginRateLimiter.ACQUIRED && credential != null) {
+                accountLimiter.release(account);
+                attemptSettled();
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Takes one failed attempt like {@link #acquireAttempt}, waiting while the remaining ones are in flight.
+     * @return {@link LoginRateLimiter#ACQUIRED}, or {@link LoginRateLimiter#THROTTLED}.
+     */
+    private int awaitAttempt(String terminal, String account, Credential credential) {
+        while (true) {
+            CompletableFuture<Void> settle = nextSettle;
+            int status = acquireAttempt(terminal, account, credential);
+            if (status != LoginRateLimiter.BUSY) {
+                return status;
+            }
+            try {
+                settle.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return LoginRateLimiter.THROTTLED;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e); // Never completed exceptionally
+            }
+        }
+    }
+
+    /**
+     * Gives back the attempt taken by {@link #acquireAttempt} for an attempt that was not a failure.
+     */
+    private void releaseAttempt(String terminal, String account, Credential credential) {
+        if (credential != null) {
+            accountLimiter.release(account);
+        }
+        if (terminal != null) {
+            terminalLimiter.release(terminal);
+        }
+        attemptSettled();
+    }
+
+    /**
+     * Wakes the attempts waiting for one in flight to settle.
+     */
+    private void attemptSettled() {
+        CompletableFuture<Void> settled;
+        synchronized (this) {
+            settled = nextSettle;
+            nextSettle = new CompletableFuture<>();
+        }
+        settled.complete(null);
+    }
+
+    /**
+     * Verifies a password for an attempt already counted as a failure, and clears the account's
+     * throttle and gives the terminal its attempt back if it matches.
+     * Unknown accounts are verified against a dummy hash so they take as long as known ones.
+     */
+    private boolean verify(Credential credential, String terminal, String account, String password) {
+        boolean success;
+        try {
+            if (credential == null) {
+                hasher.verify(password, unknownAccountHash);
+                success = false;
+            } else {
+                success = hasher.verify(password, credential.hash);
+            }
+        } catch (RuntimeException | Error e) {
+            releaseAttempt(terminal, account, credential); // Not the user's failure
+            throw e;
+        }
+        if (success) {
+            accountLimiter.release(account);
+            accountLimiter.reset(account); // Reset attempts on success
+            if (terminal != null) {
+                terminalLimiter.release(terminal);
+            }
+        } else {
+            if (credential != null) {
+                accountLimiter.complete(account);
+            }
+            if (terminal != null) {
+                terminalLimiter.complete(terminal);
+            }
+        }
+        attemptSettled();
+        return success;
     }
 }
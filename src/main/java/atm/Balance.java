@@ -1,12 +1,45 @@
 package atm;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
 /**
  * The Balance class manages an account's balance with deposit and withdrawal functionality.
  * It logs transactions if a History instance is provided.
+ * The balance is held as whole cents (see {@link Money}); writers on the same account
+ * serialize on a per-account lock while readers never block: every change publishes an immutable
+ * {@link BalanceSnapshot} of the balance, history length and version, and reads take the latest one.
+ * History entries are recorded, or published to the recorder, while the write lock is held, so
+ * the history lists each account's changes in the order they were applied.
+ * When a Journal is attached, every change is logged and made durable before it is acknowledged;
+ * if the journal fails instead, the change and its history entry are taken back and the failure
+ * is thrown as an UncheckedIOException.
+ * Given a HistoryRecorder, history entries are published to its buffer while the write lock is
+ * held and recorded in the background; {@link #awaitHistory()} waits for them.
+ * Deposits, withdrawals, transfers and batches emit a {@link TransactionEvent} to JDK Flight Recorder,
+ * whether they are applied or rejected.
+ * Transfers lock both accounts, always in the order the balances were created, so two opposite
+ * transfers between the same accounts can never deadlock.
  */
 public class Balance {
-    private double balance;
+    private static final AtomicLong LOCK_ORDERS = new AtomicLong(); // Source of lockOrder values
+
+    private long balanceCents; // Current balance in cents, only accessed under the write lock
+    private int historyLength; // History entries recorded or published so far (-1 until read), only accessed under the write lock
+    private volatile BalanceSnapshot snapshot; // Latest committed state, read without locking
+    private final StampedLock lock = new StampedLock(); // Serializes writers on this account only
     private final History history; // Transaction history tracker (optional)
+    private final Journal journal; // Write-ahead journal (optional)
+    private final HistoryRecorder recorder; // Records history in the background (optional)
+    private volatile long lastHistorySeq; // Recorder sequence number of this account's last event
+    private final String account; // Account number (null for a standalone balance)
+    private final byte[] accountKey; // UTF-8 account number written to journal records
+    private final long lockOrder = LOCK_ORDERS.incrementAndGet(); // Accounts are locked in ascending order
 
     /**
      * Constructor initializes balance with an optional history tracker.
@@ -14,8 +47,36 @@ public class Balance {
      * @param history The history instance to track transactions (can be null).
      */
     public Balance(double initialBalance, History history) {
-        this.balance = initialBalance;
+        this(null, Money.fromDouble(initialBalance), history, null, null);
+    }
+
+    /**
+     * Constructor initializes balance with a history tracker that is written in the background.
+     * @param initialBalance The starting balance.
+     * @param history The history instance to track transactions.
+     * @param recorder The recorder that appends entries to the history (can be null to record synchronously).
+     */
+    public Balance(double initialBalance, History history, HistoryRecorder recorder) {
+        this(null, Money.fromDouble(initialBalance), history, null, recorder);
+    }
+
+    /**
+     * Constructor for ledger-owned balances that log their changes to a journal.
+     * @param account The account number written to journal records (can be null without a journal).
+     * @param initialCents The starting balance in cents.
+     * @param history The history instance to track transactions (can be null).
+     * @param journal The journal to log changes to (can be null).
+     * @param recorder The recorder that appends history entries in the background (can be null).
+     */
+    Balance(String account, long initialCents, History history, Journal journal, HistoryRecorder recorder) {
+        this.balanceCents = initialCents;
+        this.historyLength = history == null ? 0 : -1; // Read from the history when first needed
+        this.snapshot = new BalanceSnapshot(initialCents, historyLength, 0);
         this.history = history;
+        this.journal = journal;
+        this.recorder = history == null ? null : recorder;
+        this.account = account;
+        this.accountKey = account == null ? null : account.getBytes(StandardCharsets.UTF_8);
     }
 
     /**
@@ -23,22 +84,109 @@ public class Balance {
      * @return The account balance.
      */
     public double getBalance() {
-        return balance;
+        return Money.toDouble(snapshot.getBalanceCents());
+    }
+
+    /**
+     * Retrieves the current balance in cents.
+     * @return The account balance in cents.
+     */
+    public long getBalanceCents() {
+        return snapshot.getBalanceCents();
+    }
+
+    /**
+     * Retrieves the latest state of the account without locking.
+     * @return The balance, history length and version as of the last change.
+     */
+    public BalanceSnapshot getSnapshot() {
+        BalanceSnapshot current = snapshot;
+        if (current.getHistoryLength() >= 0) {
+            return current;
+        }
+        long stamp = lock.writeLock(); // Only until the first change or snapshot of the account
+        try {
+            resolveHistoryLength();
+            snapshot = new BalanceSnapshot(balanceCents, historyLength, snapshot.getVersion());
+            return snapshot;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Retrieves the history entries a snapshot's balance accounts for: exactly the first
+     * {@link BalanceSnapshot#getHistoryLength()} entries, even if later changes were recorded since.
+     * Waits for the recorder, if any, to record them. Requires that this balance is the only
+     * writer of its history, as for the accounts of a Ledger.
+     * @param snapshot A snapshot taken from this balance.
+     * @return A read-only view of the entries, oldest first; empty without history.
+     */
+    public List<String> getStatement(BalanceSnapshot snapshot) {
+        if (history == null) {
+            return List.of();
+        }
+        awaitHistory();
+        return history.getPage(0, snapshot.getHistoryLength());
+    }
+
+    /**
+     * Retrieves the history tracker attached to this balance.
+     * @return The history instance, or null if none was provided.
+     */
+    public History getHistory() {
+        return history;
+    }
+
+    /**
+     * Waits until the history holds every transaction applied to this account so far.
+     * Returns at once when history is recorded synchronously.
+     * @throws IllegalStateException if the recorder failed to record an entry.
+     */
+    public void awaitHistory() {
+        if (recorder != null) {
+            recorder.awaitApplied(lastHistorySeq);
+        }
     }
 
     /**
      * Deposits a valid amount into the account and records it in history.
      * @param amount The deposit amount.
-     * @return true if deposit is successful, false otherwise.
+     * @return true if deposit is successful, false for an invalid amount or a balance that would overflow.
      */
     public boolean deposit(double amount) {
-        if (amount <= 0) {
+        return depositCents(Money.requestedCents(amount));
+    }
+
+    /**
+     * Deposits a valid amount in cents into the account and records it in history.
+     * @param amountCents The deposit amount in cents.
+     * @return true if deposit is successful, false for an invalid amount or a balance that would overflow.
+     */
+    public boolean depositCents(long amountCents) {
+        TransactionEvent event = new TransactionEvent();
+        event.begin();
+        if (amountCents <= 0) {
+            event.finish(account, TransactionType.DEPOSIT, amountCents, "invalid_amount");
             return false; // Invalid deposit amount
         }
-        balance += amount;
-        if (history != null) {
-            history.recordTransaction("deposit", amount); // 🔹 Uses correct method
+        long seq;
+        int historyPosition;
+        long stamp = lock.writeLock();
+        try {
+            if (balanceCents > Long.MAX_VALUE - amountCents) {
+                event.finish(account, TransactionType.DEPOSIT, amountCents, "balance_limit");
+                return false; // The balance would overflow
+            }
+            seq = log(TransactionType.DEPOSIT, amountCents); // First, so a rejected append changes nothing
+            balanceCents += amountCents;
+            historyPosition = record(TransactionType.DEPOSIT, amountCents, 0);
+            commit();
+        } finally {
+            lock.unlockWrite(stamp);
         }
+        awaitDurable(seq, amountCents, historyPosition);
+        event.finish(account, TransactionType.DEPOSIT, amountCents, "applied");
         return true;
     }
 
@@ -48,13 +196,347 @@ public class Balance {
      * @return true if withdrawal is successful, false otherwise.
      */
     public boolean withdraw(double amount) {
-        if (amount <= 0 || amount > balance) {
+        return withdrawCents(Money.requestedCents(amount));
+    }
+
+    /**
+     * Withdraws a valid amount in cents from the account and records it in history.
+     * @param amountCents The withdrawal amount in cents.
+     * @return true if withdrawal is successful, false otherwise.
+     */
+    public boolean withdrawCents(long amountCents) {
+        TransactionEvent event = new TransactionEvent();
+        event.begin();
+        if (amountCents <= 0) {
+            event.finish(account, TransactionType.WITHDRAW, amountCents, "invalid_amount");
             return false; // Invalid withdrawal
         }
-        balance -= amount;
-        if (history != null) {
-            history.recordTransaction("withdraw", amount); // 🔹 Uses correct method
+        long seq;
+        int historyPosition;
+        long stamp = lock.writeLock();
+        try {
+            if (amountCents > balanceCents) {
+                event.finish(account, TransactionType.WITHDRAW, amountCents, "insufficient_funds");
+                return false; // Insufficient funds
+            }
+            seq = log(TransactionType.WITHDRAW, amountCents); // First, so a rejected append changes nothing
+            balanceCents -= amountCents;
+            historyPosition = record(TransactionType.WITHDRAW, amountCents, 0);
+            commit();
+        } finally {
+            lock.unlockWrite(stamp);
         }
+        awaitDurable(seq, -amountCents, historyPosition);
+        event.finish(account, TransactionType.WITHDRAW, amountCents, "applied");
         return true;
     }
+
+    /**
+     * Applies a batch of deposits and withdrawals as one transaction. Items are validated in
+     * order against the running balance: invalid amounts, withdrawals exceeding the balance
+     * left by the items before them and deposits that would overflow it are rejected, all others
+     * are applied. Readers see the balance either before or after the whole batch, the journal
+     * stores the applied items as one all-or-nothing batch with a single commit, and history
+     * receives them in one append.
+     * @param batch The items to apply.
+     * @return Which items were applied or rejected, and the resulting balance.
+     */
+    public BatchResult applyBatch(TransactionBatch batch) {
+        TransactionEvent event = new TransactionEvent();
+        event.begin();
+        int size = batch.size();
+        byte[] types = new byte[size]; // Applied items, compacted
+        long[] amounts = new long[size];
+        int applied = 0;
+        int[] rejectedIndexes = new int[0];
+        BatchResult.Rejection[] rejections = new BatchResult.Rejection[0];
+        int rejected = 0;
+        long seq = 0;
+        long result;
+        long deltaCents;
+        int historyPosition = -1;
+        long stamp = lock.writeLock();
+        try {
+            long running = balanceCents;
+            for (int i = 0; i < size; i++) {
+                byte type = batch.type(i);
+                long amount = batch.amount(i);
+                BatchResult.Rejection rejection = null;
+                if (amount <= 0) {
+                    rejection = BatchResult.Rejection.INVALID_AMOUNT;
+                } else if (type == TransactionType.WITHDRAW.code() && amount > running) {
+                    rejection = BatchResult.Rejection.INSUFFICIENT_FUNDS;
+                } else if (type == TransactionType.DEPOSIT.code() && running > Long.MAX_VALUE - amount) {
+                    rejection = BatchResult.Rejection.BALANCE_LIMIT;
+                }
+                if (rejection != null) {
+                    if (rejected == rejectedIndexes.length) {
+                        rejectedIndexes = Arrays.copyOf(rejectedIndexes, Math.max(4, rejected * 2));
+                        rejections = Arrays.copyOf(rejections, rejectedIndexes.length);
+                    }
+                    rejectedIndexes[rejected] = i;
+                    rejections[rejected++] = rejection;
+                    continue;
+                }
+                running += type == TransactionType.WITHDRAW.code() ? -amount : amount;
+                types[applied] = type;
+                amounts[applied++] = amount;
+            }
+            if (journal != null && applied > 0) {
+                seq = journal.appendBatch(accountKey, types, amounts, applied, System.currentTimeMillis());
+            }
+            deltaCents = running - balanceCents;
+            balanceCents = running;
+            result = running;
+            if (applied > 0) {
+                if (history != null) {
+                    awaitHistory(); // Entries still in the recorder's buffer precede the batch
+                    resolveHistoryLength();
+                    historyPosition = historyLength;
+                    history.recordBatch(types, amounts, applied);
+                    historyLength += applied;
+                }
+                commit();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        awaitDurable(seq, deltaCents, historyPosition);
+        long volume = 0;
+        for (int i = 0; i < applied; i++) {
+            volume += amounts[i];
+        }
+        event.finishBatch(account, volume, rejected == 0 ? "applied" : applied == 0 ? "rejected" : "partially_applied");
+        return new BatchResult(applied, Arrays.copyOf(rejectedIndexes, rejected),
+                Arrays.copyOf(rejections, rejected), result);
+    }
+
+    /**
+     * Moves an amount in cents from this account to another one atomically. Both write locks are
+     * held while the balances change, so readers never see the amount missing from both accounts
+     * or present in both, and the journal stores both sides as one all-or-nothing batch.
+     * Each history receives one side of the transfer, linked by the transfer id.
+     * Both balances must share the same journal and recorder, as the accounts of a Ledger do.
+     * @param target The account to credit.
+     * @param amountCents The amount in cents.
+     * @param transferId The transfer id (see {@link Journal#appendTransfer}).
+     * @return true if the transfer is successful, false for an invalid amount, the same account, insufficient funds
+     *         or a target balance that would overflow.
+     */
+    boolean transferTo(Balance target, long amountCents, long transferId) {
+        TransactionEvent event = new TransactionEvent();
+        event.begin();
+        if (amountCents <= 0 || target == this) {
+            event.finish(account, TransactionType.TRANSFER_OUT, amountCents, "invalid_amount");
+            return false;
+        }
+        Balance first = lockOrder < target.lockOrder ? this : target;
+        Balance second = first == this ? target : this;
+        long seq = 0;
+        int outPosition;
+        int inPosition;
+        long firstStamp = first.lock.writeLock();
+        try {
+            long secondStamp = second.lock.writeLock();
+            try {
+                if (amountCents > balanceCents) {
+                    event.finish(account, TransactionType.TRANSFER_OUT, amountCents, "insufficient_funds");
+                    return false; // Insufficient funds
+                }
+                if (target.balanceCents > Long.MAX_VALUE - amountCents) {
+                    event.finish(account, TransactionType.TRANSFER_OUT, amountCents, "balance_limit");
+                    return false; // The target balance would overflow
+                }
+                if (journal != null) {
+                    seq = journal.appendTransfer(accountKey, target.accountKey, amountCents, transferId);
+                }
+                balanceCents -= amountCents;
+                target.balanceCents += amountCents;
+                outPosition = record(TransactionType.TRANSFER_OUT, amountCents, transferId);
+                inPosition = target.record(TransactionType.TRANSFER_IN, amountCents, transferId);
+                commit();
+                target.commit();
+            } finally {
+                second.lock.unlockWrite(secondStamp);
+            }
+        } finally {
+            first.lock.unlockWrite(firstStamp);
+        }
+        try {
+            awaitDurable(seq);
+        } catch (UncheckedIOException e) {
+            firstStamp = first.lock.writeLock(); // Take back both sides at once, as they were applied
+            try {
+                long secondStamp = second.lock.writeLock();
+                try {
+                    undo(-amountCents, outPosition, e);
+                    target.undo(amountCents, inPosition, e);
+                } finally {
+                    second.lock.unlockWrite(secondStamp);
+                }
+            } finally {
+                first.lock.unlockWrite(firstStamp);
+            }
+            throw e;
+        }
+        event.finish(account, TransactionType.TRANSFER_OUT, amountCents, "applied");
+        return true;
+    }
+
+    /**
+     * Re-applies a transaction read back from the journal, without validating or logging it again.
+     * @param type The type of transaction.
+     * @param amountCents The amount in cents.
+     * @param timestampMillis The original time of the transaction.
+     * @param recordHistory Whether to add the transaction to history as well.
+     */
+    void replay(TransactionType type, long amountCents, long timestampMillis, boolean recordHistory) {
+        replay(type, amountCents, timestampMillis, 0, recordHistory);
+    }
+
+    /**
+     * Re-applies a linked transaction, such as one side of a transfer, read back from the journal.
+     * @param type The type of transaction.
+     * @param amountCents The amount in cents.
+     * @param timestampMillis The original time of the transaction.
+     * @param link The link of its history entry, or 0 for none.
+     * @param recordHistory Whether to add the transaction to history as well.
+     */
+    void replay(TransactionType type, long amountCents, long timestampMillis, long link, boolean recordHistory) {
+        long stamp = lock.writeLock();
+        try {
+            balanceCents += type.signedAmount(amountCents);
+            if (history != null && recordHistory) {
+                resolveHistoryLength();
+                history.recordTransactionAt(type, amountCents, timestampMillis, link);
+                historyLength++;
+            } else if (history != null) {
+                historyLength = history.size(); // Already in a persistent history
+            }
+            commit();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Discards history entries the journal does not account for, after recovery has replayed it.
+     * A persistent history can run ahead of the journal when the process stops between writing
+     * an entry and forcing its journal record.
+     * @param length The number of history entries the journal accounts for.
+     * @throws IOException if the history segments cannot be updated.
+     */
+    void truncateHistory(int length) throws IOException {
+        long stamp = lock.writeLock();
+        try {
+            history.truncate(length);
+            historyLength = length;
+            snapshot = new BalanceSnapshot(balanceCents, historyLength, snapshot.getVersion());
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Appends a change to the journal while the write lock is held, so the journal sees
+     * this account's changes in the order they were applied.
+     * @return The journal sequence number, or 0 without a journal.
+     */
+    private long log(TransactionType type, long amountCents) {
+        return journal == null ? 0 : journal.append(type.code(), accountKey, amountCents, System.currentTimeMillis());
+    }
+
+    /**
+     * Records a history entry, or publishes it to the recorder, while the write lock is held, so
+     * entries reach the history in the order they were applied. Does nothing without history.
+     * @param link The link of the entry; a transfer id also gives the entry's time.
+     * @return The position of the entry in the history, or -1 without history.
+     */
+    private int record(TransactionType type, long amountCents, long link) {
+        if (history == null) {
+            return -1;
+        }
+        resolveHistoryLength();
+        int position = historyLength;
+        if (recorder == null) {
+            if (link == 0) {
+                history.recordTransactionCents(type.typeName(), amountCents); // 🔹 Uses correct method
+            } else {
+                history.recordTransactionAt(type, amountCents, link >>> Journal.TRANSFER_ID_SHIFT, link);
+            }
+            historyLength++;
+            return position;
+        }
+        long timestampMillis = link != 0 ? link >>> Journal.TRANSFER_ID_SHIFT : history.currentTimeMillis();
+        lastHistorySeq = recorder.publish(history, type, amountCents, timestampMillis, link); // Never dropped
+        historyLength++;
+        return position;
+    }
+
+    /**
+     * Reads the length of a history this balance has not written to yet, under the write lock.
+     */
+    private void resolveHistoryLength() {
+        if (historyLength < 0) {
+            historyLength = history.size();
+        }
+    }
+
+    /**
+     * Publishes the state left by a change while the write lock is held.
+     */
+    private void commit() {
+        snapshot = new BalanceSnapshot(balanceCents, historyLength, snapshot.getVersion() + 1);
+    }
+
+    /**
+     * Waits for a logged change to reach disk; group commit batches this with other callers.
+     */
+    private void awaitDurable(long seq) {
+        if (journal != null) {
+            journal.awaitDurable(seq);
+        }
+    }
+
+    /**
+     * Waits for a logged change to reach disk. If the journal fails instead, the change is taken
+     * back before the failure is rethrown, so a change that was never acknowledged does not stay visible.
+     * @param deltaCents The change made to the balance.
+     * @param historyPosition The position of the change's first history entry, or -1 for none.
+     */
+    private void awaitDurable(long seq, long deltaCents, int historyPosition) {
+        try {
+            awaitDurable(seq);
+        } catch (UncheckedIOException e) {
+            long stamp = lock.writeLock();
+            try {
+                undo(deltaCents, historyPosition, e);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Takes back a change whose journal record never reached disk, while the write lock is held.
+     * The journal fails stop, so every change logged after this one fails too: the history
+     * entries discarded from this change's position on all belong to changes being taken back.
+     * @param failure The journal failure, which collects any error met while discarding history.
+     */
+    private void undo(long deltaCents, int historyPosition, UncheckedIOException failure) {
+        balanceCents -= deltaCents;
+        if (historyPosition >= 0) {
+            try {
+                awaitHistory();
+                if (history.size() > historyPosition) {
+                    history.truncate(historyPosition);
+                }
+                historyLength = Math.min(historyLength, historyPosition);
+            } catch (IOException | RuntimeException e) {
+                failure.addSuppressed(e);
+            }
+        }
+        commit();
+    }
 }
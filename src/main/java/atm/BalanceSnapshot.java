@@ -0,0 +1,59 @@
+package atm;
+
+/**
+ * The BalanceSnapshot class is an immutable view of an account at one point in its life: the
+ * balance, how many entries its history held at that point and a version that grows with every
+ * change. A Balance publishes a new snapshot with each change, so readers get all three values
+ * from one memory read without taking a lock or retrying behind writers. The balance is exactly
+ * the result of the first {@link #getHistoryLength()} history entries, which lets a statement
+ * show both without them disagreeing (see {@link Balance#getStatement(BalanceSnapshot)}).
+ */
+public final class BalanceSnapshot {
+    private final long balanceCents;
+    private final int historyLength; // History entries the balance accounts for
+    private final long version; // Number of changes applied to the account since it was created
+
+    BalanceSnapshot(long balanceCents, int historyLength, long version) {
+        this.balanceCents = balanceCents;
+        this.historyLength = historyLength;
+        this.version = version;
+    }
+
+    /**
+     * Returns the balance.
+     * @return The balance in dollars.
+     */
+    public double getBalance() {
+        return Money.toDouble(balanceCents);
+    }
+
+    /**
+     * Returns the balance in cents.
+     * @return The balance in cents.
+     */
+    public long getBalanceCents() {
+        return balanceCents;
+    }
+
+    /**
+     * Returns the number of history entries recorded up to this snapshot.
+     * @return The history length, or 0 for a balance without history.
+     */
+    public int getHistoryLength() {
+        return historyLength;
+    }
+
+    /**
+     * Returns the version of the account; a larger version is a later state.
+     * @return The number of changes applied since the account was created or recovered.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return "BalanceSnapshot[balance=" + Money.format(balanceCents) + ", historyLength=" + historyLength
+                + ", version=" + version + "]";
+    }
+}
@@ -0,0 +1,73 @@
+package atm;
+
+/**
+ * The BatchResult class reports the outcome of {@link Balance#applyBatch(TransactionBatch)}:
+ * how many items were applied, which ones were rejected and why, and the balance afterwards.
+ */
+public final class BatchResult {
+    /**
+     * The reason an item was rejected.
+     */
+    public enum Rejection {
+        /** The amount was zero or negative. */
+        INVALID_AMOUNT,
+        /** A withdrawal exceeded the balance left by the items before it. */
+        INSUFFICIENT_FUNDS,
+        /** A deposit would take the balance beyond the largest amount a long holds in cents. */
+        BALANCE_LIMIT
+    }
+
+    private final int appliedCount;
+    private final int[] rejectedIndexes; // Batch positions of rejected items, ascending
+    private final Rejection[] rejections; // Reason for each rejected item
+    private final long balanceCents;
+
+    BatchResult(int appliedCount, int[] rejectedIndexes, Rejection[] rejections, long balanceCents) {
+        this.appliedCount = appliedCount;
+        this.rejectedIndexes = rejectedIndexes;
+        this.rejections = rejections;
+        this.balanceCents = balanceCents;
+    }
+
+    /**
+     * Returns the number of items applied.
+     * @return The applied count.
+     */
+    public int getAppliedCount() {
+        return appliedCount;
+    }
+
+    /**
+     * Returns the number of items rejected.
+     * @return The rejected count.
+     */
+    public int getRejectedCount() {
+        return rejectedIndexes.length;
+    }
+
+    /**
+     * Returns the batch position of a rejected item.
+     * @param i The rejected item, from 0 to {@link #getRejectedCount()} - 1.
+     * @return The position of the item in the batch.
+     */
+    public int getRejectedIndex(int i) {
+        return rejectedIndexes[i];
+    }
+
+    /**
+     * Returns why an item was rejected.
+     * @param i The rejected item, from 0 to {@link #getRejectedCount()} - 1.
+     * @return The reason.
+     */
+    public Rejection getRejection(int i) {
+        return rejections[i];
+    }
+
+    /**
+     * Returns the balance right after the batch was applied.
+     * @return The balance in cents.
+     */
+    public long getBalanceCents() {
+        return balanceCents;
+    }
+}
@@ -0,0 +1,144 @@
+package atm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The Checkpoint class is a compact image of every account's balance and transaction count
+ * as of the end of a given journal segment. It is built by folding sealed journal segments
+ * into the previous checkpoint, so it never reads live balances.
+ * <p>
+ * On disk it is [int magic][int version][long covered segment][int account count], then
+ * per account [UTF account][long balance in cents][long transaction count], then an
+ * int CRC32C of everything before it.
+ */
+final class Checkpoint {
+    private static final int MAGIC = 0x434B5054; // "CKPT"
+    private static final int VERSION = 1;
+
+    /**
+     * Receives the accounts stored in a checkpoint.
+     */
+    @FunctionalInterface
+    interface AccountVisitor {
+        void visit(String account, long balanceCents, long transactions);
+    }
+
+    private long coveredSegment; // Last journal segment folded into this image (0 for none)
+    private final Map<String, long[]> accounts = new LinkedHashMap<>(); // Account -> {balance, transactions}
+
+    /**
+     * Returns the last journal segment folded into this image.
+     * @return The segment number, or 0 if no segment has been folded.
+     */
+    long coveredSegment() {
+        return coveredSegment;
+    }
+
+    /**
+     * Folds one journal record into the image.
+     */
+    void apply(byte kind, String account, long amountCents) {
+        if (kind == Journal.OPEN_ACCOUNT) {
+            accounts.put(account, new long[] {amountCents, 0});
+            return;
+        }
+        long[] image = accounts.get(account);
+        if (image == null) {
+            throw new IllegalStateException("Journal references unknown account: " + account);
+        }
+        image[0] += TransactionType.fromCode(kind).signedAmount(amountCents);
+        image[1]++;
+    }
+
+    /**
+     * Marks the image as covering every segment up to and including the given one.
+     */
+    void setCoveredSegment(long segment) {
+        this.coveredSegment = segment;
+    }
+
+    /**
+     * Visits every account in the order the accounts were opened.
+     */
+    void forEach(AccountVisitor visitor) {
+        accounts.forEach((account, image) -> visitor.visit(account, image[0], image[1]));
+    }
+
+    /**
+     * Reads a checkpoint file.
+     * @param file The checkpoint file.
+     * @return The checkpoint, or an empty one if the file does not exist.
+     * @throws IOException if the file is unreadable or fails its checksum.
+     */
+    static Checkpoint read(Path file) throws IOException {
+        Checkpoint checkpoint = new Checkpoint();
+        if (!Files.exists(file)) {
+            return checkpoint;
+        }
+        CRC32C crc = new CRC32C();
+        try (InputStream raw = new BufferedInputStream(Files.newInputStream(file));
+             CheckedInputStream checked = new CheckedInputStream(raw, crc)) {
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a checkpoint file: " + file);
+            }
+            checkpoint.coveredSegment = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String account = in.readUTF();
+                checkpoint.accounts.put(account, new long[] {in.readLong(), in.readLong()});
+            }
+            int expected = (int) crc.getValue();
+            if (new DataInputStream(raw).readInt() != expected) {
+                throw new IOException("Checkpoint checksum mismatch: " + file);
+            }
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Writes the checkpoint to a temporary file, forces it to disk and atomically
+     * replaces the given file, so a crash leaves either the old or the new checkpoint.
+     * @param file The checkpoint file.
+     * @throws IOException if writing fails.
+     */
+    void write(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            BufferedOutputStream raw = new BufferedOutputStream(Channels.newOutputStream(channel));
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(raw, crc));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(coveredSegment);
+            out.writeInt(accounts.size());
+            for (Map.Entry<String, long[]> entry : accounts.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue()[0]);
+                out.writeLong(entry.getValue()[1]);
+            }
+            out.flush();
+            new DataOutputStream(raw).writeInt((int) crc.getValue());
+            raw.flush();
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
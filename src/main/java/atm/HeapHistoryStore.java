@@ -0,0 +1,105 @@
+package atm;
+
+import java.util.Arrays;
+
+/**
+ * The HeapHistoryStore class keeps history columns in growable primitive arrays on the heap.
+ * Each entry costs 17 bytes; the link column is only allocated once a linked entry is appended,
+ * and then adds 8 bytes per entry.
+ */
+class HeapHistoryStore implements HistoryStore {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] timestamps = new long[INITIAL_CAPACITY]; // Epoch milliseconds of each entry
+    private byte[] types = new byte[INITIAL_CAPACITY]; // TransactionType codes of each entry
+    private long[] amounts = new long[INITIAL_CAPACITY]; // Amounts of each entry, in cents
+    private long[] links; // Link of each entry (null while no entry is linked)
+    private int size; // Number of stored entries
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long timestamp(int position) {
+        return timestamps[position];
+    }
+
+    @Override
+    public byte type(int position) {
+        return types[position];
+    }
+
+    @Override
+    public long amount(int position) {
+        return amounts[position];
+    }
+
+    @Override
+    public long link(int position) {
+        return links == null ? 0 : links[position];
+    }
+
+    @Override
+    public void append(long timestampMillis, byte type, long amountCents, long link) {
+        if (size == timestamps.length) {
+            grow();
+        }
+        timestamps[size] = timestampMillis;
+        types[size] = type;
+        amounts[size] = amountCents;
+        if (link != 0) {
+            if (links == null) {
+                links = new long[timestamps.length];
+            }
+            links[size] = link;
+        }
+        size++;
+    }
+
+    @Override
+    public void appendAll(long timestampMillis, byte[] types, long[] amountsCents, int count) {
+        while (timestamps.length - size < count) {
+            grow();
+        }
+        Arrays.fill(timestamps, size, size + count, timestampMillis);
+        System.arraycopy(types, 0, this.types, size, count);
+        System.arraycopy(amountsCents, 0, amounts, size, count);
+        size += count;
+    }
+
+    @Override
+    public void truncate(int size) {
+        if (size < 0 || size > this.size) {
+            throw new IllegalArgumentException("Invalid history size: " + size);
+        }
+        if (links != null) {
+            Arrays.fill(links, size, this.size, 0); // appendAll leaves the link column untouched
+        }
+        this.size = size;
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+
+    /**
+     * Grows all columns by half of their current capacity.
+     */
+    private void grow() {
+        int capacity = timestamps.length + (timestamps.length >> 1);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        types = Arrays.copyOf(types, capacity);
+        amounts = Arrays.copyOf(amounts, capacity);
+        if (links != null) {
+            links = Arrays.copyOf(links, capacity);
+        }
+    }
+}
@@ -1,24 +1,100 @@
 package atm;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Objects;
+import java.util.RandomAccess;
 
 /**
  * The History class tracks and stores account transactions with timestamps.
  * Provides filtering and formatted display of transaction history.
+ * Entries are kept in parallel primitive columns (timestamp, type code, amount in cents, link)
+ * and are only rendered as text when read. Timestamps never decrease, so time ranges
+ * are located by binary search.
+ * The columns live on the heap by default, or in memory-mapped segment files that
+ * survive restarts when a directory is given.
+ * Timestamps come from a pluggable Clock, whose zone is also used for rendering. Rendering
+ * reuses the formatted "yyyy-MM-dd HH:mm:ss" text while consecutive entries fall in the same second.
+ * Every recorded entry emits a {@link HistoryRecordEvent} to JDK Flight Recorder.
+ * All methods are synchronized so concurrent deposits on the same account keep the log intact.
  */
-public class History {
-    private final List<String> history; // Stores transaction history
+public class History implements AutoCloseable {
+    /** Largest link an entry can carry; links are stored in 56 bits. */
+    static final long MAX_LINK = 0x00FFFFFFFFFFFFFFL;
+
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int WRITE_CHUNK = 256; // Entries rendered per lock acquisition when streaming
+    private static final String EMPTY_MESSAGE = "No transaction history available.";
+
+    private final HistoryStore store; // Timestamp, type and amount columns
+    private final int[][] typeIndex; // Per type code: positions of entries of that type, ascending
+    private final int[] typeCounts; // Per type code: number of positions in typeIndex
+    private int indexedSize; // Number of leading entries already added to typeIndex
+    private final ZoneId zone; // Time zone used when rendering timestamps
+    private final Clock clock; // Source of recording times
+    private final boolean cacheTimestamps; // Whether rendering reuses the formatted text of the last second
+    private long cachedSecond = Long.MIN_VALUE; // Epoch second whose text is in cachedTimestamp
+    private final StringBuilder cachedTimestamp = new StringBuilder(19); // "yyyy-MM-dd HH:mm:ss" of cachedSecond
 
     /**
      * Constructor initializes history tracking.
      */
     public History() {
-        this.history = new ArrayList<>();
+        this(new HeapHistoryStore());
+    }
+
+    /**
+     * Constructor initializes history tracking with the given clock, e.g. a fixed clock in tests.
+     * @param clock The source of recording times; its zone is used when rendering them.
+     */
+    public History(Clock clock) {
+        this(new HeapHistoryStore(), clock, true);
+    }
+
+    /**
+     * Constructor initializes history tracking backed by memory-mapped segment files.
+     * Existing segments in the directory are reopened without reading their entries.
+     * @param directory The directory holding this history's segment files.
+     * @throws IOException if the segments cannot be opened.
+     */
+    public History(Path directory) throws IOException {
+        this(new MappedHistoryStore(directory, MappedHistoryStore.DEFAULT_SEGMENT_SHIFT));
+    }
+
+    /**
+     * Constructor initializes history tracking over the given column store.
+     * @param store The column store.
+     */
+    History(HistoryStore store) {
+        this(store, Clock.systemDefaultZone(), true);
+    }
+
+    /**
+     * Constructor initializes history tracking over the given column store and clock.
+     * @param store The column store.
+     * @param clock The source of recording times; its zone is used when rendering them.
+     * @param cacheTimestamps Whether rendering reuses the formatted text of the previous entry's second.
+     */
+    History(HistoryStore store, Clock clock, boolean cacheTimestamps) {
+        this.store = store;
+        this.clock = clock;
+        this.cacheTimestamps = cacheTimestamps;
+        this.typeIndex = new int[TransactionType.values().length + 1][];
+        this.typeCounts = new int[typeIndex.length];
+        for (int code = 1; code < typeIndex.length; code++) {
+            typeIndex[code] = new int[INITIAL_CAPACITY];
+        }
+        this.zone = clock.getZone();
     }
 
     /**
@@ -27,33 +103,193 @@ public class History {
      * @param amount The amount involved in the transaction.
      */
     public void recordTransaction(String type, double amount) {
-        String timestamp = LocalDateTime.now().format(FORMATTER);
-        String entry = "[" + timestamp + "] ";
+        recordTransactionCents(type, Money.fromDouble(amount));
+    }
 
-        switch (type.toLowerCase()) {
-            case "deposit" -> history.add(entry + "Deposited: $" + amount);
-            case "withdraw" -> history.add(entry + "Withdrawn: $" + amount);
-            default -> throw new IllegalArgumentException("Invalid transaction type: " + type);
+    /**
+     * Records a transaction in history with a timestamp.
+     * @param type The type of transaction ("deposit" or "withdraw").
+     * @param amountCents The amount involved in the transaction, in cents.
+     */
+    public void recordTransactionCents(String type, long amountCents) {
+        recordTransaction(TransactionType.parse(type), amountCents);
+    }
+
+    /**
+     * Records a transaction in history with the current time.
+     * @param type The type of transaction.
+     * @param amountCents The amount involved in the transaction, in cents.
+     */
+    public void recordTransaction(TransactionType type, long amountCents) {
+        recordTransactionAt(type, amountCents, clock.millis());
+    }
+
+    /**
+     * Records a transaction in history with an explicit timestamp.
+     * A timestamp earlier than the previous entry is clamped to it so the column stays sorted.
+     * @param type The type of transaction.
+     * @param amountCents The amount involved in the transaction, in cents.
+     * @param timestampMillis The time of the transaction, in epoch milliseconds.
+     */
+    synchronized void recordTransactionAt(TransactionType type, long amountCents, long timestampMillis) {
+        recordTransactionAt(type, amountCents, timestampMillis, 0);
+    }
+
+    /**
+     * Records a linked transaction, such as one side of a transfer, with an explicit timestamp.
+     * @param type The type of transaction.
+     * @param amountCents The amount involved in the transaction, in cents.
+     * @param timestampMillis The time of the transaction, in epoch milliseconds.
+     * @param link The link shared with the related entries, from 1 to {@link #MAX_LINK}, or 0 for none.
+     */
+    synchronized void recordTransactionAt(TransactionType type, long amountCents, long timestampMillis, long link) {
+        if (link < 0 || link > MAX_LINK) {
+            throw new IllegalArgumentException("Link out of range: " + link);
+        }
+        HistoryRecordEvent event = new HistoryRecordEvent();
+        event.begin();
+        int size = store.size();
+        long timestamp = size > 0 ? Math.max(timestampMillis, store.timestamp(size - 1)) : timestampMillis;
+        store.append(timestamp, type.code(), amountCents, link);
+        if (indexedSize == size) {
+            addToIndex(type.code(), size); // Keep the index current; a lagging index catches up on query
+            indexedSize++;
         }
+        event.finish(type, amountCents, size + 1);
+    }
+
+    /**
+     * Records several transactions at once with the current time, taking the lock once.
+     * @param types The TransactionType codes.
+     * @param amountsCents The amounts in cents.
+     * @param count The number of leading entries of the arrays to record.
+     */
+    synchronized void recordBatch(byte[] types, long[] amountsCents, int count) {
+        int size = store.size();
+        long now = clock.millis();
+        long timestamp = size > 0 ? Math.max(now, store.timestamp(size - 1)) : now;
+        store.appendAll(timestamp, types, amountsCents, count);
+        if (indexedSize == size) {
+            for (int i = 0; i < count; i++) {
+                addToIndex(types[i], size + i);
+            }
+            indexedSize += count;
+        }
+    }
+
+    /**
+     * Discards the entries from the given position on, such as entries of changes whose journal
+     * records never reached disk. The type index is rebuilt from the remaining entries on the next query.
+     * @param size The number of leading entries to keep.
+     * @throws IOException if the segment files cannot be updated.
+     * @throws IllegalArgumentException if size is negative or larger than the history.
+     */
+    synchronized void truncate(int size) throws IOException {
+        store.truncate(size);
+        indexedSize = 0;
+        Arrays.fill(typeCounts, 0);
+    }
+
+    /**
+     * Returns the current time of this history's clock.
+     * @return The time in epoch milliseconds.
+     */
+    long currentTimeMillis() {
+        return clock.millis();
+    }
+
+    /**
+     * Returns the number of recorded transactions.
+     * @return The history size.
+     */
+    public synchronized int size() {
+        return store.size();
+    }
+
+    /**
+     * Tells whether this history survives restarts.
+     * @return true if the history is backed by segment files.
+     */
+    public boolean isPersistent() {
+        return store.isPersistent();
+    }
+
+    /**
+     * Flushes segment files to disk, if any.
+     * @throws IOException if flushing fails.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        store.close();
     }
 
     /**
      * Retrieves all account transactions.
-     * @return A copy of the transaction history list.
+     * The returned list is a read-only view; entries are rendered when accessed.
+     * @return A view of the transaction history.
+     */
+    public synchronized List<String> getHistory() {
+        return new RangeView(0, store.size());
+    }
+
+    /**
+     * Retrieves one page of transactions, oldest first.
+     * Pass the previous offset plus the previous page size to continue from where a page ended.
+     * @param offset The position of the first entry to return.
+     * @param limit The maximum number of entries to return.
+     * @return A read-only view of at most limit entries; empty once offset reaches the end.
      */
-    public List<String> getHistory() {
-        return new ArrayList<>(history); // Return a copy to avoid external modifications
+    public synchronized List<String> getPage(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Offset and limit must not be negative");
+        }
+        int size = store.size();
+        int start = Math.min(offset, size);
+        return new RangeView(start, (int) Math.min((long) start + limit, size));
     }
 
     /**
-     * Retrieves transactions of a specific type ("deposit" or "withdraw").
+     * Retrieves transactions of a specific type ("deposit", "withdraw", "transfer_out" or "transfer_in").
+     * Uses the per-type index, so the cost depends on the result size only.
+     * The returned list is a read-only view; entries are rendered when accessed.
      * @param type The transaction type to filter by.
-     * @return A filtered list of transactions.
+     * @return A filtered view of transactions.
+     * @throws IllegalArgumentException if the type name is unknown.
      */
-    public List<String> getFilteredHistory(String type) {
-        return history.stream()
-                .filter(entry -> entry.contains(type.equalsIgnoreCase("deposit") ? "Deposited" : "Withdrawn"))
-                .collect(Collectors.toList());
+    public synchronized List<String> getFilteredHistory(String type) {
+        byte code = TransactionType.parse(type).code();
+        catchUpIndex();
+        return new TypeRangeView(code, 0, typeCounts[code]);
+    }
+
+    /**
+     * Retrieves transactions recorded within a time range.
+     * The returned list is a read-only view; entries are rendered when accessed.
+     * @param from The start of the range (inclusive).
+     * @param to The end of the range (exclusive).
+     * @return A view of the matching transactions.
+     */
+    public synchronized List<String> getHistory(LocalDateTime from, LocalDateTime to) {
+        int start = lowerBound(toMillis(from));
+        int end = Math.max(start, lowerBound(toMillis(to)));
+        return new RangeView(start, end);
+    }
+
+    /**
+     * Retrieves transactions of a specific type recorded within a time range.
+     * The returned list is a read-only view; entries are rendered when accessed.
+     * @param type The transaction type to filter by.
+     * @param from The start of the range (inclusive).
+     * @param to The end of the range (exclusive).
+     * @return A view of the matching transactions.
+     * @throws IllegalArgumentException if the type name is unknown.
+     */
+    public synchronized List<String> getFilteredHistory(String type, LocalDateTime from, LocalDateTime to) {
+        byte code = TransactionType.parse(type).code();
+        catchUpIndex();
+        int start = indexLowerBound(code, lowerBound(toMillis(from)));
+        int end = Math.max(start, indexLowerBound(code, lowerBound(toMillis(to))));
+        return new TypeRangeView(code, start, end);
     }
 
     /**
@@ -61,6 +297,220 @@ public class History {
      * @return A formatted string containing all transactions or a message if no transactions exist.
      */
     public String getFormattedHistory() {
-        return history.isEmpty() ? "No transaction history available." : String.join("\n", history);
+        StringBuilder out = new StringBuilder();
+        try {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringBuilder never throws
+        }
+        return out.toString();
+    }
+
+    /**
+     * Streams the formatted account summary to a writer, one line per transaction.
+     * Entries are rendered in small chunks, so memory use does not grow with the history,
+     * and the lock is not held while writing. Entries recorded after the call starts are not included.
+     * @param out The destination, e.g. a Writer or PrintStream.
+     * @throws IOException if writing to the destination fails.
+     */
+    public void writeTo(Appendable out) throws IOException {
+        writeTo(out, size());
+    }
+
+    /**
+     * Streams the first entries of the formatted account summary to a writer, e.g. the entries a
+     * {@link BalanceSnapshot} accounts for.
+     * @param out The destination, e.g. a Writer or PrintStream.
+     * @param end The number of entries to write, at most {@link #size()}.
+     * @throws IOException if writing to the destination fails.
+     * @throws IllegalArgumentException if end is negative or beyond the recorded entries.
+     */
+    public void writeTo(Appendable out, int end) throws IOException {
+        if (end < 0 || end > size()) {
+            throw new IllegalArgumentException("End out of range: " + end);
+        }
+        if (end == 0) {
+            out.append(EMPTY_MESSAGE);
+            return;
+        }
+        StringBuilder chunk = new StringBuilder(WRITE_CHUNK * 48);
+        for (int start = 0; start < end; start += WRITE_CHUNK) {
+            chunk.setLength(0);
+            appendEntries(chunk, start, Math.min(start + WRITE_CHUNK, end));
+            out.append(chunk);
+        }
+    }
+
+    /**
+     * Appends entries [start, end) as lines, with a newline before every entry but the first.
+     */
+    private synchronized void appendEntries(StringBuilder out, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (i > 0) {
+                out.append('\n');
+            }
+            appendEntry(out, i);
+        }
+    }
+
+    /**
+     * Renders the entry at a position as a new string.
+     */
+    private synchronized String renderAt(int position) {
+        return appendEntry(new StringBuilder(48), position).toString();
+    }
+
+    /**
+     * Renders the entry at the given position of a type index.
+     */
+    private synchronized String renderIndexed(byte code, int indexPosition) {
+        return renderAt(typeIndex[code][indexPosition]);
+    }
+
+    /**
+     * Finds the first entry whose timestamp is at or after the given time.
+     * @return A position in [0, size].
+     */
+    private int lowerBound(long millis) {
+        int low = 0;
+        int high = store.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (store.timestamp(mid) < millis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the first slot in a type index whose entry position is at or after the given one.
+     * @return A slot in [0, count].
+     */
+    private int indexLowerBound(byte code, int position) {
+        int[] positions = typeIndex[code];
+        int low = 0;
+        int high = typeCounts[code];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (positions[mid] < position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private long toMillis(LocalDateTime time) {
+        return time.atZone(zone).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Appends one entry in the form "[yyyy-MM-dd HH:mm:ss] Deposited: $x.xx".
+     */
+    private StringBuilder appendEntry(StringBuilder out, int index) {
+        out.append('[');
+        appendTimestamp(out, store.timestamp(index));
+        out.append("] ").append(TransactionType.fromCode(store.type(index)).label());
+        Money.appendTo(out, store.amount(index));
+        long link = store.link(index);
+        return link == 0 ? out : out.append(" (transfer #").append(link).append(')');
+    }
+
+    /**
+     * Appends a timestamp as "yyyy-MM-dd HH:mm:ss". When caching, the text is only formatted
+     * again once the second changes; entries are sorted by time, so runs of the same second are common.
+     */
+    private void appendTimestamp(StringBuilder out, long millis) {
+        if (!cacheTimestamps) {
+            FORMATTER.formatTo(LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), zone), out);
+            return;
+        }
+        long second = Math.floorDiv(millis, 1000);
+        if (second != cachedSecond) {
+            cachedTimestamp.setLength(0);
+            FORMATTER.formatTo(LocalDateTime.ofInstant(Instant.ofEpochSecond(second), zone), cachedTimestamp);
+            cachedSecond = second;
+        }
+        out.append(cachedTimestamp);
+    }
+
+    /**
+     * Appends an entry position to the index of its type.
+     */
+    private void addToIndex(byte code, int position) {
+        int[] positions = typeIndex[code];
+        int count = typeCounts[code];
+        if (count == positions.length) {
+            positions = Arrays.copyOf(positions, count + (count >> 1));
+            typeIndex[code] = positions;
+        }
+        positions[count] = position;
+        typeCounts[code] = count + 1;
+    }
+
+    /**
+     * Adds entries that are not yet indexed, such as those reopened from segment files.
+     * Runs once after startup; afterwards the index is maintained on every record.
+     */
+    private void catchUpIndex() {
+        int size = store.size();
+        for (; indexedSize < size; indexedSize++) {
+            addToIndex(store.type(indexedSize), indexedSize);
+        }
+    }
+
+    /**
+     * Read-only view over a contiguous range of entry positions.
+     * Entries are append-only, so the range stays valid as history grows.
+     */
+    private final class RangeView extends AbstractList<String> implements RandomAccess {
+        private final int start;
+        private final int end;
+
+        RangeView(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public String get(int index) {
+            Objects.checkIndex(index, end - start);
+            return renderAt(start + index);
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+    }
+
+    /**
+     * Read-only view over a contiguous range of one type index.
+     */
+    private final class TypeRangeView extends AbstractList<String> implements RandomAccess {
+        private final byte code;
+        private final int start;
+        private final int end;
+
+        TypeRangeView(byte code, int start, int end) {
+            this.code = code;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public String get(int index) {
+            Objects.checkIndex(index, end - start);
+            return renderIndexed(code, start + index);
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
     }
 }
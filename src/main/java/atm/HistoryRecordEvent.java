@@ -0,0 +1,42 @@
+package atm;
+
+import java.util.Locale;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The HistoryRecordEvent class is a JDK Flight Recorder event spanning one entry being appended
+ * to a History.
+ */
+@Name("atm.HistoryRecord")
+@Label("History Record")
+@Category({"ATM", "History"})
+@Description("One entry appended to an account history")
+final class HistoryRecordEvent extends jdk.jfr.Event {
+    @Label("Type")
+    String type;
+
+    @Label("Amount Bucket")
+    String amountBucket;
+
+    @Label("History Size")
+    @Description("Number of entries after the append")
+    int size;
+
+    /**
+     * Fills in and commits the event if a recording wants it.
+     * @param type The type of the entry.
+     * @param amountCents The amount in cents.
+     * @param size The number of entries after the append.
+     */
+    void finish(TransactionType type, long amountCents, int size) {
+        if (shouldCommit()) {
+            this.type = type.name().toLowerCase(Locale.ROOT);
+            this.amountBucket = TransactionEvent.amountBucket(amountCents);
+            this.size = size;
+            commit();
+        }
+    }
+}
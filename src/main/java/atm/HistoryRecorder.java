@@ -0,0 +1,207 @@
+package atm;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The HistoryRecorder class moves history recording off the transaction path. Balances publish
+ * compact events (target history, type code, amount, timestamp, link) into a bounded lock-free
+ * ring buffer, and one background thread appends them to their histories in publication order.
+ * <p>
+ * Producers claim a slot by incrementing a shared cursor, fill the slot's primitive columns and
+ * then publish the slot's sequence number; the consumer reads a slot once its sequence number
+ * matches. When the buffer is full, producers wait for the consumer to free a slot: an event is
+ * never dropped, since that would leave a balance that its history does not account for.
+ * {@link #awaitApplied(long)} and {@link #flush()} wait until events have reached their histories,
+ * so callers can read their own writes.
+ * <p>
+ * If appending an event fails, the recorder is broken: it keeps draining so producers never stall,
+ * but {@link #awaitApplied(long)} and {@link #flush()} throw.
+ */
+public final class HistoryRecorder implements AutoCloseable {
+    /** Default number of events the buffer can hold. */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final int DRAIN_CHUNK = 256; // Events applied before the consumer publishes its progress
+    private static final long IDLE_PARK_NANOS = 1_000_000; // Upper bound on a missed wake-up
+    private static final long WAIT_PARK_NANOS = 20_000; // Poll interval of producers and flushers that wait
+
+    private final int mask;
+    private final History[] targets; // History each event is recorded in
+    private final byte[] types; // TransactionType code of each event
+    private final long[] amounts; // Amount of each event, in cents
+    private final long[] timestamps; // Epoch milliseconds of each event
+    private final long[] links; // Link of each event, or 0
+    private final AtomicLongArray published; // Per slot: sequence number of the event it holds, once readable
+    private final AtomicLong claimed = new AtomicLong(); // Sequence number of the last claimed slot
+    private volatile long applied; // Sequence number of the last event appended to its history
+    private volatile boolean consumerIdle; // Set while the consumer is about to park
+    private volatile boolean closed; // Set by close(); the consumer stops once it has drained the buffer
+    private volatile RuntimeException failure; // First failed append; the recorder is broken from then on
+    private final Thread consumer;
+
+    /**
+     * Constructor creates a recorder with the default capacity.
+     */
+    public HistoryRecorder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor creates a recorder and starts its consumer thread.
+     * @param capacity The number of events the buffer can hold; rounded up to a power of two.
+     */
+    public HistoryRecorder(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity out of range: " + capacity);
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.targets = new History[size];
+        this.types = new byte[size];
+        this.amounts = new long[size];
+        this.timestamps = new long[size];
+        this.links = new long[size];
+        this.published = new AtomicLongArray(size);
+        this.consumer = new Thread(this::consume, "history-recorder");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * Publishes an event for the consumer to append to a history, waiting while the buffer is full.
+     * @param target The history to record in.
+     * @param type The type of transaction.
+     * @param amountCents The amount in cents.
+     * @param timestampMillis The time of the transaction, in epoch milliseconds.
+     * @param link The link of the entry, or 0 for none.
+     * @return The event's sequence number for {@link #awaitApplied(long)}.
+     * @throws IllegalStateException if the recorder is closed.
+     */
+    long publish(History target, TransactionType type, long amountCents, long timestampMillis, long link) {
+        if (closed) {
+            throw new IllegalStateException("History recorder is closed");
+        }
+        long seq = claimed.incrementAndGet();
+        long wrapPoint = seq - mask - 1;
+        while (applied < wrapPoint) {
+            LockSupport.parkNanos(WAIT_PARK_NANOS); // Buffer full: wait for the consumer
+        }
+        int slot = (int) seq & mask;
+        targets[slot] = target;
+        types[slot] = type.code();
+        amounts[slot] = amountCents;
+        timestamps[slot] = timestampMillis;
+        links[slot] = link;
+        published.set(slot, seq); // Volatile write orders the slot's columns before the sequence number
+        if (consumerIdle) {
+            LockSupport.unpark(consumer);
+        }
+        return seq;
+    }
+
+    /**
+     * Blocks until the event with the given sequence number, and every event before it, has been
+     * appended to its history.
+     * @param seq A sequence number returned by {@link #publish}; 0 returns immediately.
+     * @throws IllegalStateException if appending an event has failed, so a history may be incomplete.
+     */
+    void awaitApplied(long seq) {
+        while (applied < seq) {
+            if (!consumer.isAlive()) {
+                break; // Closed: nothing more will be applied
+            }
+            LockSupport.parkNanos(WAIT_PARK_NANOS);
+        }
+        RuntimeException cause = failure;
+        if (cause != null) {
+            throw new IllegalStateException("History recording failed", cause);
+        }
+    }
+
+    /**
+     * Blocks until every event published before this call has been appended to its history.
+     * @throws IllegalStateException if appending an event has failed, so a history may be incomplete.
+     */
+    public void flush() {
+        awaitApplied(claimed.get());
+    }
+
+    /**
+     * Returns the first failure to append an event to its history.
+     * @return The failure, or null if every event so far was recorded.
+     */
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Returns the number of events published but not yet appended to their histories.
+     * @return The backlog size.
+     */
+    public int getPendingCount() {
+        return (int) Math.max(0, claimed.get() - applied);
+    }
+
+    /**
+     * Records the pending events and stops the consumer thread. Publishing afterwards fails.
+     * @throws IllegalStateException if appending an event has failed; the recorder is closed anyway.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            flush();
+        } finally {
+            stopConsumer();
+        }
+    }
+
+    private void stopConsumer() {
+        LockSupport.unpark(consumer); // Ends its idle wait; it sees closed and returns
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Consumer loop: appends published events in sequence order until the recorder is closed.
+     */
+    private void consume() {
+        long next = 1;
+        while (true) {
+            int drained = 0;
+            while (drained < DRAIN_CHUNK && published.get((int) next & mask) == next) {
+                int slot = (int) next & mask;
+                History target = targets[slot];
+                targets[slot] = null; // Do not keep closed accounts' histories reachable
+                try {
+                    target.recordTransactionAt(TransactionType.fromCode(types[slot]), amounts[slot],
+                            timestamps[slot], links[slot]);
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e; // Reported to waiters; keep draining so producers never stall
+                    }
+                }
+                next++;
+                drained++;
+            }
+            if (drained > 0) {
+                applied = next - 1; // Frees the slots and releases waiting producers and flushers
+                continue;
+            }
+            consumerIdle = true;
+            if (published.get((int) next & mask) != next) { // Re-check so a publish before the flag is not missed
+                Thread.interrupted(); // A pending interrupt would make every park return at once
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+            consumerIdle = false;
+            if (closed && applied >= claimed.get()) {
+                return;
+            }
+        }
+    }
+}
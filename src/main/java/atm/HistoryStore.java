@@ -0,0 +1,98 @@
+package atm;
+
+import java.io.IOException;
+
+/**
+ * The HistoryStore interface holds the primitive columns behind a History:
+ * one timestamp, type code and amount per entry, addressed by position.
+ * Stores grow by appending, shrink only when recovery discards entries the journal never acknowledged,
+ * and are only accessed while the owning History's lock is held.
+ */
+interface HistoryStore extends AutoCloseable {
+    /**
+     * Returns the number of stored entries.
+     * @return The entry count.
+     */
+    int size();
+
+    /**
+     * Returns the timestamp of an entry.
+     * @param position The entry position.
+     * @return The timestamp in epoch milliseconds.
+     */
+    long timestamp(int position);
+
+    /**
+     * Returns the type code of an entry.
+     * @param position The entry position.
+     * @return The TransactionType code.
+     */
+    byte type(int position);
+
+    /**
+     * Returns the amount of an entry.
+     * @param position The entry position.
+     * @return The amount in cents.
+     */
+    long amount(int position);
+
+    /**
+     * Returns the link of an entry, e.g. the transfer id shared by both sides of a transfer.
+     * @param position The entry position.
+     * @return The link, or 0 if the entry is not linked.
+     */
+    long link(int position);
+
+    /**
+     * Appends an unlinked entry at position {@link #size()}.
+     * @param timestampMillis The timestamp in epoch milliseconds.
+     * @param type The TransactionType code.
+     * @param amountCents The amount in cents.
+     */
+    default void append(long timestampMillis, byte type, long amountCents) {
+        append(timestampMillis, type, amountCents, 0);
+    }
+
+    /**
+     * Appends an entry at position {@link #size()}.
+     * @param timestampMillis The timestamp in epoch milliseconds.
+     * @param type The TransactionType code.
+     * @param amountCents The amount in cents.
+     * @param link The link, from 0 (none) to {@link History#MAX_LINK}.
+     */
+    void append(long timestampMillis, byte type, long amountCents, long link);
+
+    /**
+     * Appends several entries with the same timestamp.
+     * @param timestampMillis The timestamp in epoch milliseconds.
+     * @param types The TransactionType codes.
+     * @param amountsCents The amounts in cents.
+     * @param count The number of leading entries of the arrays to append.
+     */
+    default void appendAll(long timestampMillis, byte[] types, long[] amountsCents, int count) {
+        for (int i = 0; i < count; i++) {
+            append(timestampMillis, types[i], amountsCents[i]);
+        }
+    }
+
+    /**
+     * Discards the entries from the given position on.
+     * @param size The number of leading entries to keep.
+     * @throws IllegalArgumentException if size is negative or larger than {@link #size()}.
+     * @throws IOException if the change cannot be written to disk.
+     */
+    void truncate(int size) throws IOException;
+
+    /**
+     * Tells whether entries survive a restart.
+     * @return true if the store is backed by files.
+     */
+    boolean isPersistent();
+
+    /**
+     * Releases any resources held by the store.
+     * @throws IOException if flushing to disk fails.
+     */
+    @Override
+    void close() throws IOException;
+}
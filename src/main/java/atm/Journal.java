@@ -0,0 +1,629 @@
+package atm;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * The Journal class is an append-only write-ahead log of account transactions on local disk.
+ * Each record is written as [int length][payload][int CRC32C of payload], where the payload is
+ * [byte kind][long timestamp][long amount in cents][short account length][account bytes].
+ * A batch is written as a {@link #BATCH} record followed by its records; recovery replays the
+ * batch only if all of them are intact, so a crash never leaves part of a batch applied.
+ * <p>
+ * Appends are buffered in memory and made durable by group commit: the first caller waiting
+ * for durability writes every pending record and issues one {@code force()} for the whole batch,
+ * while callers whose records were in that batch return without touching the disk.
+ * If a write or {@code force()} fails, the journal fails stop: the file may end in a torn batch,
+ * so every waiting caller and every later append or flush is rejected with that failure.
+ * <p>
+ * New records always go to the active file. A checkpoint rolls the active file into a numbered,
+ * sealed segment ({@code <file>.00000001}, ...), folds the sealed segments into a compact
+ * balance image ({@code <file>.checkpoint}) and deletes them. Appends continue during a checkpoint;
+ * they are only held up while the active file is renamed. Recovery loads the checkpoint and
+ * replays just the segments written after it.
+ */
+public class Journal implements AutoCloseable {
+    /** Record kind for opening an account; the amount is its initial balance. */
+    public static final byte OPEN_ACCOUNT = 0;
+    /** Record kind that starts a batch; the amount is the number of records in it. Never passed to handlers. */
+    public static final byte BATCH = -1;
+    /** Transfer ids are the transfer time in epoch milliseconds shifted left by this many bits, plus a sequence number. */
+    public static final int TRANSFER_ID_SHIFT = 12;
+
+    private static final int HEADER_BYTES = Integer.BYTES;
+    private static final int CHECKSUM_BYTES = Integer.BYTES;
+    private static final int FIXED_PAYLOAD_BYTES = 1 + Long.BYTES + Long.BYTES + Short.BYTES;
+    private static final int MAX_ACCOUNT_BYTES = Short.MAX_VALUE;
+    private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+
+    /**
+     * Receives records read back from the journal during recovery.
+     */
+    @FunctionalInterface
+    public interface RecordHandler {
+        /**
+         * Called once per intact record, in log order.
+         * @param kind The record kind ({@link #OPEN_ACCOUNT} or a TransactionType code).
+         * @param account The account number.
+         * @param amountCents The amount in cents.
+         * @param timestampMillis The time the record was appended, in epoch milliseconds; for transfer
+         *                        records, the transfer id (see {@link #appendTransfer}).
+         */
+        void onRecord(byte kind, String account, long amountCents, long timestampMillis);
+    }
+
+    private final Path file;
+    private final Path checkpointFile;
+    private FileChannel channel; // Active file; replaced when the journal rolls
+    private final Object appendLock = new Object(); // Guards pending and appendedSeq
+    private final ReentrantLock flushLock = new ReentrantLock(); // Held by the group-commit leader
+    private final CRC32C crc = new CRC32C(); // Used under appendLock only
+    private ByteBuffer pending; // Records appended but not yet written
+    private ByteBuffer writing; // Batch currently being written by the leader
+    private long appendedSeq; // Sequence number of the last appended record
+    private volatile long durableSeq; // Sequence number of the last record known to be on disk
+    private volatile boolean recovered; // Set once recover() has positioned the channel at the end of the log
+    private volatile IOException failure; // First failed write or force; no append is accepted once set
+    private long lastSealedSegment; // Number of the newest sealed segment (0 for none)
+    private final Object checkpointLock = new Object(); // Allows one checkpoint at a time
+    private ScheduledExecutorService checkpointScheduler; // Runs periodic checkpoints (optional)
+    private volatile boolean closed; // Set by close(); no checkpoint may roll the file afterwards
+    private volatile IOException checkpointFailure; // Last periodic checkpoint failure, cleared by a success
+
+    /**
+     * Opens (or creates) a journal file. {@link #recover(RecordHandler)} must be called
+     * before the first append.
+     * @param file The journal file.
+     * @throws IOException if the file cannot be opened.
+     */
+    public Journal(Path file) throws IOException {
+        this.file = file;
+        this.checkpointFile = file.resolveSibling(file.getFileName() + ".checkpoint");
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.pending = ByteBuffer.allocateDirect(INITIAL_BUFFER_BYTES);
+        this.writing = ByteBuffer.allocateDirect(INITIAL_BUFFER_BYTES);
+    }
+
+    /**
+     * Returns the path of the journal file.
+     * @return The journal file.
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Reads the latest checkpoint image.
+     * @return The checkpoint, or an empty one if none has been written.
+     * @throws IOException if the checkpoint file is unreadable.
+     */
+    Checkpoint readCheckpoint() throws IOException {
+        return Checkpoint.read(checkpointFile);
+    }
+
+    /**
+     * Replays every intact record written after the latest checkpoint to the handler: first any
+     * sealed segments not yet folded into it, then the active file. A torn or corrupt tail of the
+     * active file, such as a record cut short by a crash, is truncated so new records are appended
+     * after the last good one.
+     * @param handler The handler receiving replayed records.
+     * @throws IOException if the journal cannot be read or truncated.
+     */
+    public synchronized void recover(RecordHandler handler) throws IOException {
+        if (recovered) {
+            throw new IllegalStateException("Journal already recovered: " + file);
+        }
+        long covered = readCheckpoint().coveredSegment();
+        lastSealedSegment = covered;
+        for (Path segment : sealedSegments()) {
+            long number = segmentNumber(segment);
+            lastSealedSegment = Math.max(lastSealedSegment, number);
+            if (number <= covered) {
+                Files.deleteIfExists(segment); // Left behind by a checkpoint interrupted before cleanup
+                continue;
+            }
+            try (FileChannel sealed = FileChannel.open(segment, StandardOpenOption.READ)) {
+                if (replay(sealed, handler) != sealed.size()) {
+                    throw new IOException("Corrupt sealed journal segment: " + segment);
+                }
+            }
+        }
+
+        long fileSize = channel.size();
+        long validEnd = replay(channel, handler);
+        if (validEnd < fileSize) {
+            channel.truncate(validEnd);
+            channel.force(true);
+        }
+        channel.position(validEnd);
+        recovered = true;
+    }
+
+    /**
+     * Rolls the active file into a sealed segment, folds all sealed segments into the checkpoint
+     * and deletes them. Deposits and withdrawals keep running; appends wait only for the roll.
+     * @throws IOException if the checkpoint cannot be written.
+     */
+    public void checkpoint() throws IOException {
+        synchronized (checkpointLock) {
+            long sealedUpTo = roll();
+            Checkpoint checkpoint = readCheckpoint();
+            List<Path> folded = new ArrayList<>();
+            for (Path segment : sealedSegments()) {
+                long number = segmentNumber(segment);
+                if (number > checkpoint.coveredSegment() && number <= sealedUpTo) {
+                    try (FileChannel sealed = FileChannel.open(segment, StandardOpenOption.READ)) {
+                        replay(sealed, (kind, account, amount, time) -> checkpoint.apply(kind, account, amount));
+                    }
+                }
+                if (number <= sealedUpTo) {
+                    folded.add(segment);
+                }
+            }
+            checkpoint.setCoveredSegment(sealedUpTo);
+            checkpoint.write(checkpointFile);
+            for (Path segment : folded) {
+                Files.deleteIfExists(segment);
+            }
+        }
+    }
+
+    /**
+     * Starts taking a checkpoint at a fixed interval on a background daemon thread.
+     * A failed checkpoint is retried at the next interval and reported by
+     * {@link #getCheckpointFailure()} and {@link #close()} until one succeeds.
+     * Checkpoints stop when the journal is closed; a running one is allowed to finish.
+     * @param interval The time between checkpoints.
+     */
+    public synchronized void startPeriodicCheckpoints(Duration interval) {
+        if (checkpointScheduler != null) {
+            throw new IllegalStateException("Periodic checkpoints already started");
+        }
+        checkpointScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = interval.toMillis();
+        checkpointScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+                checkpointFailure = null;
+            } catch (IOException e) {
+                checkpointFailure = e;
+            } catch (RuntimeException e) {
+                checkpointFailure = new IOException("Journal checkpoint failed: " + file, e);
+            }
+        }, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the failure of the last periodic checkpoint, if it has not been followed by a successful one.
+     * @return The failure, or null if the last periodic checkpoint succeeded or none has run.
+     */
+    public IOException getCheckpointFailure() {
+        return checkpointFailure;
+    }
+
+    /**
+     * Returns the sealed segments currently on disk, oldest first.
+     * @return The sealed segment files.
+     * @throws IOException if the directory cannot be listed.
+     */
+    List<Path> sealedSegments() throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        String prefix = file.getFileName() + ".";
+        try (Stream<Path> listing = Files.list(directory)) {
+            return listing.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(prefix) && name.substring(prefix.length()).matches("\\d{8}");
+            }).sorted().toList();
+        }
+    }
+
+    /**
+     * Appends a record to the in-memory batch. The record is not durable until
+     * {@link #awaitDurable(long)} returns for its sequence number.
+     * @param kind The record kind.
+     * @param account The account number, encoded as UTF-8.
+     * @param amountCents The amount in cents.
+     * @param timestampMillis The record time, in epoch milliseconds.
+     * @return The sequence number of the appended record.
+     * @throws UncheckedIOException if an earlier write to the journal failed.
+     */
+    public long append(byte kind, byte[] account, long amountCents, long timestampMillis) {
+        if (account.length > MAX_ACCOUNT_BYTES) {
+            throw new IllegalArgumentException("Account number too long");
+        }
+        int length = FIXED_PAYLOAD_BYTES + account.length;
+        synchronized (appendLock) {
+            checkWritable();
+            ensurePendingCapacity(HEADER_BYTES + length + CHECKSUM_BYTES);
+            putRecord(kind, account, amountCents, timestampMillis);
+            return ++appendedSeq;
+        }
+    }
+
+    /**
+     * Appends several records for one account as a single batch that recovery applies
+     * all-or-nothing. The records are not durable until {@link #awaitDurable(long)} returns
+     * for the returned sequence number.
+     * @param account The account number, encoded as UTF-8.
+     * @param kinds The record kinds.
+     * @param amountsCents The amounts in cents.
+     * @param count The number of leading entries of the arrays to append; must be positive.
+     * @param timestampMillis The time of every record, in epoch milliseconds.
+     * @return The sequence number of the last appended record.
+     * @throws UncheckedIOException if an earlier write to the journal failed.
+     */
+    public long appendBatch(byte[] account, byte[] kinds, long[] amountsCents, int count, long timestampMillis) {
+        if (account.length > MAX_ACCOUNT_BYTES) {
+            throw new IllegalArgumentException("Account number too long");
+        }
+        if (count < 1) {
+            throw new IllegalArgumentException("Batch must not be empty");
+        }
+        int recordBytes = HEADER_BYTES + FIXED_PAYLOAD_BYTES + account.length + CHECKSUM_BYTES;
+        synchronized (appendLock) {
+            checkWritable();
+            ensurePendingCapacity(Math.multiplyExact(recordBytes, count + 1));
+            putRecord(BATCH, account, count, timestampMillis);
+            for (int i = 0; i < count; i++) {
+                putRecord(kinds[i], account, amountsCents[i], timestampMillis);
+            }
+            appendedSeq += count + 1;
+            return appendedSeq;
+        }
+    }
+
+    /**
+     * Appends both sides of a transfer as one batch that recovery applies all-or-nothing: a
+     * TRANSFER_OUT record for the source account followed by a TRANSFER_IN record for the target.
+     * Transfer records carry the transfer id in their timestamp field; the transfer time is
+     * {@code transferId >>> }{@link #TRANSFER_ID_SHIFT}.
+     * @param from The source account number, encoded as UTF-8.
+     * @param to The target account number, encoded as UTF-8.
+     * @param amountCents The amount in cents.
+     * @param transferId The transfer id, i.e. the epoch milliseconds shifted left by {@link #TRANSFER_ID_SHIFT}
+     *                   plus a sequence number.
+     * @return The sequence number of the last appended record.
+     * @throws UncheckedIOException if an earlier write to the journal failed.
+     */
+    public long appendTransfer(byte[] from, byte[] to, long amountCents, long transferId) {
+        if (from.length > MAX_ACCOUNT_BYTES || to.length > MAX_ACCOUNT_BYTES) {
+            throw new IllegalArgumentException("Account number too long");
+        }
+        int bytes = 3 * (HEADER_BYTES + FIXED_PAYLOAD_BYTES + CHECKSUM_BYTES) + 2 * from.length + to.length;
+        synchronized (appendLock) {
+            checkWritable();
+            ensurePendingCapacity(bytes);
+            putRecord(BATCH, from, 2, transferId);
+            putRecord(TransactionType.TRANSFER_OUT.code(), from, amountCents, transferId);
+            putRecord(TransactionType.TRANSFER_IN.code(), to, amountCents, transferId);
+            appendedSeq += 3;
+            return appendedSeq;
+        }
+    }
+
+    /**
+     * Blocks until the record with the given sequence number is on disk. Concurrent callers
+     * share a single write and {@code force()} for all records pending at that moment.
+     * @param seq The sequence number returned by {@link #append}.
+     * @throws UncheckedIOException if the journal cannot be written, now or by an earlier flush.
+     */
+    public void awaitDurable(long seq) {
+        if (durableSeq >= seq) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            if (durableSeq >= seq) {
+                return; // A previous leader's batch already covered this record
+            }
+            if (failure != null) {
+                throw new UncheckedIOException("Journal failed: " + file, failure);
+            }
+            long batchSeq;
+            ByteBuffer batch;
+            synchronized (appendLock) {
+                batch = pending;
+                pending = writing;
+                writing = batch;
+                batchSeq = appendedSeq;
+            }
+            try {
+                writeBatch(channel, batch);
+                channel.force(false);
+                durableSeq = batchSeq;
+            } catch (IOException e) {
+                failure = e; // Part of the batch may be on disk; nothing may be appended after it
+                throw new UncheckedIOException("Failed to write journal " + file, e);
+            } finally {
+                batch.clear(); // Hand the buffer back empty, even after a failed write
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Appends a record and waits until it is durable.
+     * @return The sequence number of the appended record.
+     */
+    public long appendDurable(byte kind, byte[] account, long amountCents, long timestampMillis) {
+        long seq = append(kind, account, amountCents, timestampMillis);
+        awaitDurable(seq);
+        return seq;
+    }
+
+    /**
+     * Blocks until every record appended so far is on disk.
+     * @throws UncheckedIOException if the journal cannot be written.
+     */
+    public void flush() {
+        long last;
+        synchronized (appendLock) {
+            last = appendedSeq;
+        }
+        awaitDurable(last);
+    }
+
+    /**
+     * Waits for a running periodic checkpoint, flushes any pending records and closes the journal file.
+     * @throws IOException if the final flush or close fails, or if the last periodic checkpoint failed.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        ScheduledExecutorService scheduler;
+        synchronized (this) {
+            scheduler = checkpointScheduler;
+        }
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // Rolls are refused from now on, so closing is still safe
+            }
+        }
+        try {
+            flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            synchronized (checkpointLock) {
+                channel.close();
+            }
+        }
+        IOException failure = checkpointFailure;
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Flushes pending records, renames the active file to the next sealed segment and starts
+     * a fresh active file. The records pending at the start are written and forced to the old file
+     * with only flushLock held, so appends continue meanwhile; appendLock is taken again just to
+     * rename the file and swap in the new channel, and records appended in between go to the new file.
+     * A sealed segment is therefore complete on disk before it gets its name.
+     * @return The number of the segment just sealed.
+     * @throws IllegalStateException if the journal is not recovered yet or already closed.
+     */
+    private long roll() throws IOException {
+        flushLock.lock();
+        try {
+            long batchSeq;
+            ByteBuffer batch;
+            synchronized (appendLock) {
+                if (!recovered) {
+                    throw new IllegalStateException("Journal must be recovered before a checkpoint: " + file);
+                }
+                if (closed) {
+                    throw new IllegalStateException("Journal is closed: " + file);
+                }
+                if (failure != null) {
+                    throw new IOException("Journal failed: " + file, failure);
+                }
+                batch = pending;
+                pending = writing;
+                writing = batch;
+                batchSeq = appendedSeq;
+            }
+            FileChannel sealed = channel; // Only leaders holding flushLock write to it
+            try {
+                writeBatch(sealed, batch);
+                sealed.force(true);
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            } finally {
+                batch.clear();
+            }
+            durableSeq = batchSeq; // Only once the records are on disk
+
+            long segment = lastSealedSegment + 1;
+            synchronized (appendLock) {
+                Files.move(file, file.resolveSibling(file.getFileName() + String.format(".%08d", segment)),
+                        StandardCopyOption.ATOMIC_MOVE); // If this fails, the old file simply stays active
+                lastSealedSegment = segment;
+                try {
+                    channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                            StandardOpenOption.WRITE);
+                } catch (IOException e) {
+                    failure = e; // The active file is gone and the old one is sealed: nothing can be appended
+                    throw e;
+                }
+            }
+            sealed.close();
+            return segment;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Writes a batch buffer to a journal file; the caller clears it afterwards.
+     */
+    private static void writeBatch(FileChannel target, ByteBuffer batch) throws IOException {
+        batch.flip();
+        while (batch.hasRemaining()) {
+            target.write(batch);
+        }
+    }
+
+    /**
+     * Rejects appends before recovery and after a failed write; the caller holds appendLock.
+     */
+    private void checkWritable() {
+        if (!recovered) {
+            throw new IllegalStateException("Journal must be recovered before appending: " + file);
+        }
+        if (failure != null) {
+            throw new UncheckedIOException("Journal failed: " + file, failure);
+        }
+    }
+
+    /**
+     * Reads intact records from the start of a file and passes them to the handler.
+     * The records of a batch are held back until the whole batch has been read.
+     * @return The offset just past the last intact record or complete batch.
+     */
+    private static long replay(FileChannel source, RecordHandler handler) throws IOException {
+        long validEnd = 0;
+        long position = 0;
+        long fileSize = source.size();
+        int batchRemaining = 0; // Records still missing from the batch being read
+        int batched = 0; // Records of that batch read so far
+        byte[] batchKinds = new byte[0];
+        String[] batchAccounts = new String[0];
+        long[] batchAmounts = new long[0];
+        long[] batchTimes = new long[0];
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        ByteBuffer record = ByteBuffer.allocate(FIXED_PAYLOAD_BYTES + 256 + CHECKSUM_BYTES);
+        CRC32C checksum = new CRC32C();
+        try {
+            while (position < fileSize) {
+                header.clear();
+                readFully(source, header, position);
+                int length = header.flip().getInt();
+                if (length < FIXED_PAYLOAD_BYTES || length > FIXED_PAYLOAD_BYTES + MAX_ACCOUNT_BYTES) {
+                    break; // Garbage length: torn header
+                }
+                if (record.capacity() < length + CHECKSUM_BYTES) {
+                    record = ByteBuffer.allocate(length + CHECKSUM_BYTES);
+                }
+                record.clear().limit(length + CHECKSUM_BYTES);
+                readFully(source, record, position + HEADER_BYTES);
+                record.flip();
+
+                checksum.reset();
+                checksum.update(record.array(), 0, length);
+                if ((int) checksum.getValue() != record.getInt(length)) {
+                    break; // Corrupt or partially written payload
+                }
+                byte kind = record.get();
+                long timestamp = record.getLong();
+                long amount = record.getLong();
+                int accountLength = record.getShort();
+                if (accountLength != length - FIXED_PAYLOAD_BYTES) {
+                    break;
+                }
+                String account = new String(record.array(), record.position(), accountLength, StandardCharsets.UTF_8);
+                position += HEADER_BYTES + length + CHECKSUM_BYTES;
+                if (kind == BATCH) {
+                    if (batchRemaining > 0 || amount < 1 || amount > Integer.MAX_VALUE) {
+                        break; // Batches never nest or run empty
+                    }
+                    batchRemaining = (int) amount;
+                    batched = 0;
+                    if (batchKinds.length < batchRemaining) {
+                        batchKinds = new byte[batchRemaining];
+                        batchAccounts = new String[batchRemaining];
+                        batchAmounts = new long[batchRemaining];
+                        batchTimes = new long[batchRemaining];
+                    }
+                } else if (batchRemaining > 0) {
+                    batchKinds[batched] = kind;
+                    batchAccounts[batched] = account;
+                    batchAmounts[batched] = amount;
+                    batchTimes[batched] = timestamp;
+                    batched++;
+                    if (--batchRemaining == 0) {
+                        for (int i = 0; i < batched; i++) {
+                            handler.onRecord(batchKinds[i], batchAccounts[i], batchAmounts[i], batchTimes[i]);
+                        }
+                        validEnd = position;
+                    }
+                } else {
+                    handler.onRecord(kind, account, amount, timestamp);
+                    validEnd = position;
+                }
+            }
+        } catch (EOFException e) {
+            // Record cut short by the end of the file: stop at the last complete record
+        }
+        return validEnd;
+    }
+
+    /**
+     * Writes one framed record into the pending buffer; the caller holds appendLock and has ensured capacity.
+     */
+    private void putRecord(byte kind, byte[] account, long amountCents, long timestampMillis) {
+        ByteBuffer out = pending;
+        out.putInt(FIXED_PAYLOAD_BYTES + account.length);
+        int payloadStart = out.position();
+        out.put(kind).putLong(timestampMillis).putLong(amountCents).putShort((short) account.length).put(account);
+
+        int payloadEnd = out.position();
+        crc.reset();
+        out.limit(payloadEnd).position(payloadStart);
+        crc.update(out); // Consumes the payload, leaving position at payloadEnd
+        out.limit(out.capacity());
+        out.putInt((int) crc.getValue());
+    }
+
+    private long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(name.length() - 8));
+    }
+
+    private void ensurePendingCapacity(int bytes) {
+        if (pending.remaining() < bytes) {
+            int capacity = Math.max(pending.capacity() * 2, pending.position() + bytes);
+            ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+    }
+
+    private static void readFully(FileChannel source, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = source.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package atm;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The LatencyHistogram class counts latencies in log-linear buckets, in the style of an
+ * HdrHistogram: every power-of-two range is split into 32 equal sub-buckets, so any recorded
+ * value is reported within about 3% of its true value, from nanoseconds up to hours, in a
+ * fixed 15 KB of counters.
+ * <p>
+ * Recording is striped: each thread increments the counters of one of several stripes chosen by
+ * its thread id, so threads on different cores rarely touch the same counters. Snapshots add the
+ * stripes together and may miss values recorded concurrently.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS; // Covers every non-negative long
+    private static final int SUM = BUCKETS; // Slot holding the sum of recorded values
+    private static final int MAX_STRIPES = 16;
+
+    private final AtomicLongArray[] stripes; // Per stripe: bucket counts followed by the sum
+    private final int stripeMask;
+
+    /**
+     * Constructor creates an empty histogram with one stripe per core, up to 16.
+     */
+    LatencyHistogram() {
+        int cores = Math.min(MAX_STRIPES, Runtime.getRuntime().availableProcessors());
+        int count = Integer.highestOneBit(cores) << (Integer.bitCount(cores) == 1 ? 0 : 1);
+        this.stripes = new AtomicLongArray[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS + 1);
+        }
+        this.stripeMask = count - 1;
+    }
+
+    /**
+     * Records a value; negative values are counted as 0.
+     * @param value The latency in nanoseconds.
+     */
+    void record(long value) {
+        long clamped = Math.max(0, value);
+        long mixed = Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L; // Spreads consecutive thread ids
+        AtomicLongArray stripe = stripes[(int) (mixed >>> 32) & stripeMask];
+        stripe.getAndIncrement(bucketOf(clamped));
+        stripe.getAndAdd(SUM, clamped);
+    }
+
+    /**
+     * Adds the stripes together into an immutable snapshot.
+     * @return The snapshot.
+     */
+    Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long sum = 0;
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += stripe.get(i);
+            }
+            sum += stripe.get(SUM);
+        }
+        return new Snapshot(counts, sum);
+    }
+
+    /**
+     * Returns the bucket a value falls into.
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * Returns the largest value that falls into a bucket.
+     */
+    static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * An immutable copy of a histogram's counts.
+     */
+    static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+
+        private Snapshot(long[] counts, long sum) {
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            this.counts = counts;
+            this.count = total;
+            this.sum = sum;
+        }
+
+        /**
+         * Returns the number of recorded values.
+         * @return The count.
+         */
+        long count() {
+            return count;
+        }
+
+        /**
+         * Returns the exact mean of the recorded values.
+         * @return The mean, or 0 if nothing was recorded.
+         */
+        double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Returns the value at a percentile, as the highest value of the bucket holding it.
+         * @param percentile The percentile, from 0 to 100.
+         * @return The value, or 0 if nothing was recorded.
+         */
+        long percentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("Percentile out of range: " + percentile);
+            }
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return highestValueIn(i);
+                }
+            }
+            return max();
+        }
+
+        /**
+         * Returns the largest recorded value, as the highest value of its bucket.
+         * @return The maximum, or 0 if nothing was recorded.
+         */
+        long max() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] != 0) {
+                    return highestValueIn(i);
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,439 @@
+package atm;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The Ledger class keeps the balances of many accounts, keyed by account number.
+ * Each account owns its own Balance and History, so operations on different accounts
+ * never contend with each other and concurrent operations on one account stay correct.
+ * A ledger backed by a Journal rebuilds its accounts from the journal on startup and
+ * logs every later change to it. Given a history directory, each account's History is kept
+ * in memory-mapped segment files there instead of on the heap.
+ * Transfers between accounts are atomic and leave a linked entry in both histories.
+ * Given a HistoryRecorder, accounts record their history in the background.
+ * Deposits, withdrawals and transfers tagged with a request id are applied at most once per id
+ * and account, so a terminal can retry them safely (see {@link RequestDeduplicator}). Request ids
+ * are not journaled: the guarantee holds while the ledger runs, not across a restart.
+ */
+public class Ledger implements AutoCloseable {
+    private final ConcurrentMap<String, Balance> accounts; // Account number -> balance
+    private final Journal journal; // Write-ahead journal (optional)
+    private final Path historyDirectory; // Parent directory of per-account history segments (optional)
+    private final HistoryRecorder recorder; // Records history in the background (optional)
+    private final AtomicLong lastTransferId = new AtomicLong(); // Highest transfer id issued or replayed
+    private final RequestDeduplicator requests = new RequestDeduplicator(); // Results of recent tagged requests
+    private Map<String, Integer> replayedCounts; // Transactions replayed per account, during recovery only
+
+    /**
+     * Constructor initializes an empty in-memory ledger.
+     */
+    public Ledger() {
+        this((HistoryRecorder) null);
+    }
+
+    /**
+     * Constructor initializes an empty in-memory ledger whose histories are recorded in the background.
+     * @param recorder The recorder that appends history entries (can be null to record synchronously).
+     */
+    public Ledger(HistoryRecorder recorder) {
+        this.accounts = new ConcurrentHashMap<>();
+        this.journal = null;
+        this.historyDirectory = null;
+        this.recorder = recorder;
+    }
+
+    /**
+     * Constructor initializes a durable ledger from the journal's latest checkpoint and the
+     * journal records written after it. Heap histories only hold the transactions replayed from
+     * the journal, i.e. those since the last checkpoint.
+     * @param journal The journal to recover from and log to.
+     * @throws IOException if the journal cannot be read.
+     */
+    public Ledger(Journal journal) throws IOException {
+        this(journal, null);
+    }
+
+    /**
+     * Constructor initializes a durable ledger whose histories live in memory-mapped segment files.
+     * Balances are rebuilt from the journal; history entries already in the segments are not re-added.
+     * @param journal The journal to recover from and log to.
+     * @param historyDirectory The directory holding one segment directory per account (can be null).
+     * @throws IOException if the journal or the history segments cannot be read.
+     */
+    public Ledger(Journal journal, Path historyDirectory) throws IOException {
+        this(journal, historyDirectory, null);
+    }
+
+    /**
+     * Constructor initializes a durable ledger whose histories are recorded in the background.
+     * Recovery itself records history synchronously.
+     * @param journal The journal to recover from and log to.
+     * @param historyDirectory The directory holding one segment directory per account (can be null).
+     * @param recorder The recorder that appends history entries (can be null to record synchronously).
+     * @throws IOException if the journal or the history segments cannot be read.
+     */
+    public Ledger(Journal journal, Path historyDirectory, HistoryRecorder recorder) throws IOException {
+        this.accounts = new ConcurrentHashMap<>();
+        this.journal = journal;
+        this.historyDirectory = historyDirectory;
+        this.recorder = recorder;
+        this.replayedCounts = new HashMap<>();
+        try {
+            journal.readCheckpoint().forEach((account, balanceCents, transactions) -> {
+                accounts.put(account, new Balance(account, balanceCents, newHistory(account), journal, recorder));
+                replayedCounts.put(account, (int) transactions);
+            });
+            journal.recover(this::replay);
+            for (Map.Entry<String, Balance> entry : accounts.entrySet()) {
+                // Drop entries a persistent history kept of changes whose journal records were lost
+                int journaled = replayedCounts.getOrDefault(entry.getKey(), 0);
+                if (entry.getValue().getHistory().size() > journaled) {
+                    entry.getValue().truncateHistory(journaled);
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            replayedCounts = null;
+        }
+    }
+
+    /**
+     * Opens a new account with its own transaction history.
+     * @param account The account number.
+     * @param initialBalance The starting balance.
+     * @return The balance of the newly opened account.
+     * @throws IllegalArgumentException if the account already exists.
+     * @throws UncheckedIOException if the journal cannot be written.
+     */
+    public Balance openAccount(String account, double initialBalance) {
+        long initialCents = Money.fromDouble(initialBalance);
+        Balance[] created = new Balance[1];
+        // The history is only opened for an account that is really created, so a duplicate or racing
+        // open never maps its segments twice. The open record is appended before the account becomes
+        // visible, so it precedes its first deposit.
+        Balance balance = accounts.computeIfAbsent(account, key -> {
+            created[0] = new Balance(key, initialCents, emptyHistory(key), journal, recorder);
+            if (journal != null) {
+                journal.append(Journal.OPEN_ACCOUNT, key.getBytes(StandardCharsets.UTF_8),
+                        initialCents, System.currentTimeMillis());
+            }
+            return created[0];
+        });
+        if (balance != created[0]) {
+            throw new IllegalArgumentException("Account already exists: " + account);
+        }
+        if (journal != null) {
+            try {
+                journal.flush();
+            } catch (UncheckedIOException e) {
+                accounts.remove(account, balance); // The open was never acknowledged
+                throw e;
+            }
+        }
+        return balance;
+    }
+
+    /**
+     * Checks whether an account exists in the ledger.
+     * @param account The account number.
+     * @return true if the account exists, false otherwise.
+     */
+    public boolean hasAccount(String account) {
+        return accounts.containsKey(account);
+    }
+
+    /**
+     * Retrieves the balance of an account.
+     * @param account The account number.
+     * @return The balance instance for the account.
+     * @throws IllegalArgumentException if the account does not exist.
+     */
+    public Balance getAccount(String account) {
+        Balance balance = accounts.get(account);
+        if (balance == null) {
+            throw new IllegalArgumentException("Unknown account: " + account);
+        }
+        return balance;
+    }
+
+    /**
+     * Deposits an amount into an account.
+     * @param account The account number.
+     * @param amount The deposit amount.
+     * @return true if deposit is successful, false otherwise.
+     */
+    public boolean deposit(String account, double amount) {
+        return getAccount(account).deposit(amount);
+    }
+
+    /**
+     * Withdraws an amount from an account.
+     * @param account The account number.
+     * @param amount The withdrawal amount.
+     * @return true if withdrawal is successful, false otherwise.
+     */
+    public boolean withdraw(String account, double amount) {
+        return getAccount(account).withdraw(amount);
+    }
+
+    /**
+     * Deposits an amount into an account once per request id. A retry with the same id returns
+     * the first request's result without changing the balance or the history again.
+     * Request ids are scoped to the account.
+     * @param account The account number.
+     * @param amount The deposit amount.
+     * @param requestId The request id, shared by all retries of the request.
+     * @return true if the deposit is or was successful, false otherwise.
+     * @throws IllegalArgumentException if the account does not exist or the request id is 0.
+     */
+    public boolean deposit(String account, double amount, long requestId) {
+        return depositCents(account, Money.requestedCents(amount), requestId);
+    }
+
+    /**
+     * Deposits an amount in cents into an account once per request id.
+     * @param account The account number.
+     * @param amountCents The deposit amount in cents.
+     * @param requestId The request id, shared by all retries of the request.
+     * @return true if the deposit is or was successful, false otherwise.
+     * @throws IllegalArgumentException if the account does not exist, the request id is 0 or the
+     *         id was already used on this account for a different request.
+     */
+    public boolean depositCents(String account, long amountCents, long requestId) {
+        return depositCents(null, account, amountCents, requestId);
+    }
+
+    /**
+     * Deposits an amount in cents once per request id of one client, such as a terminal.
+     * @param client The client numbering the requests (can be null for the account's own scope).
+     */
+    boolean depositCents(String client, String account, long amountCents, long requestId) {
+        return once(client, account, requestId, TransactionType.DEPOSIT, amountCents, null,
+                () -> getAccount(account).depositCents(amountCents));
+    }
+
+    /**
+     * Withdraws an amount from an account once per request id. A retry with the same id returns
+     * the first request's result without changing the balance or the history again.
+     * Request ids are scoped to the account.
+     * @param account The account number.
+     * @param amount The withdrawal amount.
+     * @param requestId The request id, shared by all retries of the request.
+     * @return true if the withdrawal is or was successful, false otherwise.
+     * @throws IllegalArgumentException if the account does not exist or the request id is 0.
+     */
+    public boolean withdraw(String account, double amount, long requestId) {
+        return withdrawCents(account, Money.requestedCents(amount), requestId);
+    }
+
+    /**
+     * Withdraws an amount in cents from an account once per request id.
+     * @param account The account number.
+     * @param amountCents The withdrawal amount in cents.
+     * @param requestId The request id, shared by all retries of the request.
+     * @return true if the withdrawal is or was successful, false otherwise.
+     * @throws IllegalArgumentException if the account does not exist, the request id is 0 or the
+     *         id was already used on this account for a different request.
+     */
+    public boolean withdrawCents(String account, long amountCents, long requestId) {
+        return withdrawCents(null, account, amountCents, requestId);
+    }
+
+    /**
+     * Withdraws an amount in cents once per request id of one client, such as a terminal.
+     * @param client The client numbering the requests (can be null for the account's own scope).
+     */
+    boolean withdrawCents(String client, String account, long amountCents, long requestId) {
+        return once(client, account, requestId, TransactionType.WITHDRAW, amountCents, null,
+                () -> getAccount(account).withdrawCents(amountCents));
+    }
+
+    /**
+     * Applies a batch of deposits and withdrawals to an account as one transaction.
+     * @param account The account number.
+     * @param batch The items to apply.
+     * @return Which items were applied or rejected, and the resulting balance.
+     */
+    public BatchResult applyBatch(String account, TransactionBatch batch) {
+        return getAccount(account).applyBatch(batch);
+    }
+
+    /**
+     * Transfers an amount from one account to another atomically.
+     * @param from The account number to debit.
+     * @param to The account number to credit.
+     * @param amount The transfer amount.
+     * @return true if the transfer is successful, false for an invalid amount, the same account, insufficient funds
+     *         or a target balance that would overflow.
+     * @throws IllegalArgumentException if either account does not exist.
+     */
+    public boolean transfer(String from, String to, double amount) {
+        return transferCents(from, to, Money.requestedCents(amount));
+    }
+
+    /**
+     * Transfers an amount in cents from one account to another atomically. Both history entries
+     * carry the same transfer id, shown as {@code (transfer #<id>)}.
+     * @param from The account number to debit.
+     * @param to The account number to credit.
+     * @param amountCents The transfer amount in cents.
+     * @return true if the transfer is successful, false for an invalid amount, the same account, insufficient funds
+     *         or a target balance that would overflow.
+     * @throws IllegalArgumentException if either account does not exist.
+     */
+    public boolean transferCents(String from, String to, long amountCents) {
+        Balance source = getAccount(from);
+        Balance target = getAccount(to);
+        long transferId = amountCents <= 0 || source == target ? 0 : nextTransferId(); // Rejected transfers use no id
+        return source.transferTo(target, amountCents, transferId);
+    }
+
+    /**
+     * Transfers an amount from one account to another atomically, once per request id.
+     * A retry with the same id returns the first request's result without moving money again.
+     * Request ids are scoped to the debited account.
+     * @param from The account number to debit.
+     * @param to The account number to credit.
+     * @param amount The transfer amount.
+     * @param requestId The request id, shared by all retries of the request.
+     * @return true if the transfer is or was successful, false otherwise.
+     * @throws IllegalArgumentException if either account does not exist, the request id is 0 or
+     *         the id was already used on the debited account for a different request.
+     */
+    public boolean transfer(String from, String to, double amount, long requestId) {
+        long amountCents = Money.requestedCents(amount);
+        return once(null, from, requestId, TransactionType.TRANSFER_OUT, amountCents, to,
+                () -> transferCents(from, to, amountCents));
+    }
+
+    /**
+     * Returns the table of recent request ids and their results.
+     * @return The deduplicator shared by all accounts of this ledger.
+     */
+    public RequestDeduplicator getRequestDeduplicator() {
+        return requests;
+    }
+
+    /**
+     * Retrieves the current balance of an account.
+     * @param account The account number.
+     * @return The account balance.
+     */
+    public double getBalance(String account) {
+        return getAccount(account).getBalance();
+    }
+
+    /**
+     * Returns the number of accounts in the ledger.
+     * @return The account count.
+     */
+    public int size() {
+        return accounts.size();
+    }
+
+    /**
+     * Flushes and closes the journal, if any, and closes the histories once the recorder, if any,
+     * has recorded their pending entries. The recorder itself stays open.
+     * @throws IOException if the journal cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (journal != null) {
+                journal.close();
+            }
+        } finally {
+            if (recorder != null) {
+                recorder.flush();
+            }
+            for (Balance balance : accounts.values()) {
+                balance.getHistory().close();
+            }
+        }
+    }
+
+    /**
+     * Applies one journal record during recovery.
+     */
+    private void replay(byte kind, String account, long amountCents, long timestampMillis) {
+        if (kind == Journal.OPEN_ACCOUNT) {
+            accounts.put(account, new Balance(account, amountCents, newHistory(account), journal, recorder));
+            return;
+        }
+        Balance balance = accounts.get(account);
+        if (balance == null) {
+            throw new IllegalStateException("Journal references unknown account: " + account);
+        }
+        // Persistent histories already hold their entries; only restore ones lost after the journal write
+        int replayed = replayedCounts.merge(account, 1, Integer::sum);
+        boolean recordHistory = !balance.getHistory().isPersistent() || replayed > balance.getHistory().size();
+        TransactionType type = TransactionType.fromCode(kind);
+        if (type == TransactionType.TRANSFER_OUT || type == TransactionType.TRANSFER_IN) {
+            long transferId = timestampMillis; // Transfer records carry their id in the timestamp field
+            lastTransferId.accumulateAndGet(transferId, Math::max);
+            balance.replay(type, amountCents, transferId >>> Journal.TRANSFER_ID_SHIFT, transferId, recordHistory);
+        } else {
+            balance.replay(type, amountCents, timestampMillis, recordHistory);
+        }
+    }
+
+    /**
+     * Runs a tagged request once per request id within the scope of its account and client.
+     * The fingerprint covers the operation, amount and counterparty, so a reused id is rejected.
+     */
+    private boolean once(String client, String account, long requestId, TransactionType type, long amountCents,
+                         String counterparty, BooleanSupplier request) {
+        long scope = RequestDeduplicator.mix(RequestDeduplicator.hash(account), RequestDeduplicator.hash(client));
+        long fingerprint = RequestDeduplicator.mix(RequestDeduplicator.mix(type.code(), amountCents),
+                RequestDeduplicator.hash(counterparty));
+        return requests.execute(scope, requestId, fingerprint, request);
+    }
+
+    /**
+     * Issues a transfer id above every id issued or replayed so far, derived from the current time.
+     */
+    private long nextTransferId() {
+        long now = System.currentTimeMillis() << Journal.TRANSFER_ID_SHIFT;
+        return lastTransferId.updateAndGet(last -> Math.max(last + 1, now));
+    }
+
+    /**
+     * Creates the history for a newly opened account, discarding any segments left by an earlier
+     * open of the same account whose journal record was lost.
+     */
+    private History emptyHistory(String account) {
+        History history = newHistory(account);
+        if (history.size() > 0) {
+            try {
+                history.truncate(0);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot reset history for account " + account, e);
+            }
+        }
+        return history;
+    }
+
+    /**
+     * Creates the history for an account, on the heap or in its own segment directory.
+     */
+    private History newHistory(String account) {
+        if (historyDirectory == null) {
+            return new History();
+        }
+        try {
+            return new History(historyDirectory.resolve(account));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open history for account " + account, e);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package atm;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The LoginAttempts class counts the login attempts left to one session, such as one terminal
+ * connection: every failed login uses one up and a successful login restores them all.
+ * The session owns its counter, so it lasts exactly as long as the session does, whichever
+ * threads its logins run on.
+ */
+public final class LoginAttempts {
+    private final AtomicInteger attemptsLeft = new AtomicInteger(Authenticator.MAX_ATTEMPTS); // Remaining login attempts
+
+    /**
+     * Records the outcome of a login attempt.
+     * @param success true if the user was authenticated.
+     */
+    void record(boolean success) {
+        if (success) {
+            attemptsLeft.set(Authenticator.MAX_ATTEMPTS);
+        } else {
+            attemptsLeft.updateAndGet(left -> Math.max(0, left - 1));
+        }
+    }
+
+    /**
+     * Checks if the session has remaining login attempts.
+     * @return true if there are attempts left, false otherwise.
+     */
+    public boolean hasAttemptsLeft() {
+        return attemptsLeft.get() > 0;
+    }
+
+    /**
+     * Returns the number of remaining login attempts.
+     * @return The number of attempts left.
+     */
+    public int getAttemptsLeft() {
+        return attemptsLeft.get();
+    }
+}
@@ -0,0 +1,302 @@
+package atm;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * The LoginRateLimiter class throttles failed logins per key (an account or a terminal).
+ * Each key may fail a limited number of times in a burst; one failure is forgiven per
+ * recovery interval, so a throttled key recovers on its own. Success can clear a key.
+ * A caller about to check a password takes a failure up front with {@link #tryAcquire}, so
+ * concurrent attempts cannot all pass the check before any of them fails. The attempt stays
+ * in flight until the caller settles it: {@link #complete} keeps the failure, {@link #release}
+ * gives it back. A key whose remaining failures are all taken by attempts in flight is busy
+ * rather than throttled, as it may recover as soon as they settle.
+ * <p>
+ * Every key needs a single long: the time at which all of its recorded failures will
+ * have recovered (the generic cell rate algorithm). Keys live in a fixed table of primitive
+ * arrays, probed in small groups, so memory stays constant and no attempt allocates.
+ * A fully recovered key holds no information and its slot is reused freely, but a key with
+ * failures still outstanding is never evicted: while every slot of a group holds an active key,
+ * new keys of that group are treated as throttled, so filling the table can only lock more
+ * keys out, never let a throttled one back in. Keys are compared by a 64-bit SipHash-2-4
+ * fingerprint keyed with a per-process random secret, so colliding keys cannot be prepared in advance.
+ */
+final class LoginRateLimiter {
+    /** Result of {@link #tryAcquire}: the attempt was counted as a failure until it is settled. */
+    static final int ACQUIRED = 0;
+    /** Result of {@link #tryAcquire}: the key has no failures left. */
+    static final int THROTTLED = 1;
+    /** Result of {@link #tryAcquire}: the key's remaining failures are all taken by attempts in flight. */
+    static final int BUSY = 2;
+
+    private static final int WAYS = 4; // Slots probed per key
+    private static final int LOCK_STRIPES = 64;
+
+    private final int maxFailures;
+    private final long recoveryNanos;
+    private final LongSupplier nanoClock; // Monotonic time source (System::nanoTime outside tests)
+    private final long[] fingerprints; // Key fingerprint per slot, 0 for an empty slot
+    private final long[] recoveredAt; // Per slot: time at which all recorded failures have recovered
+    private final int[] inFlight; // Per slot: attempts acquired and not yet settled
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final int groupMask;
+    private final long secret0; // SipHash key, drawn once per limiter
+    private final long secret1;
+
+    /**
+     * Constructor creates an empty limiter.
+     * @param maxFailures The number of failures allowed in a burst.
+     * @param recovery The time after which one failure is forgiven.
+     * @param capacity The number of keys tracked, rounded up to a power of two.
+     * @param nanoClock The monotonic time source, in nanoseconds.
+     */
+    LoginRateLimiter(int maxFailures, Duration recovery, int capacity, LongSupplier nanoClock) {
+        if (maxFailures < 1) {
+            throw new IllegalArgumentException("Max failures must be positive: " + maxFailures);
+        }
+        if (recovery.isNegative() || recovery.isZero()) {
+            throw new IllegalArgumentException("Recovery interval must be positive: " + recovery);
+        }
+        int needed = Math.max(1, (capacity + WAYS - 1) / WAYS);
+        int groups = needed == 1 ? 1 : Integer.highestOneBit(needed - 1) << 1;
+        this.maxFailures = maxFailures;
+        this.recoveryNanos = recovery.toNanos();
+        this.nanoClock = nanoClock;
+        this.fingerprints = new long[groups * WAYS];
+        this.recoveredAt = new long[groups * WAYS];
+        this.inFlight = new int[groups * WAYS];
+        this.groupMask = groups - 1;
+        SecureRandom random = new SecureRandom();
+        this.secret0 = random.nextLong();
+        this.secret1 = random.nextLong();
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Returns how many more failures a key may have before it is throttled.
+     * @param key The account or terminal.
+     * @return The remaining failures, 0 if the key is throttled or its group is full.
+     */
+    int remaining(String key) {
+        long fingerprint = fingerprint(key);
+        int group = group(fingerprint);
+        synchronized (locks[group & (LOCK_STRIPES - 1)]) {
+            long now = nanoClock.getAsLong();
+            int slot = find(group, fingerprint);
+            if (slot < 0) {
+                return claim(group, now) < 0 ? 0 : maxFailures;
+            }
+            return remaining(slot, now);
+        }
+    }
+
+    /**
+     * Checks whether a key is throttled.
+     * @param key The account or terminal.
+     * @return true if the key has no failures left.
+     */
+    boolean isThrottled(String key) {
+        return remaining(key) == 0;
+    }
+
+    /**
+     * Records a failure for a key. Nothing is recorded while the key's group is full, where the
+     * key is already treated as throttled.
+     * @param key The account or terminal.
+     */
+    void recordFailure(String key) {
+        long fingerprint = fingerprint(key);
+        int group = group(fingerprint);
+        synchronized (locks[group & (LOCK_STRIPES - 1)]) {
+            record(group, fingerprint, nanoClock.getAsLong());
+        }
+    }
+
+    /**
+     * Records a failure for a key and marks it in flight, unless the key has no failures left.
+     * @param key The account or terminal.
+     * @return {@link #ACQUIRED}, or {@link #THROTTLED} or {@link #BUSY} if nothing was recorded.
+     *         A new key whose group is full is throttled.
+     */
+    int tryAcquire(String key) {
+        long fingerprint = fingerprint(key);
+        int group = group(fingerprint);
+        synchronized (locks[group & (LOCK_STRIPES - 1)]) {
+            long now = nanoClock.getAsLong();
+            int slot = find(group, fingerprint);
+            if (slot >= 0 && remaining(slot, now) == 0) {
+                return inFlight[slot] > 0 ? BUSY : THROTTLED;
+            }
+            slot = record(group, fingerprint, now);
+            if (slot < 0) {
+                return THROTTLED;
+            }
+            inFlight[slot]++;
+            return ACQUIRED;
+        }
+    }
+
+    /**
+     * Settles an attempt taken by {@link #tryAcquire} as a failure.
+     * @param key The account or terminal.
+     */
+    void complete(String key) {
+        long fingerprint = fingerprint(key);
+        int group = group(fingerprint);
+        synchronized (locks[group & (LOCK_STRIPES - 1)]) {
+            int slot = find(group, fingerprint);
+            if (slot >= 0 && inFlight[slot] > 0) { // Otherwise the key was evicted meanwhile
+                inFlight[slot]--;
+            }
+        }
+    }
+
+    /**
+     * Settles an attempt taken by {@link #tryAcquire} as not failed, giving its failure back.
+     * @param key The account or terminal.
+     */
+    void release(String key) {
+        long fingerprint = fingerprint(key);
+        int group = group(fingerprint);
+        synchronized (locks[group & (LOCK_STRIPES - 1)]) {
+            int slot = find(group, fingerprint);
+            if (slot >= 0 && inFlight[slot] > 0) { // Otherwise the key was evicted meanwhile
+                inFlight[slot]--;
+                recoveredAt[slot] -= recoveryNanos;
+            }
+        }
+    }
+
+    /**
+     * Clears all recorded failures of a key. Attempts still in flight keep their failure until settled.
+     * @param key The account or terminal.
+     */
+    void reset(String key) {
+        long fingerprint = fingerprint(key);
+        int group = group(fingerprint);
+        synchronized (locks[group & (LOCK_STRIPES - 1)]) {
+            int slot = find(group, fingerprint);
+            if (slot >= 0) {
+                if (inFlight[slot] == 0) {
+                    fingerprints[slot] = 0;
+                } else {
+                    recoveredAt[slot] = nanoClock.getAsLong() + inFlight[slot] * recoveryNanos;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds one failure to a key's slot, claiming a slot for a new key.
+     * @return The slot, or -1 if the key is new and its group is full.
+     */
+    private int record(int group, long fingerprint, long now) {
+        int slot = find(group, fingerprint);
+        if (slot < 0) {
+            slot = claim(group, now);
+            if (slot < 0) {
+                return -1;
+            }
+            fingerprints[slot] = fingerprint;
+            recoveredAt[slot] = now;
+            inFlight[slot] = 0;
+        }
+        long from = recoveredAt[slot] - now > 0 ? recoveredAt[slot] : now;
+        long limit = now + maxFailures * recoveryNanos; // Concurrent failures never push recovery further out
+        recoveredAt[slot] = from + recoveryNanos - limit > 0 ? limit : from + recoveryNanos;
+        return slot;
+    }
+
+    private int remaining(int slot, long now) {
+        long debt = recoveredAt[slot] - now;
+        if (debt <= 0) {
+            return maxFailures;
+        }
+        long outstanding = (debt + recoveryNanos - 1) / recoveryNanos;
+        return (int) Math.max(0, maxFailures - outstanding);
+    }
+
+    private int find(int group, long fingerprint) {
+        int base = group * WAYS;
+        for (int slot = base; slot < base + WAYS; slot++) {
+            if (fingerprints[slot] == fingerprint) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Picks a slot for a new key: an empty one, or a fully recovered one with no attempts in flight.
+     * @return The slot, or -1 if every slot of the group holds an active key.
+     */
+    private int claim(int group, long now) {
+        int base = group * WAYS;
+        for (int slot = base; slot < base + WAYS; slot++) {
+            if (fingerprints[slot] == 0 || (recoveredAt[slot] - now <= 0 && inFlight[slot] == 0)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int group(long fingerprint) {
+        return (int) (fingerprint >>> 32) & groupMask;
+    }
+
+    /**
+     * Hashes a key with SipHash-2-4 over its UTF-16 code units, four per message word.
+     * @return The fingerprint, never 0.
+     */
+    private long fingerprint(String key) {
+        long v0 = secret0 ^ 0x736f6d6570736575L;
+        long v1 = secret1 ^ 0x646f72616e646f6dL;
+        long v2 = secret0 ^ 0x6c7967656e657261L;
+        long v3 = secret1 ^ 0x7465646279746573L;
+        int words = key.length() / 4 + 1; // The last word also carries the length
+        for (int word = 0; word <= words; word++) {
+            long m = 0;
+            int rounds = 4; // Finalization
+            if (word < words) {
+                m = messageWord(key, word);
+                v3 ^= m;
+                rounds = 2;
+            } else {
+                v2 ^= 0xff;
+            }
+            for (int round = 0; round < rounds; round++) {
+                v0 += v1;
+                v1 = Long.rotateLeft(v1, 13) ^ v0;
+                v0 = Long.rotateLeft(v0, 32);
+                v2 += v3;
+                v3 = Long.rotateLeft(v3, 16) ^ v2;
+                v0 += v3;
+                v3 = Long.rotateLeft(v3, 21) ^ v0;
+                v2 += v1;
+                v1 = Long.rotateLeft(v1, 17) ^ v2;
+                v2 = Long.rotateLeft(v2, 32);
+            }
+            v0 ^= m;
+        }
+        long h = v0 ^ v1 ^ v2 ^ v3;
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * Packs four UTF-16 code units of a key into a little-endian message word; the last word
+     * holds the remaining ones and the message length in bytes, modulo 256, in its top byte.
+     */
+    private static long messageWord(String key, int word) {
+        int length = key.length();
+        int from = word * 4;
+        long m = from + 4 <= length ? 0 : (long) (length * 2) << 56;
+        for (int i = from; i < Math.min(from + 4, length); i++) {
+            m |= (long) key.charAt(i) << ((i - from) * 16);
+        }
+        return m;
+    }
+}
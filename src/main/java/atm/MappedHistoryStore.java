@@ -0,0 +1,278 @@
+package atm;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * The MappedHistoryStore class keeps history columns in fixed-size memory-mapped segment files.
+ * Each segment file holds a 64-byte header (magic, version, entry count, sealed flag) followed by
+ * fixed-size records, so any entry is read directly from mapped memory by position.
+ * <p>
+ * Only the newest segment is writable. Once it is full it is forced to disk, sealed and
+ * remapped read-only. Opening a store reads one header per segment, so startup time depends
+ * on the number of segments rather than the number of entries.
+ * <p>
+ * A new segment is written under a temporary name and only renamed into place once its header
+ * is on disk, so a crash while creating one never leaves a headerless segment behind.
+ */
+class MappedHistoryStore implements HistoryStore {
+    /** Default log2 of the number of entries per segment (65,536 entries, 1.5 MB per file). */
+    static final int DEFAULT_SEGMENT_SHIFT = 16;
+
+    private static final int MAGIC = 0x48495354; // "HIST"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int COUNT_OFFSET = 8;
+    private static final int SEALED_OFFSET = 12;
+    private static final int RECORD_BYTES = 24; // timestamp(8) amount(8) type(1) link(7)
+    private static final int AMOUNT_OFFSET = 8;
+    private static final int TYPE_OFFSET = 16; // Type and link share one big-endian long: type in the top byte
+
+    private final Path directory;
+    private final int segmentShift;
+    private final int segmentMask;
+    private final int segmentEntries;
+    private MappedByteBuffer[] segments = new MappedByteBuffer[4];
+    private int segmentCount;
+    private int size;
+
+    /**
+     * Opens the segments in a directory, creating the directory if needed.
+     * @param directory The directory holding this history's segment files.
+     * @param segmentShift log2 of the number of entries per segment.
+     * @throws IOException if a segment cannot be mapped or is corrupt.
+     */
+    MappedHistoryStore(Path directory, int segmentShift) throws IOException {
+        if (segmentShift < 1 || segmentShift > 24) {
+            throw new IllegalArgumentException("Segment shift out of range: " + segmentShift);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentShift = segmentShift;
+        this.segmentEntries = 1 << segmentShift;
+        this.segmentMask = segmentEntries - 1;
+
+        Path[] files;
+        Path[] partial;
+        try (Stream<Path> listing = Files.list(directory)) {
+            Path[] all = listing.toArray(Path[]::new);
+            files = Arrays.stream(all).filter(f -> f.getFileName().toString().matches("segment-\\d{8}\\.dat"))
+                    .sorted().toArray(Path[]::new);
+            partial = Arrays.stream(all).filter(f -> f.getFileName().toString().matches("segment-\\d{8}\\.tmp"))
+                    .toArray(Path[]::new);
+        }
+        for (Path file : partial) {
+            Files.delete(file); // Left behind by a crash before the segment was renamed into place
+        }
+        for (int i = 0; i < files.length; i++) {
+            if (!files[i].equals(segmentFile(i))) {
+                throw new IOException("Missing history segment " + segmentFile(i));
+            }
+            boolean last = i == files.length - 1;
+            MappedByteBuffer segment = map(files[i], !last);
+            if (segment.capacity() != segmentBytes() || segment.getInt(0) != MAGIC || segment.getInt(4) != VERSION) {
+                throw new IOException("Not a history segment: " + files[i]);
+            }
+            int count = segment.getInt(COUNT_OFFSET);
+            if (count < 0 || count > segmentEntries || (!last && count != segmentEntries)) {
+                throw new IOException("Corrupt history segment: " + files[i]);
+            }
+            addSegment(segment);
+            size += count;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long timestamp(int position) {
+        return segments[position >>> segmentShift].getLong(offset(position));
+    }
+
+    @Override
+    public byte type(int position) {
+        return segments[position >>> segmentShift].get(offset(position) + TYPE_OFFSET);
+    }
+
+    @Override
+    public long amount(int position) {
+        return segments[position >>> segmentShift].getLong(offset(position) + AMOUNT_OFFSET);
+    }
+
+    @Override
+    public long link(int position) {
+        return segments[position >>> segmentShift].getLong(offset(position) + TYPE_OFFSET) & History.MAX_LINK;
+    }
+
+    @Override
+    public void append(long timestampMillis, byte type, long amountCents, long link) {
+        int segmentIndex = size >>> segmentShift;
+        if (segmentIndex == segmentCount) {
+            createSegment(segmentIndex);
+        }
+        MappedByteBuffer segment = segments[segmentIndex];
+        int offset = offset(size);
+        segment.putLong(offset, timestampMillis);
+        segment.putLong(offset + AMOUNT_OFFSET, amountCents);
+        segment.putLong(offset + TYPE_OFFSET, (long) type << 56 | link);
+        int count = (size & segmentMask) + 1;
+        segment.putInt(COUNT_OFFSET, count); // Publish the entry only after it is fully written
+        size++;
+        if (count == segmentEntries) {
+            seal(segmentIndex);
+        }
+    }
+
+    @Override
+    public void appendAll(long timestampMillis, byte[] types, long[] amountsCents, int count) {
+        int i = 0;
+        while (i < count) {
+            int segmentIndex = size >>> segmentShift;
+            if (segmentIndex == segmentCount) {
+                createSegment(segmentIndex);
+            }
+            MappedByteBuffer segment = segments[segmentIndex];
+            int inSegment = Math.min(count - i, segmentEntries - (size & segmentMask));
+            for (int end = i + inSegment; i < end; i++, size++) {
+                int offset = offset(size);
+                segment.putLong(offset, timestampMillis);
+                segment.putLong(offset + AMOUNT_OFFSET, amountsCents[i]);
+                segment.putLong(offset + TYPE_OFFSET, (long) types[i] << 56);
+            }
+            int filled = ((size - 1) & segmentMask) + 1;
+            segment.putInt(COUNT_OFFSET, filled); // Publish this segment's share of the batch at once
+            if (filled == segmentEntries) {
+                seal(segmentIndex);
+            }
+        }
+    }
+
+    /**
+     * Discards the entries from the given position on: later segment files are deleted, newest first,
+     * and the segment holding the new last entry is reopened for writing with its count lowered.
+     */
+    @Override
+    public void truncate(int size) throws IOException {
+        if (size < 0 || size > this.size) {
+            throw new IllegalArgumentException("Invalid history size: " + size);
+        }
+        int keep = (size + segmentMask) >>> segmentShift;
+        while (segmentCount > keep) {
+            segments[--segmentCount] = null;
+            Files.delete(segmentFile(segmentCount));
+        }
+        this.size = size;
+        int count = size & segmentMask;
+        if (count > 0) {
+            int index = segmentCount - 1;
+            MappedByteBuffer segment = segments[index];
+            if (segment.isReadOnly()) {
+                segment = map(segmentFile(index), false);
+                segments[index] = segment;
+            }
+            segment.putInt(COUNT_OFFSET, count);
+            segment.put(SEALED_OFFSET, (byte) 0);
+            segment.force();
+        }
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+
+    /**
+     * Forces the writable segment to disk.
+     */
+    @Override
+    public void close() {
+        if (segmentCount > 0 && !segments[segmentCount - 1].isReadOnly()) {
+            segments[segmentCount - 1].force();
+        }
+    }
+
+    /**
+     * Returns the number of segment files.
+     * @return The segment count.
+     */
+    int segmentCount() {
+        return segmentCount;
+    }
+
+    private int offset(int position) {
+        return HEADER_BYTES + (position & segmentMask) * RECORD_BYTES;
+    }
+
+    private int segmentBytes() {
+        return HEADER_BYTES + segmentEntries * RECORD_BYTES;
+    }
+
+    private Path segmentFile(int index) {
+        return directory.resolve(String.format("segment-%08d.dat", index));
+    }
+
+    /**
+     * Creates a segment under a temporary name, forces its header to disk and renames it into place.
+     */
+    private void createSegment(int index) {
+        Path file = segmentFile(index);
+        Path temporary = file.resolveSibling(String.format("segment-%08d.tmp", index));
+        try {
+            MappedByteBuffer segment;
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes());
+                segment.putInt(0, MAGIC);
+                segment.putInt(4, VERSION);
+                segment.putInt(COUNT_OFFSET, 0);
+                segment.force();
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+            addSegment(segment);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create history segment " + file, e);
+        }
+    }
+
+    /**
+     * Marks a full segment as sealed, forces it to disk and replaces its mapping with a read-only one.
+     */
+    private void seal(int index) {
+        MappedByteBuffer segment = segments[index];
+        segment.put(SEALED_OFFSET, (byte) 1);
+        segment.force();
+        try {
+            segments[index] = map(segmentFile(index), true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot seal history segment " + segmentFile(index), e);
+        }
+    }
+
+    private void addSegment(MappedByteBuffer segment) {
+        if (segmentCount == segments.length) {
+            segments = Arrays.copyOf(segments, segmentCount * 2);
+        }
+        segments[segmentCount++] = segment;
+    }
+
+    private static MappedByteBuffer map(Path file, boolean readOnly) throws IOException {
+        if (readOnly) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+    }
+}
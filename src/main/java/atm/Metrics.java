@@ -0,0 +1,145 @@
+package atm;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The Metrics class counts ATM operations and records their latencies, one striped
+ * {@link LatencyHistogram} and one failure counter per {@link Operation}. Recording never takes
+ * a lock, so instrumented code paths do not contend on it.
+ * <p>
+ * Terminals, the wire protocol and the authenticator record into the process-wide instance
+ * returned by {@link #global()}. Its statistics can be read as a text report or over JMX once
+ * {@link #registerMBean()} has been called.
+ */
+public final class Metrics implements MetricsMXBean {
+    /** JMX name the global instance is registered under. */
+    public static final String OBJECT_NAME = "atm:type=Metrics";
+
+    private static final Metrics GLOBAL = new Metrics();
+
+    /**
+     * The operations measured.
+     */
+    public enum Operation {
+        DEPOSIT("deposit"),
+        WITHDRAW("withdraw"),
+        BALANCE("balance"),
+        HISTORY("history"),
+        PASSWORD_CHANGE("password_change"),
+        LOGIN_SUCCESS("login_success"),
+        LOGIN_FAILURE("login_failure");
+
+        private final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Returns the name used in reports.
+         * @return The label, e.g. "deposit".
+         */
+        public String label() {
+            return label;
+        }
+    }
+
+    private final LatencyHistogram[] latencies; // Per operation ordinal
+    private final LongAdder[] failures; // Per operation ordinal
+
+    /**
+     * Constructor creates an empty set of metrics; production code shares {@link #global()}.
+     */
+    Metrics() {
+        Operation[] operations = Operation.values();
+        latencies = new LatencyHistogram[operations.length];
+        failures = new LongAdder[operations.length];
+        for (int i = 0; i < operations.length; i++) {
+            latencies[i] = new LatencyHistogram();
+            failures[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Returns the process-wide metrics.
+     * @return The global instance.
+     */
+    public static Metrics global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Returns a start time to pass to {@link #record}.
+     * @return The current monotonic time in nanoseconds.
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records one run of an operation that started at the given time and ends now.
+     * @param operation The operation.
+     * @param startNanos The value {@link #start()} returned when it began.
+     * @param success false if the operation was rejected.
+     */
+    public void record(Operation operation, long startNanos, boolean success) {
+        latencies[operation.ordinal()].record(System.nanoTime() - startNanos);
+        if (!success) {
+            failures[operation.ordinal()].increment();
+        }
+    }
+
+    /**
+     * Returns the current statistics of one operation.
+     * @param operation The operation.
+     * @return The statistics.
+     */
+    public OperationStats getStats(Operation operation) {
+        int i = operation.ordinal();
+        return new OperationStats(operation.label(), failures[i].sum(), latencies[i].snapshot());
+    }
+
+    @Override
+    public List<OperationStats> getOperations() {
+        List<OperationStats> stats = new ArrayList<>();
+        for (Operation operation : Operation.values()) {
+            stats.add(getStats(operation));
+        }
+        return stats;
+    }
+
+    /**
+     * Returns a text table with one line per operation: count, failures, then the mean,
+     * percentiles and maximum in microseconds.
+     * @return The report.
+     */
+    @Override
+    public String getReport() {
+        StringBuilder report = new StringBuilder(String.format("%-16s %10s %10s %10s %10s %10s %10s %10s %10s%n",
+                "operation", "count", "failures", "mean_us", "p50_us", "p90_us", "p99_us", "p99.9_us", "max_us"));
+        for (OperationStats stats : getOperations()) {
+            report.append(String.format("%-16s %10d %10d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    stats.getOperation(), stats.getCount(), stats.getFailures(), stats.getMeanMicros(),
+                    stats.getP50Micros(), stats.getP90Micros(), stats.getP99Micros(), stats.getP999Micros(),
+                    stats.getMaxMicros()));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Registers the global instance with the platform MBean server under {@link #OBJECT_NAME}.
+     * Registering more than once has no effect.
+     * @throws JMException if the bean cannot be registered.
+     */
+    public static synchronized void registerMBean() throws JMException {
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(GLOBAL, name);
+        }
+    }
+}
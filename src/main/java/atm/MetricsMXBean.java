@@ -0,0 +1,20 @@
+package atm;
+
+import java.util.List;
+
+/**
+ * The MetricsMXBean interface exposes {@link Metrics} over JMX, e.g. to watch p99 latencies in JConsole.
+ */
+public interface MetricsMXBean {
+    /**
+     * Returns the statistics of every operation.
+     * @return One entry per operation.
+     */
+    List<OperationStats> getOperations();
+
+    /**
+     * Returns the statistics of every operation as a text table.
+     * @return The report.
+     */
+    String getReport();
+}
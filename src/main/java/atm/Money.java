@@ -0,0 +1,138 @@
+package atm;
+
+/**
+ * The Money class provides fixed-point arithmetic helpers for amounts held as
+ * primitive {@code long} minor units (cents) with an explicit scale of two digits.
+ * No method on the hot path allocates or rounds through floating point.
+ */
+public final class Money {
+    /** Number of decimal digits in the minor unit. */
+    public static final int SCALE = 2;
+    /** Number of minor units in one major unit. */
+    public static final long CENTS_PER_UNIT = 100L;
+
+    private Money() {
+        // Static helpers only
+    }
+
+    /**
+     * Converts a dollar amount to cents, rounding to the nearest cent.
+     * Used only at the edges where amounts still arrive as doubles.
+     * @param amount The dollar amount.
+     * @return The amount in cents.
+     * @throws IllegalArgumentException if the amount is not finite or does not fit in a long in cents.
+     */
+    public static long fromDouble(double amount) {
+        if (!fits(amount)) {
+            throw new IllegalArgumentException("Amount out of range: " + amount);
+        }
+        return Math.round(amount * CENTS_PER_UNIT);
+    }
+
+    /**
+     * Converts a requested dollar amount to cents for an operation that rejects invalid amounts
+     * itself: an amount that is not positive or does not fit in a long maps to 0.
+     * @param amount The requested dollar amount.
+     * @return The amount in cents, or 0 for an invalid amount.
+     */
+    static long requestedCents(double amount) {
+        return amount > 0 && fits(amount) ? Math.round(amount * CENTS_PER_UNIT) : 0;
+    }
+
+    /**
+     * Converts cents to a dollar amount.
+     * @param cents The amount in cents.
+     * @return The dollar amount.
+     */
+    public static double toDouble(long cents) {
+        return cents / (double) CENTS_PER_UNIT;
+    }
+
+    /**
+     * Parses a decimal amount such as "12", "12.5" or "-0.75" into cents without
+     * going through floating point.
+     * @param text The amount text.
+     * @return The amount in cents.
+     * @throws NumberFormatException if the text is not a valid amount with at most two decimals.
+     */
+    public static long parse(CharSequence text) {
+        int length = text.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+            negative = text.charAt(0) == '-';
+            i++;
+        }
+        long units = 0;
+        int digits = 0;
+        for (; i < length && text.charAt(i) != '.'; i++) {
+            units = Math.addExact(Math.multiplyExact(units, 10L), digit(text, i));
+            digits++;
+        }
+        long fraction = 0;
+        int fractionDigits = 0;
+        if (i < length) {
+            for (i++; i < length; i++) {
+                if (++fractionDigits > SCALE) {
+                    throw new NumberFormatException("Too many decimal places: " + text);
+                }
+                fraction = fraction * 10 + digit(text, i);
+            }
+        }
+        if (digits == 0 && fractionDigits == 0) {
+            throw new NumberFormatException("Invalid amount: " + text);
+        }
+        for (; fractionDigits < SCALE; fractionDigits++) {
+            fraction *= 10;
+        }
+        long cents = Math.addExact(Math.multiplyExact(units, CENTS_PER_UNIT), fraction);
+        return negative ? -cents : cents;
+    }
+
+    /**
+     * Appends an amount in cents as a decimal with two fraction digits, e.g. "1500.00".
+     * @param out The builder to append to.
+     * @param cents The amount in cents.
+     * @return The same builder.
+     */
+    public static StringBuilder appendTo(StringBuilder out, long cents) {
+        if (cents < 0) {
+            out.append('-');
+            if (cents == Long.MIN_VALUE) {
+                // Cannot be negated; split off the last digit first
+                return appendUnsigned(out, Long.MAX_VALUE / CENTS_PER_UNIT, Long.MAX_VALUE % CENTS_PER_UNIT + 1);
+            }
+            cents = -cents;
+        }
+        return appendUnsigned(out, cents / CENTS_PER_UNIT, cents % CENTS_PER_UNIT);
+    }
+
+    /**
+     * Formats an amount in cents as a decimal with two fraction digits.
+     * @param cents The amount in cents.
+     * @return The formatted amount.
+     */
+    public static String format(long cents) {
+        return appendTo(new StringBuilder(24), cents).toString();
+    }
+
+    private static StringBuilder appendUnsigned(StringBuilder out, long units, long fraction) {
+        out.append(units).append('.');
+        if (fraction < 10) {
+            out.append('0');
+        }
+        return out.append(fraction);
+    }
+
+    private static boolean fits(double amount) {
+        return Math.abs(amount * CENTS_PER_UNIT) < 0x1p63; // False for NaN and infinities too
+    }
+
+    private static int digit(CharSequence text, int index) {
+        char c = text.charAt(index);
+        if (c < '0' || c > '9') {
+            throw new NumberFormatException("Invalid amount: " + text);
+        }
+        return c - '0';
+    }
+}
@@ -0,0 +1,408 @@
+package atm;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The NioATMServer class serves the {@link WireProtocol} to many terminals on a few threads.
+ * Each I/O thread runs a selector loop over its share of the connections and owns one direct
+ * read buffer and one direct write buffer that it reuses for all of them; a connection only
+ * holds buffers of its own while it has a partial request or an unsent reply.
+ * <p>
+ * Only requests that cannot block (balance queries, EXIT and malformed requests) are answered on
+ * the I/O thread. Logins, password changes, deposits, withdrawals and statements complete on
+ * virtual threads and their replies are sent by the I/O thread; meanwhile the connection stops
+ * reading, so its requests are still answered in order. A terminal that disconnects is logged out.
+ */
+public class NioATMServer implements AutoCloseable {
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int MAX_LINE_BYTES = 1024;
+
+    private final WireProtocol protocol;
+    private final ExecutorService blockingExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final EventLoop[] loops;
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running;
+    private int nextLoop; // Round-robin assignment of new connections, used by the accepting loop only
+
+    /**
+     * The state of one connection, touched only by its event loop.
+     */
+    private static final class Connection {
+        final SocketChannel channel;
+        final WireProtocol.Session session;
+        SelectionKey key;
+        ByteBuffer pendingInput; // Unprocessed request bytes, in write mode (null if none)
+        ByteBuffer pendingOutput; // Unsent reply bytes, in write mode (null if none)
+        boolean suspended; // Waiting for a pending reply
+        boolean closeAfterFlush;
+
+        Connection(SocketChannel channel, String terminal) {
+            this.channel = channel;
+            this.session = new WireProtocol.Session(terminal);
+        }
+    }
+
+    /**
+     * Constructor creates a server for the given ledger and authenticator.
+     * @param ledger The accounts served.
+     * @param authenticator The authenticator for logins.
+     * @param ioThreads The number of selector threads.
+     * @throws IOException if a selector cannot be opened.
+     */
+    public NioATMServer(Ledger ledger, Authenticator authenticator, int ioThreads) throws IOException {
+        if (ioThreads < 1) {
+            throw new IllegalArgumentException("I/O threads must be positive: " + ioThreads);
+        }
+        this.protocol = new WireProtocol(ledger, authenticator, blockingExecutor);
+        this.loops = new EventLoop[ioThreads];
+        for (int i = 0; i < ioThreads; i++) {
+            loops[i] = new EventLoop(i);
+        }
+    }
+
+    /**
+     * Binds to a port on the loopback interface and starts the I/O threads.
+     * @param port The port, or 0 for any free port.
+     * @throws IOException if the port cannot be bound.
+     * @throws IllegalStateException if the server was already started.
+     */
+    public synchronized void start(int port) throws IOException {
+        if (serverChannel != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+    }
+
+    /**
+     * Returns the port the server listens on.
+     * @return The port.
+     */
+    public synchronized int getPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Returns the number of terminals currently connected.
+     * @return The connection count.
+     */
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    /**
+     * Stops accepting terminals, disconnects the connected ones and stops the I/O threads.
+     * @throws IOException if a channel cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        running = false;
+        for (EventLoop loop : loops) {
+            loop.selector.wakeup(); // The loop then closes its connections and its selector
+        }
+        for (EventLoop loop : loops) {
+            if (loop.thread.isAlive()) {
+                try {
+                    loop.thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+        blockingExecutor.shutdown();
+    }
+
+    /**
+     * One selector thread and the buffers it reuses for all of its connections.
+     */
+    private final class EventLoop implements Runnable {
+        final Selector selector;
+        final Thread thread;
+        final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>(); // Work handed over by other threads
+        final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        final StringBuilder line = new StringBuilder(MAX_LINE_BYTES);
+        final StringBuilder reply = new StringBuilder();
+
+        EventLoop(int index) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, "atm-nio-" + index);
+        }
+
+        /**
+         * Runs a task on this loop's thread.
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    for (Runnable task; (task = tasks.poll()) != null; ) {
+                        task.run();
+                    }
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            Connection connection = (Connection) key.attachment();
+                            if (key.isWritable()) {
+                                flushPending(connection);
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                read(connection);
+                            }
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Selector failed", e);
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Connection connection) {
+                        close(connection);
+                    }
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    // Nothing left to release
+                }
+            }
+        }
+
+        private void accept() throws IOException {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                String terminal = ATMServer.terminalId((InetSocketAddress) channel.getRemoteAddress());
+                Connection connection = new Connection(channel, terminal);
+                activeConnections.incrementAndGet();
+                EventLoop owner = loops[nextLoop++ % loops.length];
+                if (owner == this) {
+                    register(connection);
+                } else {
+                    owner.execute(() -> owner.register(connection));
+                }
+            }
+        }
+
+        private void register(Connection connection) {
+            try {
+                connection.key = connection.channel.register(selector, SelectionKey.OP_READ, connection);
+            } catch (IOException e) {
+                close(connection);
+            }
+        }
+
+        private void read(Connection connection) {
+            readBuffer.clear();
+            int read;
+            try {
+                read = connection.channel.read(readBuffer);
+            } catch (IOException e) {
+                read = -1;
+            }
+            if (read < 0) {
+                close(connection);
+                return;
+            }
+            readBuffer.flip();
+            if (connection.pendingInput == null) {
+                process(connection, readBuffer);
+            } else {
+                connection.pendingInput = append(connection.pendingInput, readBuffer);
+                processPendingInput(connection);
+            }
+        }
+
+        private void processPendingInput(Connection connection) {
+            ByteBuffer input = connection.pendingInput.flip();
+            connection.pendingInput = null;
+            process(connection, input);
+        }
+
+        /**
+         * Answers every complete request in the input, then sends the replies and keeps any unprocessed bytes.
+         */
+        private void process(Connection connection, ByteBuffer input) {
+            reply.setLength(0);
+            while (!connection.suspended && !connection.closeAfterFlush) {
+                int end = indexOf(input, (byte) '\n');
+                if (end < 0) {
+                    if (input.remaining() > MAX_LINE_BYTES) {
+                        reply.append("ERR TOOLONG\n");
+                        connection.closeAfterFlush = true;
+                    }
+                    break;
+                }
+                line.setLength(0);
+                for (int i = input.position(); i < end; i++) {
+                    char c = (char) (input.get(i) & 0xFF);
+                    if (c != '\r') {
+                        line.append(c);
+                    }
+                }
+                input.position(end + 1);
+                switch (protocol.handle(connection.session, line.toString(), reply)) {
+                    case CLOSE -> connection.closeAfterFlush = true;
+                    case PENDING -> suspend(connection);
+                    default -> { }
+                }
+            }
+            if (input.hasRemaining() && !connection.closeAfterFlush) {
+                connection.pendingInput = append(null, input);
+            }
+            send(connection, reply);
+        }
+
+        /**
+         * Stops reading from a connection until its pending reply is complete.
+         */
+        private void suspend(Connection connection) {
+            connection.suspended = true;
+            connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_READ);
+            connection.session.pendingReply().whenComplete((text, failure) -> execute(() -> resume(connection, text)));
+        }
+
+        private void resume(Connection connection, String text) {
+            if (!connection.key.isValid()) {
+                return;
+            }
+            connection.suspended = false;
+            reply.setLength(0);
+            reply.append(text == null ? "ERR INTERNAL\n" : text);
+            send(connection, reply);
+            if (connection.pendingInput != null) {
+                processPendingInput(connection);
+            }
+            if (!connection.suspended && connection.key.isValid()) {
+                connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_READ);
+            }
+        }
+
+        /**
+         * Writes reply text through the shared direct buffer; whatever the socket does not take is kept
+         * for when it becomes writable. Replies are ASCII; other characters are sent as '?'.
+         */
+        private void send(Connection connection, CharSequence text) {
+            int next = 0;
+            while (next < text.length()) {
+                writeBuffer.clear();
+                for (; next < text.length() && writeBuffer.hasRemaining(); next++) {
+                    char c = text.charAt(next);
+                    writeBuffer.put(c < 0x80 ? (byte) c : (byte) '?');
+                }
+                writeBuffer.flip();
+                if (connection.pendingOutput == null) {
+                    try {
+                        connection.channel.write(writeBuffer);
+                    } catch (IOException e) {
+                        close(connection);
+                        return;
+                    }
+                }
+                if (writeBuffer.hasRemaining()) {
+                    connection.pendingOutput = append(connection.pendingOutput, writeBuffer);
+                }
+                writeBuffer.clear();
+            }
+            if (connection.pendingOutput != null) {
+                connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_WRITE);
+            } else if (connection.closeAfterFlush) {
+                close(connection);
+            }
+        }
+
+        private void flushPending(Connection connection) {
+            ByteBuffer output = connection.pendingOutput.flip();
+            try {
+                connection.channel.write(output);
+            } catch (IOException e) {
+                close(connection);
+                return;
+            }
+            if (output.hasRemaining()) {
+                connection.pendingOutput = output.compact();
+                return;
+            }
+            connection.pendingOutput = null;
+            connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_WRITE);
+            if (connection.closeAfterFlush) {
+                close(connection);
+            }
+        }
+
+        private void close(Connection connection) {
+            if (!connection.channel.isOpen()) {
+                return;
+            }
+            CompletableFuture<String> pending = connection.suspended ? connection.session.pendingReply() : null;
+            if (pending == null) {
+                protocol.disconnect(connection.session);
+            } else { // A login may still be completing; log out once it has
+                pending.whenComplete((text, failure) -> protocol.disconnect(connection.session));
+            }
+            try {
+                connection.channel.close();
+            } catch (IOException e) {
+                // Already disconnected
+            }
+            activeConnections.decrementAndGet();
+        }
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte value) {
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Appends the remaining bytes of a buffer to a connection-owned heap buffer in write mode, growing it as needed.
+     */
+    private static ByteBuffer append(ByteBuffer target, ByteBuffer source) {
+        if (target == null) {
+            target = ByteBuffer.allocate(Math.max(256, source.remaining()));
+        } else if (target.remaining() < source.remaining()) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(target.capacity() * 2, target.position() + source.remaining()));
+            target = grown.put(target.flip());
+        }
+        return target.put(source);
+    }
+}
@@ -0,0 +1,104 @@
+package atm;
+
+/**
+ * The OperationStats class is a point-in-time summary of one operation's counters and latencies.
+ * Latencies are in microseconds; percentiles and the maximum are accurate to about 3%.
+ */
+public final class OperationStats {
+    private final String operation;
+    private final long count;
+    private final long failures;
+    private final double meanMicros;
+    private final double p50Micros;
+    private final double p90Micros;
+    private final double p99Micros;
+    private final double p999Micros;
+    private final double maxMicros;
+
+    /**
+     * Constructor summarizes a histogram snapshot.
+     */
+    OperationStats(String operation, long failures, LatencyHistogram.Snapshot latencies) {
+        this.operation = operation;
+        this.count = latencies.count();
+        this.failures = failures;
+        this.meanMicros = latencies.mean() / 1_000;
+        this.p50Micros = latencies.percentile(50) / 1_000.0;
+        this.p90Micros = latencies.percentile(90) / 1_000.0;
+        this.p99Micros = latencies.percentile(99) / 1_000.0;
+        this.p999Micros = latencies.percentile(99.9) / 1_000.0;
+        this.maxMicros = latencies.max() / 1_000.0;
+    }
+
+    /**
+     * Returns the operation name, e.g. "deposit".
+     * @return The name.
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * Returns the number of times the operation ran.
+     * @return The count, including failures.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of times the operation was rejected, e.g. a withdrawal over the balance.
+     * @return The failure count.
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * Returns the mean latency.
+     * @return The mean, in microseconds.
+     */
+    public double getMeanMicros() {
+        return meanMicros;
+    }
+
+    /**
+     * Returns the median latency.
+     * @return The 50th percentile, in microseconds.
+     */
+    public double getP50Micros() {
+        return p50Micros;
+    }
+
+    /**
+     * Returns the 90th percentile latency.
+     * @return The 90th percentile, in microseconds.
+     */
+    public double getP90Micros() {
+        return p90Micros;
+    }
+
+    /**
+     * Returns the 99th percentile latency.
+     * @return The 99th percentile, in microseconds.
+     */
+    public double getP99Micros() {
+        return p99Micros;
+    }
+
+    /**
+     * Returns the 99.9th percentile latency.
+     * @return The 99.9th percentile, in microseconds.
+     */
+    public double getP999Micros() {
+        return p999Micros;
+    }
+
+    /**
+     * Returns the highest latency.
+     * @return The maximum, in microseconds.
+     */
+    public double getMaxMicros() {
+        return maxMicros;
+    }
+}
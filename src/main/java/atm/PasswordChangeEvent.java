@@ -0,0 +1,36 @@
+package atm;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The PasswordChangeEvent class is a JDK Flight Recorder event spanning one password change,
+ * including the check of the old password and the hashing of the new one.
+ */
+@Name("atm.PasswordChange")
+@Label("Password Change")
+@Category({"ATM", "Security"})
+@Description("One password change request")
+final class PasswordChangeEvent extends jdk.jfr.Event {
+    @Label("Account")
+    String account;
+
+    @Label("Outcome")
+    @Description("changed, denied, busy, empty or unchanged")
+    String outcome;
+
+    /**
+     * Fills in and commits the event if a recording wants it.
+     * @param account The account number.
+     * @param outcome What happened: "changed", "denied", "busy", "empty" or "unchanged".
+     */
+    void finish(String account, String outcome) {
+        if (shouldCommit()) {
+            this.account = account;
+            this.outcome = outcome;
+            commit();
+        }
+    }
+}
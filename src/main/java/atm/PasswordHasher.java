@@ -0,0 +1,100 @@
+package atm;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * The PasswordHasher class derives salted PBKDF2-HMAC-SHA256 hashes of passwords
+ * and verifies passwords against them in constant time.
+ */
+final class PasswordHasher {
+    /** Iteration count used when none is configured (OWASP recommendation for PBKDF2-HMAC-SHA256). */
+    static final int DEFAULT_ITERATIONS = 600_000;
+    /** System property that overrides the default iteration count, e.g. for tests. */
+    static final String ITERATIONS_PROPERTY = "atm.pbkdf2.iterations";
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int KEY_BITS = 256;
+
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * A stored hash together with the salt and iteration count it was derived with.
+     */
+    static final class Hash {
+        private final byte[] salt;
+        private final int iterations;
+        private final byte[] derived;
+
+        Hash(byte[] salt, int iterations, byte[] derived) {
+            this.salt = salt;
+            this.iterations = iterations;
+            this.derived = derived;
+        }
+
+        byte[] salt() {
+            return salt.clone();
+        }
+
+        int iterations() {
+            return iterations;
+        }
+    }
+
+    /**
+     * Constructor sets the iteration count for new hashes.
+     * @param iterations The PBKDF2 iteration count.
+     */
+    PasswordHasher(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("Iterations must be positive: " + iterations);
+        }
+        this.iterations = iterations;
+    }
+
+    /**
+     * Returns the iteration count configured through {@link #ITERATIONS_PROPERTY},
+     * or {@link #DEFAULT_ITERATIONS}.
+     * @return The iteration count.
+     */
+    static int defaultIterations() {
+        return Integer.getInteger(ITERATIONS_PROPERTY, DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * Hashes a password with a fresh random salt.
+     * @param password The password.
+     * @return The salted hash.
+     */
+    Hash hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        return new Hash(salt, iterations, derive(password, salt, iterations));
+    }
+
+    /**
+     * Checks a password against a stored hash.
+     * @param password The password to check.
+     * @param stored The stored hash.
+     * @return true if the password matches.
+     */
+    boolean verify(String password, Hash stored) {
+        return MessageDigest.isEqual(derive(password, stored.salt, stored.iterations), stored.derived);
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, KEY_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
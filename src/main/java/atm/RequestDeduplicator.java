@@ -0,0 +1,397 @@
+package atm;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The RequestDeduplicator class makes retried requests idempotent. Terminals tag each deposit,
+ * withdrawal or transfer with a request id; the first request with an id runs, and every retry
+ * with the same id gets the first one's result without running again. A retry that arrives while
+ * the first request is still running waits for its result. A request that throws is forgotten,
+ * so its retry runs. Request ids are never 0.
+ * <p>
+ * Ids are only unique within a scope, such as an account and the terminal that numbers its
+ * requests, so the same id from two scopes names two requests. Each entry also keeps a
+ * fingerprint of its request (operation, amount, counterparty); reusing an id in the same scope
+ * for a different request is rejected instead of answered with the other request's result.
+ * <p>
+ * Results are kept for a time to live and at most for a fixed number of recent ids; the oldest
+ * ids are evicted first, but an id whose request is still running is never evicted, so the
+ * table may briefly exceed its capacity. The table is striped into segments, each an
+ * open-addressing hash table over long arrays (id, scope, fingerprint, and ring position with
+ * state) plus a ring of ids in the order they were last claimed, so an entry costs about 100
+ * bytes and no object. Segments start small and grow with use.
+ * <p>
+ * The table is held in memory only and is not written to the journal, so the guarantee lasts
+ * as long as the process: after a restart every id is unknown again, and a retry of a request
+ * that was applied before the restart is applied a second time. A terminal that reconnects
+ * after a restart has to check the balance or statement before it retries.
+ */
+public final class RequestDeduplicator {
+    /** Default maximum number of request ids remembered. */
+    public static final int DEFAULT_CAPACITY = 1 << 22;
+    /** Default time a result is remembered. */
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(10);
+
+    private static final int SEGMENT_BITS = 4;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+    private static final int INITIAL_RING = 8; // Entries a segment holds before it first grows
+    private static final int STATE_BITS = 2; // Low bits of an entry's meta word
+    private static final long STATE_MASK = (1 << STATE_BITS) - 1;
+    private static final int RETRYABLE = 0; // The request threw; the next one with its id runs again
+    private static final int PENDING = 1; // The request is running
+    private static final int REJECTED = 2; // The request ran and returned false
+    private static final int APPLIED = 3; // The request ran and returned true
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long timeToLiveMillis;
+    private final Clock clock; // Source of the time results are remembered from
+    private final LongAdder replays = new LongAdder();
+
+    /**
+     * Constructor creates a deduplicator with the default capacity and time to live.
+     */
+    public RequestDeduplicator() {
+        this(DEFAULT_CAPACITY, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * Constructor creates a deduplicator.
+     * @param capacity The maximum number of request ids remembered.
+     * @param timeToLive How long a result is remembered.
+     */
+    public RequestDeduplicator(int capacity, Duration timeToLive) {
+        this(capacity, timeToLive, Clock.systemUTC());
+    }
+
+    /**
+     * Constructor creates a deduplicator with the given clock, e.g. a test clock.
+     */
+    RequestDeduplicator(int capacity, Duration timeToLive, Clock clock) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity out of range: " + capacity);
+        }
+        if (timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException("Time to live must be positive: " + timeToLive);
+        }
+        this.timeToLiveMillis = timeToLive.toMillis();
+        this.clock = clock;
+        int perSegment = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    /**
+     * Runs a request once per request id, in a single global scope and without a fingerprint.
+     * @param requestId The request id; retries of a request carry the same id.
+     * @param request The request, returning whether it was applied.
+     * @return The request's result, or the result of the first request with this id.
+     * @throws IllegalArgumentException if the request id is 0.
+     * @throws IllegalStateException if the thread is interrupted while waiting for a running duplicate.
+     */
+    public boolean execute(long requestId, BooleanSupplier request) {
+        return execute(0, requestId, 0, request);
+    }
+
+    /**
+     * Runs a request once per request id within a scope.
+     * @param scope The scope the id is unique in, e.g. from {@link #hash(String)} of the account.
+     * @param requestId The request id; retries of a request carry the same id.
+     * @param fingerprint Identifies what the request does; retries carry the same fingerprint.
+     * @param request The request, returning whether it was applied.
+     * @return The request's result, or the result of the first request with this scope and id.
+     * @throws IllegalArgumentException if the request id is 0, or if it was already used in this
+     *         scope for a request with a different fingerprint.
+     * @throws IllegalStateException if the thread is interrupted while waiting for a running duplicate.
+     */
+    public boolean execute(long scope, long requestId, long fingerprint, BooleanSupplier request) {
+        if (requestId == 0) {
+            throw new IllegalArgumentException("Request id must not be 0");
+        }
+        long mixed = mix(requestId, scope);
+        Segment segment = segments[(int) (mixed >>> (Long.SIZE - SEGMENT_BITS))];
+        int hash = (int) (mixed >>> 32);
+        int state = segment.claim(requestId, scope, fingerprint, hash, clock.millis(), timeToLiveMillis);
+        if (state != PENDING) {
+            replays.increment();
+            return state == APPLIED;
+        }
+        boolean result;
+        try {
+            result = request.getAsBoolean();
+        } catch (RuntimeException | Error e) {
+            segment.complete(requestId, scope, hash, RETRYABLE);
+            throw e;
+        }
+        segment.complete(requestId, scope, hash, result ? APPLIED : REJECTED);
+        return result;
+    }
+
+    /**
+     * Returns the number of request ids currently remembered, including expired ones not yet evicted.
+     * @return The entry count.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of requests answered from a remembered result instead of running.
+     * @return The replay count.
+     */
+    public long getReplayCount() {
+        return replays.sum();
+    }
+
+    /**
+     * Hashes text, such as an account number, into a scope or fingerprint component.
+     * @param text The text (can be null).
+     * @return A 64-bit hash; 0 for null.
+     */
+    static long hash(String text) {
+        if (text == null) {
+            return 0;
+        }
+        long h = 0xCBF29CE484222325L; // FNV-1a over the UTF-16 code units
+        for (int i = 0; i < text.length(); i++) {
+            h = (h ^ text.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(h, text.length());
+    }
+
+    /**
+     * Combines two values into one well-spread 64-bit hash.
+     */
+    static long mix(long a, long b) {
+        long h = (a ^ Long.rotateLeft(b * 0xC2B2AE3D27D4EB4FL, 31)) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * One stripe of the table, guarded by its own monitor.
+     * Every claim of an id appends it to the ring under a new sequence number, which its table
+     * entry records; ring slots whose sequence number no longer matches their entry are stale.
+     */
+    private static final class Segment {
+        private final int capacity; // Maximum entries, not counting running requests
+        private long[] ids = new long[INITIAL_RING * 2]; // Open-addressing table, 0 marks a free slot
+        private long[] scopes = new long[INITIAL_RING * 2];
+        private long[] prints = new long[INITIAL_RING * 2]; // Fingerprint of each entry's request
+        private long[] metas = new long[INITIAL_RING * 2]; // Per slot: ring sequence << STATE_BITS | state
+        private int mask = INITIAL_RING * 2 - 1;
+        private long[] ringIds = new long[INITIAL_RING]; // Ids by sequence number, oldest at head
+        private long[] ringScopes = new long[INITIAL_RING];
+        private long[] ringTimes = new long[INITIAL_RING]; // Time each id was claimed
+        private long head; // Sequence number of the oldest ring slot
+        private long tail; // Sequence number of the next ring slot
+        private int size;
+        private int waiters; // Duplicates waiting for a running request; eviction pauses meanwhile
+
+        private Segment(int capacity) {
+            this.capacity = capacity;
+        }
+
+        /**
+         * Claims a request id for the caller, or waits for and returns the result it already has.
+         * @return PENDING if the caller should run the request, otherwise its remembered result.
+         */
+        private synchronized int claim(long id, long scope, long print, int hash, long now, long timeToLiveMillis) {
+            long cutoffMillis = now - timeToLiveMillis;
+            evict(cutoffMillis);
+            while (true) {
+                int slot = find(id, scope, hash);
+                if (slot < 0) {
+                    insert(id, scope, print, hash, now);
+                    return PENDING;
+                }
+                int state = (int) (metas[slot] & STATE_MASK);
+                boolean expired = ringTimes[ringIndex(metas[slot] >>> STATE_BITS)] <= cutoffMillis;
+                if (state == RETRYABLE || (expired && state != PENDING)) {
+                    prints[slot] = print;
+                    metas[slot] = append(id, scope, now) << STATE_BITS | PENDING; // Moves the id to the tail
+                    return PENDING;
+                }
+                if (prints[slot] != print) {
+                    throw new IllegalArgumentException("Request id " + id + " was already used for a different request");
+                }
+                if (state != PENDING) {
+                    return state;
+                }
+                waiters++;
+                try {
+                    wait(); // A duplicate is running; its completion notifies
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for request " + id, e);
+                } finally {
+                    waiters--;
+                }
+            }
+        }
+
+        /**
+         * Records the outcome of a claimed request and wakes duplicates waiting for it.
+         */
+        private synchronized void complete(long id, long scope, int hash, int state) {
+            int slot = find(id, scope, hash); // Running requests are never evicted
+            metas[slot] = metas[slot] & ~STATE_MASK | state;
+            notifyAll();
+        }
+
+        /**
+         * Returns the slot holding an id, or -1.
+         */
+        private int find(long id, long scope, int hash) {
+            for (int slot = hash & mask; ids[slot] != 0; slot = (slot + 1) & mask) {
+                if (ids[slot] == id && scopes[slot] == scope) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Adds an id that is not in the table, growing the table to stay at most half full.
+         */
+        private void insert(long id, long scope, long print, int hash, long now) {
+            if ((size + 1) * 2 > ids.length) {
+                growTable();
+            }
+            int slot = hash & mask;
+            while (ids[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            ids[slot] = id;
+            scopes[slot] = scope;
+            prints[slot] = print;
+            metas[slot] = append(id, scope, now) << STATE_BITS | PENDING;
+            size++;
+        }
+
+        /**
+         * Appends an id to the ring, growing it when full.
+         * @return The id's new sequence number.
+         */
+        private long append(long id, long scope, long now) {
+            if (tail - head == ringIds.length) {
+                growRing();
+            }
+            int index = ringIndex(tail);
+            ringIds[index] = id;
+            ringScopes[index] = scope;
+            ringTimes[index] = now;
+            return tail++;
+        }
+
+        /**
+         * Removes the oldest entries while they are older than the cutoff or the segment is full,
+         * stopping at the oldest request still running. Nothing is evicted while duplicates wait,
+         * so they find the result of the request they waited for.
+         */
+        private void evict(long cutoffMillis) {
+            while (head < tail && waiters == 0) {
+                int index = ringIndex(head);
+                long id = ringIds[index];
+                long scope = ringScopes[index];
+                int slot = find(id, scope, hashOf(id, scope));
+                if (slot >= 0 && metas[slot] >>> STATE_BITS == head) {
+                    if ((metas[slot] & STATE_MASK) == PENDING) {
+                        return; // Never forget a running request
+                    }
+                    if (size < capacity && ringTimes[index] > cutoffMillis) {
+                        return; // Oldest entry still fresh
+                    }
+                    delete(slot);
+                    size--;
+                } // Otherwise the slot is stale: the id was claimed again later
+                head++;
+            }
+        }
+
+        /**
+         * Empties a slot and shifts the entries after it back, so no probe sequence is broken.
+         */
+        private void delete(int slot) {
+            int hole = slot;
+            for (int next = (slot + 1) & mask; ids[next] != 0; next = (next + 1) & mask) {
+                int home = hashOf(ids[next], scopes[next]) & mask;
+                if (((next - home) & mask) >= ((next - hole) & mask)) { // The entry may move back to the hole
+                    ids[hole] = ids[next];
+                    scopes[hole] = scopes[next];
+                    prints[hole] = prints[next];
+                    metas[hole] = metas[next];
+                    hole = next;
+                }
+            }
+            ids[hole] = 0;
+            scopes[hole] = 0;
+            prints[hole] = 0;
+            metas[hole] = 0;
+        }
+
+        /**
+         * Doubles the table and rehashes its entries.
+         */
+        private void growTable() {
+            long[] oldIds = ids;
+            long[] oldScopes = scopes;
+            long[] oldPrints = prints;
+            long[] oldMetas = metas;
+            int length = oldIds.length * 2;
+            ids = new long[length];
+            scopes = new long[length];
+            prints = new long[length];
+            metas = new long[length];
+            mask = length - 1;
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldIds[i] != 0) {
+                    int slot = hashOf(oldIds[i], oldScopes[i]) & mask;
+                    while (ids[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    ids[slot] = oldIds[i];
+                    scopes[slot] = oldScopes[i];
+                    prints[slot] = oldPrints[i];
+                    metas[slot] = oldMetas[i];
+                }
+            }
+        }
+
+        /**
+         * Doubles the ring, keeping every slot at its sequence number.
+         */
+        private void growRing() {
+            int length = ringIds.length * 2;
+            long[] newIds = new long[length];
+            long[] newScopes = new long[length];
+            long[] newTimes = new long[length];
+            for (long seq = head; seq < tail; seq++) {
+                int from = ringIndex(seq);
+                int to = (int) (seq & (length - 1));
+                newIds[to] = ringIds[from];
+                newScopes[to] = ringScopes[from];
+                newTimes[to] = ringTimes[from];
+            }
+            ringIds = newIds;
+            ringScopes = newScopes;
+            ringTimes = newTimes;
+        }
+
+        private int ringIndex(long seq) {
+            return (int) (seq & (ringIds.length - 1));
+        }
+
+        private static int hashOf(long id, long scope) {
+            return (int) (mix(id, scope) >>> 32);
+        }
+    }
+}
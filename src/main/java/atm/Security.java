@@ -1,5 +1,7 @@
 package atm;
 
+import java.util.concurrent.RejectedExecutionException;
+
 public class Security {
     private final Authenticator authenticator;
 
@@ -19,20 +21,56 @@ public class Security {
      * @return true if the password was successfully changed, false otherwise.
      */
     public boolean changePassword(String account, String oldPassword, String newPassword) {
+        return changePassword(null, account, oldPassword, newPassword);
+    }
+
+    /**
+     * Changes the user's password from within a session.
+     * The old password is checked against the session first, which avoids re-verifying the
+     * password hash; only if that fails is it authenticated in full, counting as an attempt.
+     * The session stays valid under the new password; the account's other sessions are closed.
+     * @param token The session token, or null if there is no session.
+     * @param account The account for which the password needs to be changed.
+     * @param oldPassword The current password.
+     * @param newPassword The new password.
+     * @return true if the password was successfully changed, false otherwise.
+     */
+    public boolean changePassword(String token, String account, String oldPassword, String newPassword) {
+        PasswordChangeEvent event = new PasswordChangeEvent();
+        event.begin();
+        String outcome = change(token, account, oldPassword, newPassword);
+        event.finish(account, outcome);
+        return outcome.equals("changed");
+    }
+
+    /**
+     * Validates and applies a password change.
+     * @return "changed", or why the change was refused: "denied", "busy", "empty" or "unchanged".
+     */
+    private String change(String token, String account, String oldPassword, String newPassword) {
         // Validate the old password
-        if (!authenticator.authenticate(account, oldPassword)) {
-            return false; // Old password incorrect
+        try {
+            if (!authenticator.verifySessionPassword(token, account, oldPassword)
+                    && !authenticator.authenticate(account, oldPassword)) {
+                return "denied"; // Old password incorrect
+            }
+        } catch (RejectedExecutionException e) {
+            return "busy"; // The password could not be verified now
         }
         // New password must not be empty
         if (newPassword == null || newPassword.isEmpty()) {
-            return false;
+            return "empty";
         }
         // New password must not be the same as the old password
         if (newPassword.equals(oldPassword)) {
-            return false;
+            return "unchanged";
         }
         // Change password
-        authenticator.addUser(account, newPassword); // Overwrites the old password
-        return true;
+        try {
+            authenticator.updatePassword(account, newPassword, token); // Overwrites the old password
+        } catch (RejectedExecutionException e) {
+            return "busy"; // The new password could not be hashed now
+        }
+        return "changed";
     }
 }
@@ -0,0 +1,150 @@
+package atm;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The SessionCache class holds the sessions issued by successful logins, keyed by token.
+ * It is bounded: when full, the least recently used session is evicted. A session also
+ * expires once it has been idle for longer than the time-to-live; every successful lookup
+ * extends it. Hits, misses and evictions are counted for monitoring.
+ */
+public final class SessionCache {
+    /** Number of sessions kept when none is configured. */
+    public static final int DEFAULT_CAPACITY = 10_000;
+    /** Idle time after which a session expires when none is configured. */
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(5);
+
+    private final int capacity;
+    private final long ttlNanos;
+    private final LongSupplier nanoClock; // Monotonic time source (System::nanoTime outside tests)
+    private final LinkedHashMap<String, Session> sessions; // Access-ordered: eldest entry is least recently used
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * A verified login: the account, a keyed digest of the password it was verified with,
+     * and the credential generation it belongs to.
+     */
+    static final class Session {
+        final String account;
+        final byte[] passwordDigest;
+        final int generation;
+        private long expiresAtNanos;
+
+        Session(String account, byte[] passwordDigest, int generation) {
+            this.account = account;
+            this.passwordDigest = passwordDigest;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Constructor creates an empty cache with the default capacity and time-to-live.
+     */
+    public SessionCache() {
+        this(DEFAULT_CAPACITY, DEFAULT_TTL, System::nanoTime);
+    }
+
+    /**
+     * Constructor creates an empty cache.
+     * @param capacity The maximum number of sessions kept.
+     * @param ttl The idle time after which a session expires.
+     * @param nanoClock The monotonic time source, in nanoseconds.
+     */
+    SessionCache(int capacity, Duration ttl, LongSupplier nanoClock) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("Time-to-live must be positive: " + ttl);
+        }
+        this.capacity = capacity;
+        this.ttlNanos = ttl.toNanos();
+        this.nanoClock = nanoClock;
+        this.sessions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+                if (size() > SessionCache.this.capacity) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Stores a session, replacing any session with the same token.
+     */
+    synchronized void put(String token, Session session) {
+        session.expiresAtNanos = nanoClock.getAsLong() + ttlNanos;
+        sessions.put(token, session);
+    }
+
+    /**
+     * Looks up a live session and extends its time-to-live.
+     * An expired session is evicted and counted as a miss.
+     * @return The session, or null if there is none or it has expired.
+     */
+    synchronized Session get(String token) {
+        Session session = sessions.get(token);
+        if (session == null) {
+            misses.increment();
+            return null;
+        }
+        long now = nanoClock.getAsLong();
+        if (now - session.expiresAtNanos >= 0) {
+            sessions.remove(token);
+            evictions.increment();
+            misses.increment();
+            return null;
+        }
+        session.expiresAtNanos = now + ttlNanos;
+        hits.increment();
+        return session;
+    }
+
+    /**
+     * Removes a session, e.g. on logout. Removal is not counted as an eviction.
+     */
+    synchronized void remove(String token) {
+        sessions.remove(token);
+    }
+
+    /**
+     * Returns the number of sessions currently held, including expired ones not yet evicted.
+     * @return The number of sessions.
+     */
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Returns the number of lookups that found a live session.
+     * @return The hit count.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that found no live session.
+     * @return The miss count.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of sessions evicted because the cache was full or they had expired.
+     * @return The eviction count.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+}
@@ -0,0 +1,95 @@
+package atm;
+
+import java.util.Arrays;
+
+/**
+ * The TransactionBatch class collects deposits and withdrawals to apply to one account together
+ * with {@link Balance#applyBatch(TransactionBatch)}. Items are kept in primitive columns, in the
+ * order they were added.
+ */
+public final class TransactionBatch {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private byte[] types; // TransactionType code of each item
+    private long[] amounts; // Amount of each item, in cents
+    private int size; // Number of items
+
+    /**
+     * Constructor creates an empty batch.
+     */
+    public TransactionBatch() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructor creates an empty batch sized for the expected number of items.
+     * @param expectedSize The expected number of items.
+     */
+    public TransactionBatch(int expectedSize) {
+        int capacity = Math.max(1, expectedSize);
+        this.types = new byte[capacity];
+        this.amounts = new long[capacity];
+    }
+
+    /**
+     * Adds a deposit.
+     * @param amountCents The deposit amount in cents.
+     * @return This batch.
+     */
+    public TransactionBatch deposit(long amountCents) {
+        return add(TransactionType.DEPOSIT, amountCents);
+    }
+
+    /**
+     * Adds a withdrawal.
+     * @param amountCents The withdrawal amount in cents.
+     * @return This batch.
+     */
+    public TransactionBatch withdraw(long amountCents) {
+        return add(TransactionType.WITHDRAW, amountCents);
+    }
+
+    /**
+     * Adds an item.
+     * @param type The type of transaction, DEPOSIT or WITHDRAW.
+     * @param amountCents The amount in cents.
+     * @return This batch.
+     * @throws IllegalArgumentException for transfer types, which involve a second account.
+     */
+    public TransactionBatch add(TransactionType type, long amountCents) {
+        if (type != TransactionType.DEPOSIT && type != TransactionType.WITHDRAW) {
+            throw new IllegalArgumentException("Batches hold deposits and withdrawals only: " + type);
+        }
+        if (size == types.length) {
+            int capacity = types.length + (types.length >> 1) + 1;
+            types = Arrays.copyOf(types, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+        }
+        types[size] = type.code();
+        amounts[size] = amountCents;
+        size++;
+        return this;
+    }
+
+    /**
+     * Returns the number of items.
+     * @return The batch size.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the type code of an item.
+     */
+    byte type(int index) {
+        return types[index];
+    }
+
+    /**
+     * Returns the amount of an item, in cents.
+     */
+    long amount(int index) {
+        return amounts[index];
+    }
+}
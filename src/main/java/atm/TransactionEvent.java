@@ -0,0 +1,85 @@
+package atm;
+
+import java.util.Locale;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The TransactionEvent class is a JDK Flight Recorder event spanning one deposit, withdrawal,
+ * transfer or batch on a Balance, from taking the account lock to the change being durable.
+ * Rejected requests emit one too, with the reason as their outcome.
+ * Like all events in this package it is only filled in and committed while a recording has it
+ * enabled; otherwise it costs a begin timestamp and an enabled check.
+ */
+@Name("atm.Transaction")
+@Label("Transaction")
+@Category({"ATM", "Ledger"})
+@Description("A deposit, withdrawal, transfer or batch on one account")
+final class TransactionEvent extends jdk.jfr.Event {
+    @Label("Account")
+    String account;
+
+    @Label("Type")
+    String type;
+
+    @Label("Amount Bucket")
+    @Description("Order of magnitude of the amount, e.g. $10-$99")
+    String amountBucket;
+
+    @Label("Outcome")
+    String outcome;
+
+    /**
+     * Fills in and commits the event if a recording wants it.
+     * @param account The account number, or null for a standalone balance.
+     * @param type The type of transaction.
+     * @param amountCents The amount in cents.
+     * @param outcome What happened, e.g. "applied" or "insufficient_funds".
+     */
+    void finish(String account, TransactionType type, long amountCents, String outcome) {
+        if (shouldCommit()) {
+            this.account = account;
+            this.type = type.name().toLowerCase(Locale.ROOT);
+            this.amountBucket = amountBucket(amountCents);
+            this.outcome = outcome;
+            commit();
+        }
+    }
+
+    /**
+     * Fills in and commits the event for a batch if a recording wants it.
+     * @param account The account number, or null for a standalone balance.
+     * @param volumeCents The sum of the applied amounts in cents.
+     * @param outcome "applied", "partially_applied" or "rejected".
+     */
+    void finishBatch(String account, long volumeCents, String outcome) {
+        if (shouldCommit()) {
+            this.account = account;
+            this.type = "batch";
+            this.amountBucket = amountBucket(volumeCents);
+            this.outcome = outcome;
+            commit();
+        }
+    }
+
+    /**
+     * Maps an amount to its order of magnitude in dollars, so traces do not carry exact amounts.
+     * @param amountCents The amount in cents.
+     * @return The bucket label, e.g. "$100-$999".
+     */
+    static String amountBucket(long amountCents) {
+        if (amountCents <= 0) {
+            return "invalid";
+        }
+        if (amountCents < 100) {
+            return "<$1";
+        }
+        long lower = 1;
+        for (long dollars = amountCents / 100; dollars >= 10 && lower < 1_000_000; dollars /= 10) {
+            lower *= 10;
+        }
+        return lower == 1_000_000 ? ">=$1000000" : "$" + lower + "-$" + (lower * 10 - 1);
+    }
+}
@@ -0,0 +1,95 @@
+package atm;
+
+/**
+ * The TransactionType enum lists the kinds of entries recorded in a History.
+ * Each type has a compact byte code used for storage and the label shown to users.
+ * The two sides of a transfer are recorded as TRANSFER_OUT and TRANSFER_IN entries that share a transfer id.
+ */
+public enum TransactionType {
+    DEPOSIT((byte) 1, "deposit", "Deposited: $", 1),
+    WITHDRAW((byte) 2, "withdraw", "Withdrawn: $", -1),
+    TRANSFER_OUT((byte) 3, "transfer_out", "Transferred out: $", -1),
+    TRANSFER_IN((byte) 4, "transfer_in", "Transferred in: $", 1);
+
+    private static final TransactionType[] VALUES = values();
+    private static final TransactionType[] BY_CODE = new TransactionType[VALUES.length + 1];
+
+    static {
+        for (TransactionType type : VALUES) {
+            BY_CODE[type.code] = type;
+        }
+    }
+
+    private final byte code;
+    private final String typeName;
+    private final String label;
+    private final int sign; // +1 if the type credits the account, -1 if it debits it
+
+    TransactionType(byte code, String name, String label, int sign) {
+        this.code = code;
+        this.typeName = name;
+        this.label = label;
+        this.sign = sign;
+    }
+
+    /**
+     * Returns the compact storage code for this type.
+     * @return The byte code.
+     */
+    public byte code() {
+        return code;
+    }
+
+    /**
+     * Returns the name used to select this type, as accepted by {@link #parse(String)}.
+     * @return The type name, e.g. "deposit".
+     */
+    public String typeName() {
+        return typeName;
+    }
+
+    /**
+     * Returns the label that prefixes the amount when an entry is displayed.
+     * @return The display label, e.g. "Deposited: $".
+     */
+    public String label() {
+        return label;
+    }
+
+    /**
+     * Returns the change to the balance caused by an entry of this type.
+     * @param amountCents The entry amount in cents.
+     * @return The amount, negated for debits.
+     */
+    public long signedAmount(long amountCents) {
+        return sign * amountCents;
+    }
+
+    /**
+     * Looks up a type by its storage code.
+     * @param code The byte code.
+     * @return The matching transaction type.
+     * @throws IllegalArgumentException if the code is unknown.
+     */
+    public static TransactionType fromCode(byte code) {
+        if (code <= 0 || code >= BY_CODE.length || BY_CODE[code] == null) {
+            throw new IllegalArgumentException("Invalid transaction code: " + code);
+        }
+        return BY_CODE[code];
+    }
+
+    /**
+     * Parses a transaction type name such as "deposit" or "withdraw", ignoring case.
+     * @param type The type name.
+     * @return The matching transaction type.
+     * @throws IllegalArgumentException if the name is unknown.
+     */
+    public static TransactionType parse(String type) {
+        for (TransactionType candidate : VALUES) {
+            if (candidate.typeName.equalsIgnoreCase(type)) {
+                return candidate;
+            }
+        }
+        throw new IllegalArgumentException("Invalid transaction type: " + type);
+    }
+}
@@ -0,0 +1,296 @@
+package atm;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * The WireProtocol class implements the compact line protocol spoken by automated terminals.
+ * Each request and reply is one line of ASCII text ending in a newline; fields are separated by
+ * single spaces and amounts are written with two decimals, e.g. {@code 12.50}.
+ * <pre>
+ * LOGIN &lt;account&gt; &lt;password&gt;   OK | ERR DENIED | ERR LOCKED | ERR NOACCOUNT | ERR BUSY
+ * DEP &lt;amount&gt; [#&lt;id&gt;]        OK &lt;balance&gt; | ERR AMOUNT | ERR REUSED
+ * WDR &lt;amount&gt; [#&lt;id&gt;]        OK &lt;balance&gt; | ERR AMOUNT | ERR FUNDS | ERR REUSED
+ * BAL                          OK &lt;balance&gt;
+ * HIST                         OK &lt;count&gt;, followed by &lt;count&gt; history lines
+ * PWD &lt;old&gt; &lt;new&gt;              OK | ERR DENIED
+ * EXIT                         BYE, after which the connection is closed
+ * </pre>
+ * Every request except LOGIN and EXIT needs a logged-in session, or it is answered with
+ * {@code ERR AUTH}. Unknown or malformed requests are answered with {@code ERR SYNTAX}.
+ * A deposit or withdrawal may carry a request id, a non-zero decimal number after {@code #}, e.g.
+ * {@code WDR 20.00 #1042}. Ids are scoped to the account and the connection, which is also the
+ * terminal that failed logins are throttled for; terminals sharing a host never see each other's
+ * ids. A retry with the same id on the same connection is not applied again but answered like the
+ * first request, with the current balance; reusing an id for a different request is answered with
+ * {@code ERR REUSED}.
+ * <p>
+ * A connection gets {@link Authenticator#MAX_ATTEMPTS} consecutive failed logins; once they are
+ * used up, a further LOGIN is answered with {@code ERR LOCKED} and the connection is closed.
+ * <p>
+ * Requests that may block never run on the caller's thread, so an event loop can call
+ * {@link #handle} directly: logins and password changes hash a password, deposits and withdrawals
+ * may wait for the journal, a duplicate request id or a full history recorder, and statements
+ * read the history. {@link #handle} reports them as {@link Reply#PENDING} and completes the
+ * session's {@link Session#pendingReply() pending reply} later. Only BAL, EXIT and malformed
+ * requests are answered right away.
+ */
+final class WireProtocol {
+    /**
+     * What became of a request.
+     */
+    enum Reply {
+        /** The reply has been appended. */
+        SENT,
+        /** The reply has been appended and the connection should be closed after it is sent. */
+        CLOSE,
+        /** The reply will complete the session's pending reply; no further request may be handled until then. */
+        PENDING
+    }
+
+    /**
+     * The protocol state of one connection.
+     */
+    static final class Session {
+        private final String terminal;
+        private volatile String account;
+        private volatile String token;
+        private volatile Balance balance;
+        private final LoginAttempts attempts = new LoginAttempts(); // Login attempts left to this connection
+        private CompletableFuture<String> pendingReply;
+
+        /**
+         * Constructor creates a session that is not logged in.
+         * @param terminal The identifier of the connection, used to throttle failed logins and to
+         *                 scope request ids (can be null).
+         */
+        Session(String terminal) {
+            this.terminal = terminal;
+        }
+
+        /**
+         * Returns the reply of the last request answered {@link Reply#PENDING}.
+         * @return A future completed with the reply text, including its trailing newline.
+         */
+        CompletableFuture<String> pendingReply() {
+            return pendingReply;
+        }
+    }
+
+    private final Ledger ledger;
+    private final Authenticator authenticator;
+    private final Security security;
+    private final Executor blockingExecutor; // Runs requests that may block off the caller's thread
+    private final Metrics metrics = Metrics.global(); // Operation counters and latencies
+
+    /**
+     * Constructor creates the protocol for the given ledger and authenticator.
+     * @param ledger The accounts served.
+     * @param authenticator The authenticator for logins.
+     * @param blockingExecutor Runs requests that may block, such as deposits and password changes.
+     */
+    WireProtocol(Ledger ledger, Authenticator authenticator, Executor blockingExecutor) {
+        this.ledger = ledger;
+        this.authenticator = authenticator;
+        this.security = new Security(authenticator);
+        this.blockingExecutor = blockingExecutor;
+    }
+
+    /**
+     * Handles one request line.
+     * @param session The connection's session.
+     * @param line The request, without its line terminator.
+     * @param reply Receives the reply text unless the reply is pending.
+     * @return What became of the request.
+     */
+    Reply handle(Session session, String line, StringBuilder reply) {
+        String[] fields = line.split(" ", -1);
+        String command = fields[0];
+        if (command.equals("EXIT") && fields.length == 1) {
+            if (session.token != null) {
+                authenticator.logout(session.token);
+            }
+            reply.append("BYE\n");
+            return Reply.CLOSE;
+        }
+        if (command.equals("LOGIN") && fields.length == 3) {
+            return login(session, fields[1], fields[2], reply);
+        }
+        if (!command.equals("DEP") && !command.equals("WDR") && !command.equals("BAL")
+                && !command.equals("HIST") && !command.equals("PWD")) {
+            reply.append("ERR SYNTAX\n");
+            return Reply.SENT;
+        }
+        if (session.token == null || !authenticator.validateSession(session.token, session.account)) {
+            reply.append("ERR AUTH\n");
+            return Reply.SENT;
+        }
+        switch (command) {
+            case "DEP", "WDR" -> {
+                if (fields.length != 2 && fields.length != 3) {
+                    reply.append("ERR SYNTAX\n");
+                    return Reply.SENT;
+                }
+                long requestId = 0; // None
+                if (fields.length == 3) {
+                    try {
+                        requestId = fields[2].startsWith("#") ? Long.parseLong(fields[2], 1, fields[2].length(), 10) : 0;
+                    } catch (NumberFormatException e) {
+                        requestId = 0;
+                    }
+                    if (requestId == 0) {
+                        reply.append("ERR SYNTAX\n");
+                        return Reply.SENT;
+                    }
+                }
+                long cents;
+                try {
+                    cents = Money.parse(fields[1]);
+                } catch (NumberFormatException | ArithmeticException e) {
+                    reply.append("ERR AMOUNT\n");
+                    return Reply.SENT;
+                }
+                long id = requestId;
+                return submit(session, reply, () -> transact(session, command.equals("DEP"), cents, id));
+            }
+            case "BAL" -> {
+                long start = Metrics.start();
+                appendBalance(reply, session.balance.getBalanceCents());
+                metrics.record(Metrics.Operation.BALANCE, start, true);
+            }
+            case "HIST" -> {
+                return submit(session, reply, () -> statement(session));
+            }
+            default -> { // PWD
+                if (fields.length != 3) {
+                    reply.append("ERR SYNTAX\n");
+                    return Reply.SENT;
+                }
+                return changePassword(session, fields[1], fields[2]);
+            }
+        }
+        return Reply.SENT;
+    }
+
+    /**
+     * Closes a connection's session, e.g. when its terminal disconnects without EXIT.
+     * @param session The connection's session.
+     */
+    void disconnect(Session session) {
+        String token = session.token;
+        if (token != null) {
+            authenticator.logout(token);
+            session.token = null;
+        }
+    }
+
+    /**
+     * Runs a request on the blocking executor as the session's pending reply.
+     */
+    private Reply submit(Session session, StringBuilder reply, Supplier<String> request) {
+        try {
+            session.pendingReply = CompletableFuture.supplyAsync(request, blockingExecutor);
+        } catch (RejectedExecutionException e) { // Shutting down
+            reply.append("ERR BUSY\n");
+            return Reply.SENT;
+        }
+        return Reply.PENDING;
+    }
+
+    /**
+     * Applies a deposit or withdrawal, at most once per request id if one is given.
+     * @return The reply text.
+     */
+    private String transact(Session session, boolean deposit, long cents, long requestId) {
+        Metrics.Operation operation = deposit ? Metrics.Operation.DEPOSIT : Metrics.Operation.WITHDRAW;
+        long start = Metrics.start();
+        boolean applied;
+        if (requestId != 0) {
+            try {
+                applied = deposit ? ledger.depositCents(session.terminal, session.account, cents, requestId)
+                        : ledger.withdrawCents(session.terminal, session.account, cents, requestId);
+            } catch (IllegalArgumentException e) { // The id was used for a different request
+                metrics.record(operation, start, false);
+                return "ERR REUSED\n";
+            }
+        } else {
+            applied = deposit ? session.balance.depositCents(cents) : session.balance.withdrawCents(cents);
+        }
+        metrics.record(operation, start, applied);
+        if (!applied) {
+            return deposit || cents <= 0 ? "ERR AMOUNT\n" : "ERR FUNDS\n";
+        }
+        StringBuilder reply = new StringBuilder(16);
+        appendBalance(reply, session.balance.getBalanceCents());
+        return reply.toString();
+    }
+
+    /**
+     * Reads the account's statement.
+     * @return The reply text.
+     */
+    private String statement(Session session) {
+        long start = Metrics.start();
+        List<String> entries = session.balance.getStatement(session.balance.getSnapshot());
+        StringBuilder reply = new StringBuilder();
+        reply.append("OK ").append(entries.size()).append('\n');
+        for (String entry : entries) {
+            reply.append(entry).append('\n');
+        }
+        metrics.record(Metrics.Operation.HISTORY, start, true);
+        return reply.toString();
+    }
+
+    private Reply login(Session session, String account, String password, StringBuilder reply) {
+        if (session.token != null) {
+            authenticator.logout(session.token);
+            session.token = null;
+        }
+        if (!session.attempts.hasAttemptsLeft()) {
+            reply.append("ERR LOCKED\n");
+            return Reply.CLOSE;
+        }
+        CompletableFuture<String> login = authenticator.loginAsync(session.terminal, account, password, session.attempts);
+        session.pendingReply = login.handleAsync((token, failure) -> {
+            if (failure != null) {
+                Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                if (cause instanceof RejectedExecutionException) {
+                    return "ERR BUSY\n";
+                }
+                throw new CompletionException(cause);
+            }
+            if (token == null) {
+                return authenticator.hasAttemptsLeft(account) ? "ERR DENIED\n" : "ERR LOCKED\n";
+            }
+            if (!ledger.hasAccount(account)) {
+                authenticator.logout(token);
+                return "ERR NOACCOUNT\n";
+            }
+            session.balance = ledger.getAccount(account);
+            session.account = account;
+            session.token = token;
+            return "OK\n";
+        }, blockingExecutor); // Keeps the verifier threads for hashing and the caller's thread free
+        return Reply.PENDING;
+    }
+
+    private Reply changePassword(Session session, String oldPassword, String newPassword) {
+        String account = session.account;
+        String token = session.token;
+        long start = Metrics.start(); // Includes the wait for the executor
+        session.pendingReply = CompletableFuture.supplyAsync(() -> {
+            boolean changed = security.changePassword(token, account, oldPassword, newPassword);
+            metrics.record(Metrics.Operation.PASSWORD_CHANGE, start, changed);
+            return changed ? "OK\n" : "ERR DENIED\n";
+        }, blockingExecutor);
+        return Reply.PENDING;
+    }
+
+    private static void appendBalance(StringBuilder reply, long cents) {
+        Money.appendTo(reply.append("OK "), cents).append('\n');
+    }
+}
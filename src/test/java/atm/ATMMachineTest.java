@@ -2,6 +2,9 @@ package atm;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Scanner;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -120,4 +123,55 @@ class ATMMachineTest {
         assertTrue(result);
         verify(mockSecurity, times(1)).changePassword("123456", "oldpass", "newpass");
     }
+
+    /**
+     * Tests a ledger-backed session that serves the account that logs in.
+     */
+    @Test
+    void testLedgerSession() {
+        Ledger ledger = new Ledger();
+        ledger.openAccount("7654321", 50.0);
+        try (Authenticator authenticator = new Authenticator()) {
+            authenticator.addUser("7654321", "secret");
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            Scanner input = new Scanner("7654321 secret 2 20 3 4 6");
+            ATM_Machine atm = new ATM_Machine(authenticator, ledger, new Security(authenticator), input,
+                    new PrintStream(output, true, StandardCharsets.UTF_8), "terminal-1");
+
+            atm.start();
+
+            assertTrue(output.toString(StandardCharsets.UTF_8).contains("Current Balance: $30.0"));
+            assertTrue(output.toString(StandardCharsets.UTF_8).contains("Withdrawn: $20.00\nBalance after these transactions: $30.0"));
+            assertEquals(3000L, ledger.getAccount("7654321").getBalanceCents());
+        }
+    }
+
+    /**
+     * Tests that a terminal session records its login and every operation in the global metrics.
+     */
+    @Test
+    void testSessionRecordsMetrics() {
+        Metrics metrics = Metrics.global();
+        long logins = metrics.getStats(Metrics.Operation.LOGIN_SUCCESS).getCount();
+        long withdrawals = metrics.getStats(Metrics.Operation.WITHDRAW).getCount();
+        long rejected = metrics.getStats(Metrics.Operation.WITHDRAW).getFailures();
+        long balances = metrics.getStats(Metrics.Operation.BALANCE).getCount();
+        long histories = metrics.getStats(Metrics.Operation.HISTORY).getCount();
+        Ledger ledger = new Ledger();
+        ledger.openAccount("7654321", 50.0);
+        try (Authenticator authenticator = new Authenticator()) {
+            authenticator.addUser("7654321", "secret");
+            Scanner input = new Scanner("7654321 secret 2 20 2 500 3 4 6");
+            ATM_Machine atm = new ATM_Machine(authenticator, ledger, new Security(authenticator), input,
+                    new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8), "terminal-1");
+
+            atm.start();
+        }
+
+        assertEquals(logins + 1, metrics.getStats(Metrics.Operation.LOGIN_SUCCESS).getCount());
+        assertEquals(withdrawals + 2, metrics.getStats(Metrics.Operation.WITHDRAW).getCount());
+        assertEquals(rejected + 1, metrics.getStats(Metrics.Operation.WITHDRAW).getFailures());
+        assertEquals(balances + 1, metrics.getStats(Metrics.Operation.BALANCE).getCount());
+        assertEquals(histories + 1, metrics.getStats(Metrics.Operation.HISTORY).getCount());
+    }
 }
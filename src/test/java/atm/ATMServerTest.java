@@ -0,0 +1,202 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Integration tests for the ATMServer class, driven over real loopback sockets.
+ */
+class ATMServerTest {
+    private Ledger ledger;
+    private Authenticator authenticator;
+    private ATMServer server;
+
+    /**
+     * Starts a server on a free port with two accounts.
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        ledger = new Ledger();
+        ledger.openAccount("1234567", 100.0);
+        ledger.openAccount("7654321", 0.0);
+        authenticator = new Authenticator();
+        authenticator.addUser("7654321", "secret");
+        server = new ATMServer(ledger, authenticator);
+        server.start(0);
+    }
+
+    /**
+     * Stops the server.
+     */
+    @AfterEach
+    void tearDown() throws IOException {
+        server.close();
+        authenticator.close();
+    }
+
+    /**
+     * Tests a full session: login, deposit, balance and exit.
+     */
+    @Test
+    void testSession() throws IOException {
+        try (Socket socket = connect()) {
+            String transcript = runSession(socket, "1234567", "abcdef", "1 25.5 3 6");
+            assertTrue(transcript.contains("Deposit successful!"));
+            assertTrue(transcript.contains("Current Balance: $125.5"));
+        }
+        assertEquals(12550L, ledger.getAccount("1234567").getBalanceCents());
+    }
+
+    /**
+     * Tests that concurrent sessions serve their own accounts from the shared ledger.
+     */
+    @Test
+    void testConcurrentSessionsShareLedger() throws Exception {
+        int sessionsPerAccount = 20;
+        List<Thread> clients = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int i = 0; i < sessionsPerAccount * 2; i++) {
+            boolean first = i % 2 == 0;
+            Thread client = new Thread(() -> {
+                try (Socket socket = connect()) {
+                    runSession(socket, first ? "1234567" : "7654321", first ? "abcdef" : "secret", "1 1 6");
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            });
+            client.start();
+            clients.add(client);
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+
+        assertEquals(List.of(), errors);
+        assertEquals(10000L + sessionsPerAccount * 100L, ledger.getAccount("1234567").getBalanceCents());
+        assertEquals(sessionsPerAccount * 100L, ledger.getAccount("7654321").getBalanceCents());
+    }
+
+    /**
+     * Tests that thousands of idle sessions do not need a platform thread each.
+     */
+    @Test
+    void testManyIdleSessions() throws Exception {
+        int sessions = 5_000;
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            for (int i = 0; i < sessions; i++) {
+                Socket socket = connect();
+                sockets.add(socket);
+            }
+            for (Socket socket : sockets) {
+                readUntil(socket.getInputStream(), "Enter account number: "); // Every session is up and parked
+            }
+
+            assertEquals(sessions, server.getActiveSessions());
+            assertTrue(ManagementFactory.getThreadMXBean().getThreadCount() < 200,
+                    "Idle sessions should run on virtual threads.");
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    /**
+     * Tests that closing the server disconnects its sessions.
+     */
+    @Test
+    void testCloseDisconnectsSessions() throws Exception {
+        try (Socket socket = connect()) {
+            readUntil(socket.getInputStream(), "Enter account number: ");
+            server.close();
+            assertEquals(-1, socket.getInputStream().read());
+        }
+        while (server.getActiveSessions() > 0) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Tests that every connection is its own terminal, so failures on loopback connections do not
+     * throttle logins on the others.
+     */
+    @Test
+    void testTerminalsAreThrottledPerConnection() throws Exception {
+        int connections = Authenticator.MAX_TERMINAL_FAILURES / Authenticator.MAX_ATTEMPTS + 1;
+        for (int i = 0; i < connections; i++) {
+            try (Socket socket = connect()) {
+                OutputStream out = socket.getOutputStream();
+                out.write("9999999\nwrong\n9999999\nwrong\n9999999\nwrong\n".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                readUntil(socket.getInputStream(), "Too many failed attempts.");
+            }
+        }
+
+        try (Socket socket = connect()) {
+            String transcript = runSession(socket, "7654321", "secret", "6");
+            assertTrue(transcript.contains("Authentication successful!"));
+        }
+    }
+
+    /**
+     * Tests that a session whose terminal disconnects is logged out.
+     */
+    @Test
+    void testDisconnectLogsOut() throws Exception {
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            out.write("7654321\nsecret\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            readUntil(socket.getInputStream(), "Enter your option: ");
+            assertEquals(1, authenticator.getSessionCache().size());
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (authenticator.getSessionCache().size() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, authenticator.getSessionCache().size());
+    }
+
+    private Socket connect() throws IOException {
+        return new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+    }
+
+    /**
+     * Logs in, sends the given menu input, and returns everything the server printed until the goodbye message.
+     */
+    private static String runSession(Socket socket, String account, String password, String input) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write((account + "\n" + password + "\n" + input + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        return readUntil(socket.getInputStream(), "Thank you for using ATM Machine.");
+    }
+
+    private static String readUntil(InputStream in, String marker) throws IOException {
+        StringBuilder text = new StringBuilder();
+        while (text.indexOf(marker) < 0) {
+            int c = in.read();
+            if (c < 0) {
+                fail("Connection closed before \"" + marker + "\"; got: " + text);
+            }
+            text.append((char) c);
+        }
+        return text.toString();
+    }
+}
@@ -11,10 +11,25 @@ import org.junit.jupiter.api.TestInstance.Lifecycle;
 @Suite
 @SelectClasses({
         ATMMachineTest.class,
+        ATMServerTest.class,
         AuthenticatorTest.class,
         BalanceTest.class,
+        FlightRecorderEventsTest.class,
+        HistoryRecorderTest.class,
         HistoryTest.class,
-        SecurityTest.class
+        JournalTest.class,
+        LatencyHistogramTest.class,
+        LedgerTest.class,
+        LoginRateLimiterTest.class,
+        MappedHistoryStoreTest.class,
+        MetricsTest.class,
+        MoneyTest.class,
+        NioATMServerTest.class,
+        PasswordHasherTest.class,
+        RequestDeduplicatorTest.class,
+        SecurityTest.class,
+        SessionCacheTest.class,
+        WireProtocolTest.class
 })
 @TestInstance(Lifecycle.PER_CLASS)
 public class AllTests {
@@ -1,9 +1,19 @@
 package atm;
 
 import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * JUnit test cases for the Authenticator class.
  * Tests authentication logic, user addition, and login attempt limits.
@@ -19,6 +29,14 @@ class AuthenticatorTest {
         authenticator = new Authenticator();
     }
 
+    /**
+     * Shuts down the verifier pool after each test.
+     */
+    @AfterEach
+    void tearDown() {
+        authenticator.close();
+    }
+
     /**
      * Tests successful authentication with default credentials.
      */
@@ -57,4 +75,250 @@ class AuthenticatorTest {
         assertFalse(authenticator.hasAttemptsLeft());
         assertEquals(0, authenticator.getAttemptsLeft());
     }
+
+    /**
+     * Tests that failed attempts on one account do not lock out another.
+     */
+    @Test
+    void testLockoutIsPerAccount() {
+        authenticator.addUser("user2", "pass2");
+        for (int i = 0; i < Authenticator.MAX_ATTEMPTS; i++) {
+            authenticator.authenticate("1234567", "wrong");
+        }
+
+        assertFalse(authenticator.hasAttemptsLeft("1234567"));
+        assertFalse(authenticator.authenticate("1234567", "abcdef"), "Locked account should be rejected.");
+        assertTrue(authenticator.hasAttemptsLeft("user2"));
+        assertTrue(authenticator.authenticate("user2", "pass2"), "Other accounts should not be locked.");
+    }
+
+    /**
+     * Tests that every session keeps its own attempt counter, whichever thread its logins run on.
+     */
+    @Test
+    void testSessionAttemptsArePerSession() throws InterruptedException {
+        LoginAttempts first = new LoginAttempts();
+        LoginAttempts second = new LoginAttempts();
+        authenticator.authenticate("terminal-1", "1234567", "wrong", first);
+        Thread other = new Thread(() -> authenticator.authenticate("terminal-1", "1234567", "wrong", first));
+        other.start();
+        other.join();
+
+        assertEquals(Authenticator.MAX_ATTEMPTS - 2, first.getAttemptsLeft());
+        assertEquals(Authenticator.MAX_ATTEMPTS, second.getAttemptsLeft());
+        assertEquals(Authenticator.MAX_ATTEMPTS, authenticator.getAttemptsLeft(), "Callers with a session leave the shared counter alone.");
+        assertNotNull(authenticator.loginAsync("terminal-1", "1234567", "abcdef", first).join());
+        assertEquals(Authenticator.MAX_ATTEMPTS, first.getAttemptsLeft(), "A successful login restores the session's attempts.");
+    }
+
+    /**
+     * Tests concurrent logins and user additions from many threads.
+     */
+    @Test
+    void testConcurrentLogins() throws InterruptedException {
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        int loginsPerThread = 500;
+        AtomicInteger failures = new AtomicInteger();
+        List<Thread> workers = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            String account = "user-" + t;
+            Thread worker = new Thread(() -> {
+                authenticator.addUser(account, "secret");
+                for (int i = 0; i < loginsPerThread; i++) {
+                    if (!authenticator.authenticate(account, "secret")) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(0, failures.get());
+        assertTrue(authenticator.authenticate("1234567", "abcdef"));
+        for (int t = 0; t < threads; t++) {
+            assertFalse(authenticator.authenticate("user-" + t, "abcdef"), "Every user kept its own password.");
+        }
+    }
+
+    /**
+     * Tests that asynchronous authentication completes with the result and updates the account counter.
+     */
+    @Test
+    void testAuthenticateAsync() {
+        assertTrue(authenticator.authenticateAsync("1234567", "abcdef").join());
+        assertFalse(authenticator.authenticateAsync("1234567", "wrong").join());
+        assertFalse(authenticator.authenticateAsync("unknown", "abcdef").join());
+        assertEquals(Authenticator.MAX_ATTEMPTS - 1, authenticator.getAttemptsLeft("1234567"));
+        assertEquals(Authenticator.MAX_ATTEMPTS, authenticator.getAttemptsLeft("unknown"),
+                "Unknown accounts take no room in the account limiter.");
+        assertEquals(Authenticator.MAX_ATTEMPTS, authenticator.getAttemptsLeft(), "Async logins leave the session counter alone.");
+    }
+
+    /**
+     * Tests that a saturated verifier pool rejects asynchronous and synchronous logins and
+     * password updates alike, without hashing on the calling thread or counting the rejected attempts.
+     */
+    @Test
+    void testSaturatedVerifierPool() {
+        try (Authenticator slow = new Authenticator(200_000, 1, 1)) {
+            CompletableFuture<Boolean> running = slow.authenticateAsync("1234567", "abcdef");
+            CompletableFuture<Boolean> queued = slow.authenticateAsync("terminal-1", "1234567", "wrong");
+            CompletableFuture<Boolean> rejected = slow.authenticateAsync("1234567", "abcdef");
+
+            CompletionException e = assertThrows(CompletionException.class, rejected::join);
+            assertInstanceOf(RejectedExecutionException.class, e.getCause());
+            assertThrows(RejectedExecutionException.class, () -> slow.authenticate("terminal-1", "7654321", "abcdef"),
+                    "Synchronous logins are rejected too, not hashed on the caller.");
+            assertThrows(RejectedExecutionException.class, () -> slow.addUser("1111111", "secret"),
+                    "New passwords are hashed on the pool as well.");
+            assertFalse(new Security(slow).changePassword("1234567", "abcdef", "other"));
+            assertEquals(Authenticator.MAX_ATTEMPTS, slow.getAttemptsLeft(), "A rejected login is not an attempt.");
+            assertTrue(running.join());
+            assertFalse(queued.join());
+            assertEquals(Authenticator.MAX_ATTEMPTS - 1, slow.getAttemptsLeft("1234567"),
+                    "Only the verified attempts count.");
+            assertTrue(slow.authenticate("1234567", "abcdef"), "The rejected changes left the password alone.");
+        }
+    }
+
+    /**
+     * Tests that a login opens a session that validates without re-verifying the password, and that logout closes it.
+     */
+    @Test
+    void testLoginSession() {
+        assertNull(authenticator.login("1234567", "wrong"));
+        String token = authenticator.login("1234567", "abcdef");
+        assertNotNull(token);
+
+        assertTrue(authenticator.validateSession(token, "1234567"));
+        assertFalse(authenticator.validateSession(token, "7654321"), "A session only belongs to its own account.");
+        assertTrue(authenticator.verifySessionPassword(token, "1234567", "abcdef"));
+        assertFalse(authenticator.verifySessionPassword(token, "1234567", "wrong"));
+        assertTrue(authenticator.getSessionCache().getHits() >= 3);
+
+        authenticator.logout(token);
+        assertFalse(authenticator.validateSession(token, "1234567"));
+    }
+
+    /**
+     * Tests that changing a password closes the account's other sessions and keeps the changing one.
+     */
+    @Test
+    void testPasswordChangeInvalidatesOtherSessions() {
+        String current = authenticator.login("1234567", "abcdef");
+        String other = authenticator.login("1234567", "abcdef");
+
+        authenticator.updatePassword("1234567", "newpass", current);
+
+        assertTrue(authenticator.validateSession(current, "1234567"));
+        assertTrue(authenticator.verifySessionPassword(current, "1234567", "newpass"));
+        assertFalse(authenticator.verifySessionPassword(current, "1234567", "abcdef"));
+        assertFalse(authenticator.validateSession(other, "1234567"));
+    }
+
+    /**
+     * Tests that a throttled account regains attempts over time, and all of them on success.
+     */
+    @Test
+    void testLockoutRecoversOverTime() {
+        AtomicLong now = new AtomicLong();
+        try (Authenticator timed = new Authenticator(1000, 1, 16, new SessionCache(), now::get)) {
+            for (int i = 0; i < Authenticator.MAX_ATTEMPTS; i++) {
+                timed.authenticate("1234567", "wrong");
+            }
+            assertFalse(timed.authenticate("1234567", "abcdef"));
+
+            now.set(Authenticator.ACCOUNT_RECOVERY.toNanos());
+            assertEquals(1, timed.getAttemptsLeft("1234567"));
+            assertTrue(timed.authenticate("1234567", "abcdef"));
+            assertEquals(Authenticator.MAX_ATTEMPTS, timed.getAttemptsLeft("1234567"));
+        }
+    }
+
+    /**
+     * Tests that failures are throttled per terminal across accounts, and that the terminal recovers.
+     */
+    @Test
+    void testTerminalThrottling() {
+        AtomicLong now = new AtomicLong();
+        try (Authenticator timed = new Authenticator(1000, 1, 16, new SessionCache(), now::get)) {
+            for (int i = 0; i < Authenticator.MAX_TERMINAL_FAILURES; i++) {
+                assertFalse(timed.authenticate("terminal-1", "account-" + i, "guess"));
+            }
+
+            assertFalse(timed.authenticate("terminal-1", "1234567", "abcdef"), "A throttled terminal should be rejected.");
+            assertTrue(timed.authenticate("terminal-2", "1234567", "abcdef"), "Other terminals should not be throttled.");
+            now.set(Authenticator.TERMINAL_RECOVERY.toNanos());
+            assertTrue(timed.authenticate("terminal-1", "1234567", "abcdef"));
+        }
+    }
+
+    /**
+     * Tests that concurrent attempts take their failed attempt before hashing: once the limit of
+     * wrong attempts is in flight, another attempt waits for them and is then throttled, even with
+     * the right password.
+     */
+    @Test
+    void testConcurrentAttemptsRespectLimit() {
+        try (Authenticator slow = new Authenticator(200_000, 4, 16)) {
+            List<CompletableFuture<Boolean>> wrong = new ArrayList<>();
+            for (int i = 0; i < Authenticator.MAX_ATTEMPTS; i++) {
+                wrong.add(slow.authenticateAsync("1234567", "wrong"));
+            }
+            CompletableFuture<Boolean> right = slow.authenticateAsync("1234567", "abcdef");
+
+            wrong.forEach(attempt -> assertFalse(attempt.join()));
+            assertFalse(right.join(), "The attempt beyond the limit is throttled.");
+            assertEquals(0, slow.getAttemptsLeft("1234567"));
+        }
+    }
+
+    /**
+     * Tests that concurrent correct logins beyond the limit wait for each other instead of being throttled.
+     */
+    @Test
+    void testConcurrentCorrectLoginsWait() throws InterruptedException {
+        try (Authenticator slow = new Authenticator(20_000, 2, 16)) {
+            AtomicInteger successes = new AtomicInteger();
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < 4 * Authenticator.MAX_ATTEMPTS; t++) {
+                Thread worker = new Thread(() -> {
+                    if (slow.authenticate("terminal-1", "1234567", "abcdef")) {
+                        successes.incrementAndGet();
+                    }
+                });
+                worker.start();
+                workers.add(worker);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+
+            assertEquals(4 * Authenticator.MAX_ATTEMPTS, successes.get());
+            assertEquals(Authenticator.MAX_ATTEMPTS, slow.getAttemptsLeft("1234567"));
+        }
+    }
+
+    /**
+     * Tests that throttled logins are rejected without verifying a password hash, so floods stay cheap.
+     */
+    @Test
+    void testThrottledLoginsSkipHashing() {
+        try (Authenticator slow = new Authenticator(200_000, 1, 16)) {
+            for (int i = 0; i < Authenticator.MAX_ATTEMPTS; i++) {
+                slow.authenticateAsync("1234567", "wrong").join();
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < 10_000; i++) {
+                assertFalse(slow.authenticate("1234567", "guess"));
+            }
+            assertTrue(System.nanoTime() - start < Duration.ofSeconds(2).toNanos(),
+                    "Throttled logins should not hash passwords.");
+        }
+    }
 }
@@ -5,6 +5,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.util.List;
+
 /**
  * Unit tests for the Balance class.
  */
@@ -28,7 +30,7 @@ class BalanceTest {
     void testDepositSuccess() {
         assertTrue(balance.deposit(500.0), "Deposit should succeed.");
         assertEquals(1500.0, balance.getBalance(), 0.01, "Balance should increase after deposit.");
-        Mockito.verify(mockHistory).recordTransaction("deposit", 500.0); // 🔹 Ensures history is logged
+        Mockito.verify(mockHistory).recordTransactionCents("deposit", 50000L); // 🔹 Ensures history is logged
     }
 
     /**
@@ -49,7 +51,7 @@ class BalanceTest {
     void testWithdrawSuccess() {
         assertTrue(balance.withdraw(400.0), "Withdrawal should succeed.");
         assertEquals(600.0, balance.getBalance(), 0.01, "Balance should decrease after withdrawal.");
-        Mockito.verify(mockHistory).recordTransaction("withdraw", 400.0); // 🔹 Ensures history is logged
+        Mockito.verify(mockHistory).recordTransactionCents("withdraw", 40000L); // 🔹 Ensures history is logged
     }
 
     /**
@@ -83,4 +85,197 @@ class BalanceTest {
         assertTrue(balanceWithoutHistory.withdraw(50.0), "Withdrawal should still work without history.");
         assertEquals(550.0, balanceWithoutHistory.getBalance(), 0.01, "Balance should update correctly.");
     }
+
+    /**
+     * Tests deposits and withdrawals expressed in cents.
+     */
+    @Test
+    void testCentsOperations() {
+        assertTrue(balance.depositCents(1L), "One-cent deposit should succeed.");
+        assertTrue(balance.withdrawCents(100_001L), "Withdrawing the full balance should succeed.");
+        assertEquals(0L, balance.getBalanceCents(), "Cents arithmetic should not drift.");
+        assertFalse(balance.withdrawCents(1L), "Should fail when balance is empty.");
+    }
+
+    /**
+     * Tests that deposits, batches and transfers that would overflow a balance are rejected
+     * before anything changes.
+     */
+    @Test
+    void testOverflowIsRejected() {
+        Ledger ledger = new Ledger();
+        ledger.openAccount("1111111", 0.0);
+        ledger.openAccount("2222222", 0.0);
+        Balance full = ledger.getAccount("1111111");
+        assertTrue(full.depositCents(Money.parse("92233720368547758.00")));
+
+        assertFalse(full.deposit(1e17), "Does not fit in cents.");
+        assertFalse(full.depositCents(Money.parse("0.08")));
+        assertEquals(Long.MAX_VALUE - 7, full.getBalanceCents());
+        BatchResult result = full.applyBatch(new TransactionBatch().deposit(8).withdraw(100).deposit(8).deposit(100));
+        assertEquals(2, result.getAppliedCount());
+        assertEquals(BatchResult.Rejection.BALANCE_LIMIT, result.getRejection(0));
+        assertEquals(3, result.getRejectedIndex(1), "Checked against the running balance.");
+        assertEquals(Long.MAX_VALUE - 99, full.getBalanceCents());
+        assertTrue(ledger.getAccount("2222222").depositCents(100));
+        assertFalse(ledger.transferCents("2222222", "1111111", 100), "The target would overflow.");
+        assertEquals(100, ledger.getAccount("2222222").getBalanceCents());
+        assertTrue(full.withdrawCents(1), "Withdrawals still work.");
+        assertEquals(4, full.getHistory().size());
+    }
+
+    /**
+     * Tests that a batch is validated against the running balance and reports its rejected items.
+     */
+    @Test
+    void testApplyBatch() {
+        History history = new History();
+        Balance batched = new Balance(10.0, history);
+        TransactionBatch batch = new TransactionBatch()
+                .withdraw(1500)  // Rejected: only $10 before it
+                .deposit(1000)
+                .withdraw(1500)  // Accepted thanks to the deposit before it
+                .deposit(0)      // Rejected: invalid amount
+                .withdraw(600);  // Rejected: only $5 left
+
+        BatchResult result = batched.applyBatch(batch);
+
+        assertEquals(2, result.getAppliedCount());
+        assertEquals(3, result.getRejectedCount());
+        assertEquals(0, result.getRejectedIndex(0));
+        assertEquals(BatchResult.Rejection.INSUFFICIENT_FUNDS, result.getRejection(0));
+        assertEquals(3, result.getRejectedIndex(1));
+        assertEquals(BatchResult.Rejection.INVALID_AMOUNT, result.getRejection(1));
+        assertEquals(4, result.getRejectedIndex(2));
+        assertEquals(500L, result.getBalanceCents());
+        assertEquals(500L, batched.getBalanceCents());
+        assertEquals(2, history.size());
+        assertEquals(1, history.getFilteredHistory("deposit").size());
+        assertTrue(history.getHistory().get(1).endsWith("Withdrawn: $15.00"));
+    }
+
+    /**
+     * Tests that batches reject transfer items, which need a second account.
+     */
+    @Test
+    void testBatchRejectsTransferTypes() {
+        TransactionBatch batch = new TransactionBatch();
+        assertThrows(IllegalArgumentException.class, () -> batch.add(TransactionType.TRANSFER_OUT, 100));
+        assertEquals(0, batch.size());
+    }
+
+    /**
+     * Tests that a large batch matches the equivalent single calls, entry for entry.
+     */
+    @Test
+    void testBatchMatchesSingleCalls() {
+        int items = 200_000;
+        TransactionBatch batch = new TransactionBatch(items);
+        for (int i = 0; i < items; i++) {
+            batch.add(i % 3 == 2 ? TransactionType.WITHDRAW : TransactionType.DEPOSIT, 100 + i % 50);
+        }
+        Balance single = new Balance(0.0, new History());
+        Balance batched = new Balance(0.0, new History());
+
+        for (int i = 0; i < items; i++) {
+            if (batch.type(i) == TransactionType.DEPOSIT.code()) {
+                single.depositCents(batch.amount(i));
+            } else {
+                single.withdrawCents(batch.amount(i));
+            }
+        }
+        BatchResult result = batched.applyBatch(batch);
+
+        assertEquals(single.getBalanceCents(), batched.getBalanceCents());
+        assertEquals(single.getHistory().size(), batched.getHistory().size());
+        for (String type : new String[] {"deposit", "withdraw"}) {
+            assertEquals(strip(single.getHistory().getFilteredHistory(type)),
+                    strip(batched.getHistory().getFilteredHistory(type)));
+        }
+        assertEquals(items - result.getRejectedCount(), result.getAppliedCount());
+    }
+
+    /**
+     * Tests that every change publishes a snapshot with a higher version and the matching history length.
+     */
+    @Test
+    void testSnapshots() {
+        Balance account = new Balance(10.0, new History());
+        BalanceSnapshot opened = account.getSnapshot();
+        assertEquals(1000L, opened.getBalanceCents());
+        assertEquals(0, opened.getHistoryLength());
+        assertEquals(0, opened.getVersion());
+
+        account.depositCents(500);
+        assertFalse(account.withdrawCents(10_000), "A rejected withdrawal is not a change.");
+        TransactionBatch batch = new TransactionBatch();
+        batch.add(TransactionType.WITHDRAW, 200);
+        batch.add(TransactionType.DEPOSIT, 50);
+        account.applyBatch(batch);
+
+        BalanceSnapshot latest = account.getSnapshot();
+        assertEquals(1350L, latest.getBalanceCents());
+        assertEquals(3, latest.getHistoryLength());
+        assertEquals(2, latest.getVersion());
+        assertEquals(13.5, account.getBalance(), 0.001);
+    }
+
+    /**
+     * Tests that a statement lists exactly the entries its snapshot's balance accounts for.
+     */
+    @Test
+    void testStatementExcludesLaterChanges() {
+        Balance account = new Balance(0.0, new History());
+        account.depositCents(100);
+        account.depositCents(200);
+        BalanceSnapshot snapshot = account.getSnapshot();
+        account.withdrawCents(50);
+
+        List<String> statement = account.getStatement(snapshot);
+        assertEquals(2, statement.size());
+        assertTrue(statement.get(1).endsWith("Deposited: $2.00"));
+        assertEquals(300L, snapshot.getBalanceCents());
+        assertEquals(3, account.getStatement(account.getSnapshot()).size());
+        assertEquals(List.of(), new Balance(5.0, null).getStatement(new Balance(5.0, null).getSnapshot()));
+    }
+
+    /**
+     * Tests that snapshots taken while writers run always agree with their statements,
+     * with history recorded synchronously and in the background.
+     */
+    @Test
+    void testSnapshotsAgreeWithStatementsUnderWrites() throws InterruptedException {
+        try (HistoryRecorder recorder = new HistoryRecorder()) {
+            for (HistoryRecorder mode : new HistoryRecorder[] {null, recorder}) {
+                Balance account = new Balance(0.0, new History(), mode);
+                Thread writer = new Thread(() -> {
+                    for (int i = 0; i < 5_000; i++) {
+                        account.depositCents(300);
+                        account.withdrawCents(100);
+                    }
+                });
+                writer.start();
+                long lastVersion = -1;
+                for (int i = 0; i < 100; i++) {
+                    BalanceSnapshot snapshot = account.getSnapshot();
+                    assertTrue(snapshot.getVersion() >= lastVersion, "Versions never go back.");
+                    lastVersion = snapshot.getVersion();
+                    long replayed = 0;
+                    for (String entry : account.getStatement(snapshot)) {
+                        replayed += entry.contains("Deposited") ? 300 : -100;
+                    }
+                    assertEquals(snapshot.getBalanceCents(), replayed);
+                    assertEquals(snapshot.getHistoryLength(), snapshot.getVersion());
+                }
+                writer.join();
+            }
+        }
+    }
+
+    /**
+     * Removes the timestamp prefix from history entries.
+     */
+    private static List<String> strip(List<String> entries) {
+        return entries.stream().map(entry -> entry.substring(entry.indexOf("] ") + 2)).toList();
+    }
 }
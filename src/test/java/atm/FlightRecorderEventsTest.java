@@ -0,0 +1,142 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Tests for the JDK Flight Recorder events emitted by balances, histories, the authenticator
+ * and password changes.
+ */
+class FlightRecorderEventsTest {
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Tests that a recording captures transaction and history events with their fields.
+     */
+    @Test
+    void testTransactionEvents() throws IOException {
+        List<RecordedEvent> events = record(() -> {
+            Ledger ledger = new Ledger();
+            ledger.openAccount("1111111", 100.0);
+            ledger.openAccount("2222222", 0.0);
+            ledger.deposit("1111111", 25.0);
+            ledger.withdraw("1111111", 5_000.0);
+            ledger.transfer("1111111", "2222222", 1.5);
+        }, "atm.Transaction", "atm.HistoryRecord");
+
+        List<RecordedEvent> transactions = ofType(events, "atm.Transaction");
+        assertEquals(3, transactions.size());
+        assertEquals("1111111", transactions.get(0).getString("account"));
+        assertEquals("deposit", transactions.get(0).getString("type"));
+        assertEquals("$10-$99", transactions.get(0).getString("amountBucket"));
+        assertEquals("applied", transactions.get(0).getString("outcome"));
+        assertEquals("insufficient_funds", transactions.get(1).getString("outcome"));
+        assertEquals("$1000-$9999", transactions.get(1).getString("amountBucket"));
+        assertEquals("transfer_out", transactions.get(2).getString("type"));
+
+        List<RecordedEvent> records = ofType(events, "atm.HistoryRecord");
+        assertEquals(3, records.size(), "A deposit and both sides of the transfer.");
+        assertEquals("transfer_in", records.get(2).getString("type"));
+        assertEquals(1, records.get(2).getInt("size"));
+    }
+
+    /**
+     * Tests that rejected amounts and batches emit one transaction event each.
+     */
+    @Test
+    void testRejectedAndBatchEvents() throws IOException {
+        List<RecordedEvent> events = record(() -> {
+            Ledger ledger = new Ledger();
+            ledger.openAccount("1111111", 100.0);
+            ledger.openAccount("2222222", 0.0);
+            ledger.deposit("1111111", -5.0);
+            ledger.getAccount("1111111").withdraw(Double.NaN);
+            ledger.transfer("1111111", "1111111", 1.0);
+            TransactionBatch batch = new TransactionBatch();
+            batch.add(TransactionType.DEPOSIT, 2_500);
+            batch.add(TransactionType.WITHDRAW, 1_000_000);
+            ledger.applyBatch("1111111", batch);
+        }, "atm.Transaction");
+
+        assertEquals(4, events.size());
+        assertEquals("invalid_amount", events.get(0).getString("outcome"));
+        assertEquals("deposit", events.get(0).getString("type"));
+        assertEquals("invalid_amount", events.get(1).getString("outcome"));
+        assertEquals("invalid_amount", events.get(2).getString("outcome"));
+        assertEquals("transfer_out", events.get(2).getString("type"));
+        assertEquals("batch", events.get(3).getString("type"));
+        assertEquals("partially_applied", events.get(3).getString("outcome"));
+        assertEquals("$10-$99", events.get(3).getString("amountBucket"));
+    }
+
+    /**
+     * Tests that authentication and password change events carry the account and outcome.
+     */
+    @Test
+    void testSecurityEvents() throws IOException {
+        List<RecordedEvent> events = record(() -> {
+            try (Authenticator authenticator = new Authenticator()) {
+                authenticator.addUser("7654321", "secret");
+                authenticator.authenticate("terminal-1", "7654321", "wrong");
+                authenticator.authenticateAsync("terminal-1", "7654321", "secret").join();
+                new Security(authenticator).changePassword("7654321", "secret", "secret");
+            }
+        }, "atm.Authentication", "atm.PasswordChange");
+
+        List<RecordedEvent> authentications = ofType(events, "atm.Authentication");
+        assertEquals(3, authentications.size(), "Two logins and the password change's check.");
+        assertEquals("failure", authentications.get(0).getString("outcome"));
+        assertEquals("terminal-1", authentications.get(0).getString("terminal"));
+        assertEquals("success", authentications.get(1).getString("outcome"));
+        List<RecordedEvent> changes = ofType(events, "atm.PasswordChange");
+        assertEquals(1, changes.size());
+        assertEquals("7654321", changes.get(0).getString("account"));
+        assertEquals("unchanged", changes.get(0).getString("outcome"));
+    }
+
+    /**
+     * Tests the amount buckets at their edges.
+     */
+    @Test
+    void testAmountBuckets() {
+        assertEquals("invalid", TransactionEvent.amountBucket(0));
+        assertEquals("<$1", TransactionEvent.amountBucket(99));
+        assertEquals("$1-$9", TransactionEvent.amountBucket(100));
+        assertEquals("$1-$9", TransactionEvent.amountBucket(999));
+        assertEquals("$10-$99", TransactionEvent.amountBucket(1_000));
+        assertEquals(">=$1000000", TransactionEvent.amountBucket(Long.MAX_VALUE));
+    }
+
+    /**
+     * Runs an action under a recording of the given events and returns them in commit order.
+     */
+    private List<RecordedEvent> record(Runnable action, String... eventNames) throws IOException {
+        Path file = tempDir.resolve("events.jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : eventNames) {
+                recording.enable(name);
+            }
+            recording.start();
+            action.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        return RecordingFile.readAllEvents(file).stream()
+                .sorted((a, b) -> a.getEndTime().compareTo(b.getEndTime()))
+                .toList();
+    }
+
+    private static List<RecordedEvent> ofType(List<RecordedEvent> events, String name) {
+        return events.stream().filter(e -> e.getEventType().getName().equals(name)).toList();
+    }
+}
@@ -0,0 +1,172 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit and concurrency tests for the HistoryRecorder class.
+ */
+class HistoryRecorderTest {
+    private HistoryRecorder recorder;
+
+    /**
+     * Stops the recorder's consumer thread after each test.
+     */
+    @AfterEach
+    void tearDown() {
+        if (recorder != null) {
+            recorder.close();
+        }
+    }
+
+    /**
+     * Tests that published events reach their histories in order once flushed.
+     */
+    @Test
+    void testFlushAppliesEventsInOrder() {
+        recorder = new HistoryRecorder();
+        History first = new History();
+        History second = new History();
+        for (int i = 1; i <= 1_000; i++) {
+            recorder.publish(i % 2 == 0 ? first : second, TransactionType.DEPOSIT, i, 1_000L * i, 0);
+        }
+        recorder.flush();
+
+        assertEquals(500, first.size());
+        assertEquals(500, second.size());
+        assertTrue(second.getHistory().get(0).endsWith("Deposited: $0.01"));
+        assertTrue(first.getHistory().get(499).endsWith("Deposited: $10.00"));
+        assertEquals(0, recorder.getPendingCount());
+    }
+
+    /**
+     * Tests that a failed append is reported to flushers and balances waiting for their history,
+     * while later events are still drained.
+     */
+    @Test
+    void testFailedAppendIsReported() {
+        recorder = new HistoryRecorder();
+        History broken = new History() {
+            @Override
+            synchronized void recordTransactionAt(TransactionType type, long amountCents, long timestampMillis, long link) {
+                throw new IllegalStateException("Disk full");
+            }
+        };
+        History healthy = new History();
+        Balance balance = new Balance(0.0, broken, recorder);
+        balance.depositCents(100);
+        recorder.publish(healthy, TransactionType.DEPOSIT, 1, 0L, 0);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, balance::awaitHistory);
+        assertEquals("Disk full", e.getCause().getMessage());
+        assertThrows(IllegalStateException.class, recorder::flush);
+        assertEquals(1, healthy.size(), "Events after the failure are still recorded.");
+        assertSame(e.getCause(), recorder.getFailure());
+        assertThrows(IllegalStateException.class, recorder::close);
+        recorder = null;
+    }
+
+    /**
+     * Tests that a full buffer holds producers back until the consumer frees a slot, losing nothing.
+     */
+    @Test
+    void testBlockWhenFull() throws InterruptedException {
+        recorder = new HistoryRecorder(2);
+        History history = new History();
+        Thread producer = new Thread(() -> {
+            for (int i = 1; i <= 5; i++) {
+                recorder.publish(history, TransactionType.DEPOSIT, i, 0L, 0);
+            }
+        });
+        synchronized (history) {
+            producer.start();
+            producer.join(200);
+            assertTrue(producer.isAlive(), "The producer should wait while the buffer is full.");
+        }
+        producer.join();
+        recorder.flush();
+
+        assertEquals(5, history.size());
+    }
+
+    /**
+     * Tests that balances recording in the background keep every entry of concurrent writers,
+     * and that awaitHistory makes them readable.
+     */
+    @Test
+    void testConcurrentBalances() throws InterruptedException {
+        recorder = new HistoryRecorder(64);
+        History history = new History();
+        Balance balance = new Balance(0.0, history, recorder);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread worker = new Thread(() -> {
+                for (int n = 0; n < 5_000; n++) {
+                    balance.depositCents(2);
+                    balance.withdrawCents(1);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        balance.awaitHistory();
+
+        assertEquals(20_000L, balance.getBalanceCents());
+        assertEquals(40_000, history.size());
+        assertEquals(20_000, history.getFilteredHistory("withdraw").size());
+    }
+
+    /**
+     * Tests that a closed recorder rejects new events after recording the pending ones.
+     */
+    @Test
+    void testCloseRecordsPendingEvents() {
+        recorder = new HistoryRecorder();
+        History history = new History();
+        recorder.publish(history, TransactionType.WITHDRAW, 100L, 0L, 0);
+        recorder.close();
+
+        assertEquals(1, history.size());
+        assertThrows(IllegalStateException.class,
+                () -> recorder.publish(history, TransactionType.DEPOSIT, 100L, 0L, 0));
+    }
+
+    /**
+     * Tests that an interrupt neither stops the consumer nor leaves it spinning: only close() ends it.
+     */
+    @Test
+    void testConsumerIgnoresInterrupts() throws InterruptedException {
+        recorder = new HistoryRecorder();
+        History history = new History();
+        Thread consumer = Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().equals("history-recorder") && t.isAlive())
+                .findFirst().orElseThrow();
+        consumer.interrupt();
+        Thread.sleep(20);
+        recorder.publish(history, TransactionType.DEPOSIT, 100L, 0L, 0);
+        recorder.flush();
+
+        assertEquals(1, history.size(), "The consumer must keep running after an interrupt.");
+        assertTrue(consumer.isAlive());
+        recorder.close();
+        assertFalse(consumer.isAlive());
+        recorder = null;
+    }
+
+    /**
+     * Tests that the capacity is validated.
+     */
+    @Test
+    void testInvalidCapacity() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new HistoryRecorder(0));
+    }
+}
@@ -5,6 +5,11 @@ import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.StringWriter;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.List;
 
 /**
@@ -112,4 +117,206 @@ class HistoryTest {
         assertTrue(exception.getMessage().contains("Invalid transaction type"),
                 "Exception message should indicate invalid type.");
     }
+
+    /**
+     * Tests that entries are rendered with a timestamp prefix and two-decimal amounts.
+     */
+    @Test
+    void testEntryFormat() {
+        history.recordTransaction(TransactionType.DEPOSIT, 12345L);
+
+        assertEquals(1, history.size());
+        assertTrue(history.getHistory().get(0).matches("\\[\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}] Deposited: \\$123\\.45"),
+                "Entry should render as [timestamp] label amount.");
+    }
+
+    /**
+     * Tests that entries take their time from the history's clock and render it in the clock's zone.
+     */
+    @Test
+    void testDeterministicClock() {
+        TestClock clock = new TestClock(Instant.parse("2024-03-01T12:00:59.500Z"), ZoneId.of("UTC"));
+        History timed = new History(clock);
+        timed.recordTransaction(TransactionType.DEPOSIT, 100L);
+        clock.advance(Duration.ofMillis(400));
+        timed.recordTransaction(TransactionType.WITHDRAW, 50L);
+        clock.advance(Duration.ofMillis(100)); // Rolls over to the next second
+        timed.recordTransaction(TransactionType.DEPOSIT, 25L);
+
+        assertEquals(List.of("[2024-03-01 12:00:59] Deposited: $1.00",
+                "[2024-03-01 12:00:59] Withdrawn: $0.50",
+                "[2024-03-01 12:01:00] Deposited: $0.25"), timed.getHistory());
+    }
+
+    /**
+     * Tests that cached timestamp rendering matches formatting every entry, across seconds,
+     * days and a daylight saving change, including when rendering out of order.
+     */
+    @Test
+    void testCachedTimestampsMatchUncached() {
+        ZoneId zone = ZoneId.of("Europe/Berlin");
+        TestClock clock = new TestClock(Instant.parse("2024-03-30T23:59:58Z"), zone);
+        History cached = new History(new HeapHistoryStore(), clock, true);
+        History uncached = new History(new HeapHistoryStore(), clock, false);
+        for (int i = 0; i < 500; i++) {
+            cached.recordTransaction(TransactionType.DEPOSIT, i + 1L);
+            uncached.recordTransaction(TransactionType.DEPOSIT, i + 1L);
+            clock.advance(Duration.ofMillis(i % 7 == 0 ? 3_600_000 : 333));
+        }
+
+        assertEquals(uncached.getFormattedHistory(), cached.getFormattedHistory());
+        assertEquals(uncached.getHistory().get(3), cached.getHistory().get(3));
+        assertEquals(uncached.getHistory().get(0), cached.getHistory().get(0));
+    }
+
+    /**
+     * Tests that storage grows past the initial column capacity without losing entries.
+     */
+    @Test
+    void testManyEntries() {
+        for (int i = 1; i <= 1000; i++) {
+            history.recordTransaction(TransactionType.WITHDRAW, i);
+        }
+
+        List<String> transactions = history.getHistory();
+        assertEquals(1000, transactions.size());
+        assertTrue(transactions.get(999).endsWith("Withdrawn: $10.00"));
+    }
+
+    /**
+     * Tests that type filtering keeps entries in recording order across many entries.
+     */
+    @Test
+    void testFilteredHistoryPreservesOrder() {
+        for (int i = 1; i <= 100; i++) {
+            history.recordTransaction(i % 3 == 0 ? TransactionType.WITHDRAW : TransactionType.DEPOSIT, i * 100L);
+        }
+
+        List<String> withdrawals = history.getFilteredHistory("withdraw");
+        List<String> deposits = history.getFilteredHistory("deposit");
+
+        assertEquals(33, withdrawals.size());
+        assertEquals(67, deposits.size());
+        assertTrue(withdrawals.get(0).endsWith("Withdrawn: $3.00"));
+        assertTrue(withdrawals.get(32).endsWith("Withdrawn: $99.00"));
+        assertTrue(deposits.get(66).endsWith("Deposited: $100.00"));
+    }
+
+    /**
+     * Tests that both type filters reject unknown type names instead of guessing one.
+     */
+    @Test
+    void testUnknownFilterTypeIsRejected() {
+        history.recordTransaction(TransactionType.WITHDRAW, 100);
+        LocalDateTime now = LocalDateTime.now();
+
+        assertThrows(IllegalArgumentException.class, () -> history.getFilteredHistory("refund"));
+        assertThrows(IllegalArgumentException.class, () -> history.getFilteredHistory(null));
+        assertThrows(IllegalArgumentException.class,
+                () -> history.getFilteredHistory("refund", now.minusDays(1), now.plusDays(1)));
+        assertEquals(1, history.getFilteredHistory("WITHDRAW").size(), "Names ignore case.");
+    }
+
+    /**
+     * Tests time-range queries over the full history and per type.
+     */
+    @Test
+    void testTimeRangeQueries() {
+        LocalDateTime base = LocalDateTime.of(2025, 2, 1, 9, 0, 0);
+        for (int day = 0; day < 10; day++) {
+            long millis = base.plusDays(day).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            history.recordTransactionAt(day % 2 == 0 ? TransactionType.DEPOSIT : TransactionType.WITHDRAW,
+                    (day + 1) * 100L, millis);
+        }
+
+        List<String> range = history.getHistory(base.plusDays(2), base.plusDays(5));
+        assertEquals(3, range.size(), "Range should include the start and exclude the end.");
+        assertTrue(range.get(0).startsWith("[2025-02-03 09:00:00] Deposited: $3.00"));
+        assertTrue(range.get(2).startsWith("[2025-02-05 09:00:00] Deposited: $5.00"));
+
+        List<String> withdrawals = history.getFilteredHistory("withdraw", base.plusDays(2), base.plusDays(8));
+        assertEquals(3, withdrawals.size());
+        assertTrue(withdrawals.get(0).endsWith("Withdrawn: $4.00"));
+        assertTrue(withdrawals.get(2).endsWith("Withdrawn: $8.00"));
+
+        assertTrue(history.getHistory(base.plusDays(20), base.plusDays(30)).isEmpty());
+        assertTrue(history.getHistory(base.plusDays(5), base.plusDays(2)).isEmpty(), "Inverted range should be empty.");
+    }
+
+    /**
+     * Tests that range views are read-only and stable as new entries arrive.
+     */
+    @Test
+    void testRangeViewIsStable() {
+        history.recordTransaction("deposit", 10.0);
+        List<String> view = history.getHistory(LocalDateTime.now().minusDays(1), LocalDateTime.now().plusDays(1));
+        history.recordTransaction("deposit", 20.0);
+
+        assertEquals(1, view.size());
+        assertThrows(UnsupportedOperationException.class, () -> view.add("entry"));
+        assertThrows(IndexOutOfBoundsException.class, () -> view.get(1));
+    }
+
+    /**
+     * Tests paging through history with offset and limit.
+     */
+    @Test
+    void testPagination() {
+        for (int i = 1; i <= 25; i++) {
+            history.recordTransaction(TransactionType.DEPOSIT, i * 100L);
+        }
+
+        assertEquals(10, history.getPage(0, 10).size());
+        List<String> last = history.getPage(20, 10);
+        assertEquals(5, last.size(), "Last page should hold the remaining entries.");
+        assertTrue(last.get(4).endsWith("Deposited: $25.00"));
+        assertTrue(history.getPage(25, 10).isEmpty(), "Paging past the end should return an empty page.");
+        assertThrows(IllegalArgumentException.class, () -> history.getPage(-1, 10));
+    }
+
+    /**
+     * Tests that streaming history matches the formatted summary.
+     */
+    @Test
+    void testWriteToMatchesFormattedHistory() throws Exception {
+        for (int i = 0; i < 600; i++) {
+            history.recordTransaction(i % 2 == 0 ? "deposit" : "withdraw", 1.0);
+        }
+
+        StringWriter writer = new StringWriter();
+        history.writeTo(writer);
+
+        assertEquals(history.getFormattedHistory(), writer.toString());
+        assertEquals(600, writer.toString().split("\n").length);
+    }
+
+    /**
+     * Tests that streaming an empty history writes the empty message.
+     */
+    @Test
+    void testWriteToEmptyHistory() throws Exception {
+        StringWriter writer = new StringWriter();
+        history.writeTo(writer);
+
+        assertEquals("No transaction history available.", writer.toString());
+    }
+
+    /**
+     * Tests that streaming a prefix writes only the first entries and rejects an out-of-range end.
+     */
+    @Test
+    void testWriteToPrefix() throws Exception {
+        for (int i = 1; i <= 300; i++) {
+            history.recordTransactionCents("deposit", i);
+        }
+
+        StringWriter writer = new StringWriter();
+        history.writeTo(writer, 257);
+
+        String[] lines = writer.toString().split("\n");
+        assertEquals(257, lines.length);
+        assertTrue(lines[256].endsWith("Deposited: $2.57"));
+        assertThrows(IllegalArgumentException.class, () -> history.writeTo(new StringWriter(), 301));
+        assertThrows(IllegalArgumentException.class, () -> history.writeTo(new StringWriter(), -1));
+    }
 }
@@ -0,0 +1,529 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit and crash-recovery tests for the Journal class and journal-backed ledgers.
+ */
+class JournalTest {
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Tests that a reopened ledger rebuilds balances and history from the journal.
+     */
+    @Test
+    void testReplayRebuildsLedger() throws IOException {
+        Path file = tempDir.resolve("ledger.log");
+        try (Ledger ledger = new Ledger(new Journal(file))) {
+            ledger.openAccount("1111111", 100.0);
+            ledger.openAccount("2222222", 0.0);
+            assertTrue(ledger.deposit("1111111", 50.25));
+            assertTrue(ledger.withdraw("1111111", 20.0));
+            assertFalse(ledger.withdraw("2222222", 1.0), "Rejected withdrawals must not be journaled.");
+            assertTrue(ledger.deposit("2222222", 7.5));
+        }
+
+        try (Ledger recovered = new Ledger(new Journal(file))) {
+            assertEquals(13025L, recovered.getAccount("1111111").getBalanceCents());
+            assertEquals(750L, recovered.getAccount("2222222").getBalanceCents());
+            List<String> history = recovered.getAccount("1111111").getHistory().getHistory();
+            assertEquals(2, history.size());
+            assertTrue(history.get(0).endsWith("Deposited: $50.25"));
+            assertTrue(history.get(1).endsWith("Withdrawn: $20.00"));
+        }
+    }
+
+    /**
+     * Crash-recovery test: a record cut off mid-write is discarded, earlier records survive,
+     * and new records are appended cleanly after the last intact one.
+     */
+    @Test
+    void testRecoveryTruncatesTornRecord() throws IOException {
+        Path file = tempDir.resolve("torn.log");
+        try (Ledger ledger = new Ledger(new Journal(file))) {
+            ledger.openAccount("1111111", 0.0);
+            ledger.deposit("1111111", 10.0);
+            ledger.deposit("1111111", 20.0);
+        }
+        long intactSize = Files.size(file);
+        try (Ledger ledger = new Ledger(new Journal(file))) {
+            ledger.deposit("1111111", 40.0);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 5); // Simulate a crash in the middle of the last record
+        }
+
+        try (Ledger recovered = new Ledger(new Journal(file))) {
+            assertEquals(3000L, recovered.getAccount("1111111").getBalanceCents(), "Torn deposit must be dropped.");
+            assertEquals(intactSize, Files.size(file), "Torn tail should be truncated.");
+            recovered.deposit("1111111", 1.0);
+        }
+        try (Ledger reopened = new Ledger(new Journal(file))) {
+            assertEquals(3100L, reopened.getAccount("1111111").getBalanceCents());
+        }
+    }
+
+    /**
+     * Tests that a record with a corrupted payload stops replay at the last good record.
+     */
+    @Test
+    void testRecoveryStopsAtCorruptRecord() throws IOException {
+        Path file = tempDir.resolve("corrupt.log");
+        try (Journal journal = new Journal(file)) {
+            journal.recover((kind, account, amount, time) -> fail("New journal should be empty."));
+            journal.append(Journal.OPEN_ACCOUNT, "a".getBytes(), 100L, 1L);
+            journal.appendDurable(TransactionType.DEPOSIT.code(), "a".getBytes(), 5L, 2L);
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 6] ^= 0x7F; // Flip a byte inside the second payload
+        Files.write(file, bytes);
+
+        List<Long> amounts = new ArrayList<>();
+        try (Journal journal = new Journal(file)) {
+            journal.recover((kind, account, amount, time) -> amounts.add(amount));
+        }
+        assertEquals(List.of(100L), amounts);
+    }
+
+    /**
+     * Tests that appending before recovery is rejected.
+     */
+    @Test
+    void testAppendRequiresRecovery() throws IOException {
+        try (Journal journal = new Journal(tempDir.resolve("new.log"))) {
+            assertThrows(IllegalStateException.class,
+                    () -> journal.append(Journal.OPEN_ACCOUNT, "a".getBytes(), 0L, 0L));
+        }
+    }
+
+    /**
+     * Tests that concurrent writers share group commits and lose no records.
+     */
+    @Test
+    void testConcurrentGroupCommit() throws Exception {
+        Path file = tempDir.resolve("group.log");
+        int threads = 8;
+        int depositsPerThread = 200;
+        try (Ledger ledger = new Ledger(new Journal(file))) {
+            ledger.openAccount("hot", 0.0);
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Thread worker = new Thread(() -> {
+                    for (int i = 0; i < depositsPerThread; i++) {
+                        ledger.deposit("hot", 1.0);
+                    }
+                });
+                worker.start();
+                workers.add(worker);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        }
+
+        try (Ledger recovered = new Ledger(new Journal(file))) {
+            assertEquals(threads * depositsPerThread * 100L, recovered.getAccount("hot").getBalanceCents());
+        }
+    }
+
+    /**
+     * Tests that a ledger with mapped histories does not duplicate history entries on recovery.
+     */
+    @Test
+    void testReplayWithMappedHistories() throws IOException {
+        Path file = tempDir.resolve("mapped.log");
+        Path histories = tempDir.resolve("histories");
+        try (Ledger ledger = new Ledger(new Journal(file), histories)) {
+            ledger.openAccount("1111111", 0.0);
+            ledger.deposit("1111111", 10.0);
+            ledger.withdraw("1111111", 4.0);
+        }
+
+        try (Ledger recovered = new Ledger(new Journal(file), histories)) {
+            Balance balance = recovered.getAccount("1111111");
+            assertEquals(600L, balance.getBalanceCents());
+            assertTrue(balance.getHistory().isPersistent());
+            assertEquals(2, balance.getHistory().size(), "Entries already in segments must not be replayed again.");
+        }
+    }
+
+    /**
+     * Crash-recovery test: mapped history entries whose journal records never reached disk are discarded,
+     * so the history matches the recovered balance and later entries follow the surviving ones.
+     */
+    @Test
+    void testRecoveryDropsHistoryAheadOfJournal() throws IOException {
+        Path file = tempDir.resolve("ahead.log");
+        Path histories = tempDir.resolve("histories");
+        try (Ledger ledger = new Ledger(new Journal(file), histories)) {
+            ledger.openAccount("1111111", 0.0);
+            ledger.deposit("1111111", 10.0);
+        }
+        long intactSize = Files.size(file);
+        try (Ledger ledger = new Ledger(new Journal(file), histories)) {
+            ledger.withdraw("1111111", 4.0);
+            ledger.openAccount("2222222", 5.0);
+            ledger.deposit("2222222", 1.0);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(intactSize); // Simulate losing the unforced tail of the journal
+        }
+
+        try (Ledger recovered = new Ledger(new Journal(file), histories)) {
+            Balance balance = recovered.getAccount("1111111");
+            assertEquals(1000L, balance.getBalanceCents());
+            assertEquals(1, balance.getHistory().size(), "The lost withdrawal must leave the history.");
+            assertEquals(1, balance.getSnapshot().getHistoryLength());
+            assertTrue(balance.getHistory().getFilteredHistory("withdraw").isEmpty());
+            assertThrows(IllegalArgumentException.class, () -> recovered.getAccount("2222222"));
+
+            recovered.openAccount("2222222", 5.0);
+            assertEquals(0, recovered.getAccount("2222222").getHistory().size(), "A lost account starts afresh.");
+            assertTrue(recovered.deposit("1111111", 2.0));
+            assertEquals(2, balance.getHistory().size());
+            assertTrue(balance.getHistory().getHistory().get(1).endsWith("Deposited: $2.00"));
+        }
+    }
+
+    /**
+     * Tests that duplicate and racing opens of an account with a mapped history open its segments only once.
+     */
+    @Test
+    void testDuplicateOpenWithMappedHistories() throws Exception {
+        Path file = tempDir.resolve("duplicate.log");
+        Path histories = tempDir.resolve("duplicate-histories");
+        try (Ledger ledger = new Ledger(new Journal(file), histories)) {
+            AtomicInteger opened = new AtomicInteger();
+            AtomicInteger rejected = new AtomicInteger();
+            List<Thread> openers = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                Thread opener = new Thread(() -> {
+                    try {
+                        ledger.openAccount("1111111", 5.0);
+                        opened.incrementAndGet();
+                    } catch (IllegalArgumentException e) {
+                        rejected.incrementAndGet();
+                    }
+                });
+                opener.start();
+                openers.add(opener);
+            }
+            for (Thread opener : openers) {
+                opener.join();
+            }
+            assertEquals(1, opened.get());
+            assertEquals(7, rejected.get());
+            assertThrows(IllegalArgumentException.class, () -> ledger.openAccount("1111111", 5.0));
+            ledger.deposit("1111111", 1.0);
+        }
+
+        try (Ledger recovered = new Ledger(new Journal(file), histories)) {
+            assertEquals(600L, recovered.getAccount("1111111").getBalanceCents());
+            assertEquals(1, recovered.getAccount("1111111").getHistory().size());
+        }
+    }
+
+    /**
+     * Tests that recovery loads the checkpoint and replays only the tail written after it.
+     */
+    @Test
+    void testCheckpointCompactsJournal() throws IOException {
+        Path file = tempDir.resolve("checkpointed.log");
+        try (Journal journal = new Journal(file); Ledger ledger = new Ledger(journal)) {
+            ledger.openAccount("1111111", 100.0);
+            ledger.deposit("1111111", 50.0);
+            journal.checkpoint();
+            assertTrue(journal.sealedSegments().isEmpty(), "Folded segments should be deleted.");
+            assertEquals(0L, Files.size(file), "Active file should start empty after a checkpoint.");
+
+            ledger.openAccount("2222222", 10.0);
+            ledger.withdraw("1111111", 30.0);
+        }
+
+        try (Ledger recovered = new Ledger(new Journal(file))) {
+            assertEquals(12000L, recovered.getAccount("1111111").getBalanceCents());
+            assertEquals(1000L, recovered.getAccount("2222222").getBalanceCents());
+            assertEquals(1, recovered.getAccount("1111111").getHistory().size(),
+                    "Heap history should only hold the replayed tail.");
+        }
+    }
+
+    /**
+     * Tests that successive checkpoints fold into the previous image.
+     */
+    @Test
+    void testIncrementalCheckpoints() throws IOException {
+        Path file = tempDir.resolve("incremental.log");
+        try (Journal journal = new Journal(file); Ledger ledger = new Ledger(journal)) {
+            ledger.openAccount("1111111", 0.0);
+            for (int round = 0; round < 5; round++) {
+                ledger.deposit("1111111", 10.0);
+                journal.checkpoint();
+            }
+            assertEquals(5, journal.readCheckpoint().coveredSegment());
+        }
+
+        try (Ledger recovered = new Ledger(new Journal(file))) {
+            assertEquals(5000L, recovered.getAccount("1111111").getBalanceCents());
+        }
+    }
+
+    /**
+     * Crash-recovery test: a segment sealed by a checkpoint that died before folding it is replayed.
+     */
+    @Test
+    void testRecoveryReplaysUnfoldedSegment() throws IOException {
+        Path file = tempDir.resolve("unfolded.log");
+        try (Ledger ledger = new Ledger(new Journal(file))) {
+            ledger.openAccount("1111111", 5.0);
+            ledger.deposit("1111111", 1.0);
+        }
+        Files.move(file, tempDir.resolve("unfolded.log.00000001")); // Roll happened, fold did not
+
+        try (Journal journal = new Journal(file); Ledger recovered = new Ledger(journal)) {
+            assertEquals(600L, recovered.getAccount("1111111").getBalanceCents());
+            recovered.deposit("1111111", 1.0);
+            journal.checkpoint();
+            assertEquals(2, journal.readCheckpoint().coveredSegment(), "New segments must not reuse old numbers.");
+        }
+        try (Ledger reopened = new Ledger(new Journal(file))) {
+            assertEquals(700L, reopened.getAccount("1111111").getBalanceCents());
+        }
+    }
+
+    /**
+     * Tests that a failed periodic checkpoint is reported until one succeeds, and by close().
+     */
+    @Test
+    void testPeriodicCheckpointFailureIsReported() throws Exception {
+        Path file = tempDir.resolve("failing.log");
+        Path blocker = Files.createDirectories(tempDir.resolve("failing.log.checkpoint.tmp"));
+        Journal journal = new Journal(file);
+        Ledger ledger = new Ledger(journal);
+        ledger.openAccount("1111111", 5.0);
+        journal.startPeriodicCheckpoints(Duration.ofMillis(5));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (journal.getCheckpointFailure() == null && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertNotNull(journal.getCheckpointFailure(), "The checkpoint cannot write its image.");
+        Files.delete(blocker);
+        while (journal.getCheckpointFailure() != null && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertNull(journal.getCheckpointFailure(), "A later checkpoint succeeds and clears the failure.");
+        Files.createDirectories(blocker);
+        while (journal.getCheckpointFailure() == null && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThrows(IOException.class, ledger::close);
+        assertThrows(IllegalStateException.class, journal::checkpoint, "A closed journal never rolls.");
+        Files.delete(blocker);
+
+        try (Ledger recovered = new Ledger(new Journal(file))) {
+            assertEquals(500L, recovered.getAccount("1111111").getBalanceCents());
+        }
+    }
+
+    /**
+     * Tests that a failed journal write fails stop: the change that was never acknowledged is taken
+     * back, later appends are rejected, and recovery sees only the durable changes.
+     */
+    @Test
+    void testFailedWriteFailsStop() throws IOException {
+        Path file = tempDir.resolve("broken.log");
+        Journal journal = new Journal(file);
+        Ledger ledger = new Ledger(journal);
+        ledger.openAccount("1111111", 5.0);
+        ledger.openAccount("2222222", 0.0);
+        assertTrue(ledger.deposit("1111111", 1.0));
+        journal.close(); // Later writes fail on the closed file
+
+        Balance balance = ledger.getAccount("1111111");
+        assertThrows(UncheckedIOException.class, () -> ledger.deposit("1111111", 2.0));
+        assertEquals(600L, balance.getBalanceCents(), "The failed deposit must be taken back.");
+        assertEquals(600L, balance.getSnapshot().getBalanceCents());
+        assertEquals(1, balance.getHistory().size());
+        assertEquals(1, balance.getSnapshot().getHistoryLength());
+
+        assertThrows(UncheckedIOException.class, () -> ledger.transfer("1111111", "2222222", 1.0));
+        assertEquals(600L, balance.getBalanceCents(), "Appends after a failure must change nothing.");
+        assertEquals(0L, ledger.getAccount("2222222").getBalanceCents());
+        assertThrows(UncheckedIOException.class, () -> ledger.openAccount("3333333", 1.0));
+        assertFalse(ledger.hasAccount("3333333"));
+        assertThrows(IOException.class, ledger::close);
+
+        try (Ledger recovered = new Ledger(new Journal(file))) {
+            assertEquals(600L, recovered.getAccount("1111111").getBalanceCents());
+            assertFalse(recovered.hasAccount("3333333"));
+        }
+    }
+
+    /**
+     * Tests that a checkpoint whose rename fails leaves the active file in use, and a later one succeeds.
+     */
+    @Test
+    void testFailedRollKeepsActiveFile() throws IOException {
+        Path file = tempDir.resolve("blocked.log");
+        try (Ledger ledger = new Ledger(new Journal(file))) {
+            ledger.openAccount("1111111", 5.0);
+        }
+        Journal journal = new Journal(file);
+        try (Ledger ledger = new Ledger(journal)) {
+            Path blocker = Files.createDirectories(tempDir.resolve("blocked.log.00000001"));
+            Files.createFile(blocker.resolve("entry")); // The roll cannot rename the active file over it
+            assertThrows(IOException.class, journal::checkpoint);
+            assertTrue(ledger.deposit("1111111", 1.0), "The journal stays usable.");
+            Files.delete(blocker.resolve("entry"));
+            Files.delete(blocker);
+            journal.checkpoint();
+            assertTrue(ledger.deposit("1111111", 2.0));
+        }
+        try (Ledger recovered = new Ledger(new Journal(file))) {
+            assertEquals(800L, recovered.getAccount("1111111").getBalanceCents());
+        }
+    }
+
+    /**
+     * Tests that checkpoints taken during concurrent deposits neither lose nor double-count money.
+     */
+    @Test
+    void testCheckpointDuringConcurrentDeposits() throws Exception {
+        Path file = tempDir.resolve("concurrent.log");
+        int threads = 4;
+        int depositsPerThread = 300;
+        try (Journal journal = new Journal(file); Ledger ledger = new Ledger(journal)) {
+            for (int t = 0; t < threads; t++) {
+                ledger.openAccount("acct-" + t, 0.0);
+            }
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String account = "acct-" + t;
+                Thread worker = new Thread(() -> {
+                    for (int i = 0; i < depositsPerThread; i++) {
+                        ledger.deposit(account, 1.0);
+                    }
+                });
+                worker.start();
+                workers.add(worker);
+            }
+            while (workers.stream().anyMatch(Thread::isAlive)) {
+                journal.checkpoint();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        }
+
+        try (Ledger recovered = new Ledger(new Journal(file))) {
+            for (int t = 0; t < threads; t++) {
+                assertEquals(depositsPerThread * 100L, recovered.getAccount("acct-" + t).getBalanceCents());
+            }
+        }
+    }
+
+    /**
+     * Tests that a batch survives a restart as a whole.
+     */
+    @Test
+    void testBatchReplay() throws IOException {
+        Path file = tempDir.resolve("batch.log");
+        try (Ledger ledger = new Ledger(new Journal(file))) {
+            ledger.openAccount("1111111", 1.0);
+            BatchResult result = ledger.applyBatch("1111111",
+                    new TransactionBatch().deposit(500).withdraw(10_000).withdraw(200));
+            assertEquals(1, result.getRejectedCount());
+        }
+
+        try (Ledger recovered = new Ledger(new Journal(file))) {
+            assertEquals(400L, recovered.getAccount("1111111").getBalanceCents());
+            assertEquals(2, recovered.getAccount("1111111").getHistory().size());
+        }
+    }
+
+    /**
+     * Tests that a transfer survives a restart with both linked history entries, and that
+     * transfer ids issued after recovery stay unique.
+     */
+    @Test
+    void testTransferReplay() throws IOException {
+        Path file = tempDir.resolve("transfer.log");
+        String before;
+        try (Ledger ledger = new Ledger(new Journal(file))) {
+            ledger.openAccount("1111111", 10.0);
+            ledger.openAccount("2222222", 0.0);
+            assertTrue(ledger.transfer("1111111", "2222222", 4.0));
+            before = ledger.getAccount("2222222").getHistory().getHistory().get(0);
+        }
+
+        try (Ledger recovered = new Ledger(new Journal(file))) {
+            assertEquals(600L, recovered.getAccount("1111111").getBalanceCents());
+            assertEquals(400L, recovered.getAccount("2222222").getBalanceCents());
+            assertEquals(before, recovered.getAccount("2222222").getHistory().getHistory().get(0));
+            assertTrue(recovered.transfer("2222222", "1111111", 1.0));
+            String later = recovered.getAccount("1111111").getHistory().getHistory().get(1);
+            assertNotEquals(before.substring(before.indexOf('#')), later.substring(later.indexOf('#')));
+        }
+    }
+
+    /**
+     * Crash-recovery test: a transfer cut off mid-write applies to neither account.
+     */
+    @Test
+    void testRecoveryDropsTornTransfer() throws IOException {
+        Path file = tempDir.resolve("torn-transfer.log");
+        try (Ledger ledger = new Ledger(new Journal(file))) {
+            ledger.openAccount("1111111", 10.0);
+            ledger.openAccount("2222222", 0.0);
+            ledger.transfer("1111111", "2222222", 4.0);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 5); // Simulate a crash while writing the credit side
+        }
+
+        try (Ledger recovered = new Ledger(new Journal(file))) {
+            assertEquals(1000L, recovered.getAccount("1111111").getBalanceCents());
+            assertEquals(0L, recovered.getAccount("2222222").getBalanceCents());
+        }
+    }
+
+    /**
+     * Crash-recovery test: a batch cut off mid-write is dropped entirely, not partially applied.
+     */
+    @Test
+    void testRecoveryDropsTornBatch() throws IOException {
+        Path file = tempDir.resolve("torn-batch.log");
+        try (Ledger ledger = new Ledger(new Journal(file))) {
+            ledger.openAccount("1111111", 0.0);
+            ledger.deposit("1111111", 1.0);
+        }
+        long intactSize = Files.size(file);
+        try (Ledger ledger = new Ledger(new Journal(file))) {
+            ledger.applyBatch("1111111", new TransactionBatch().deposit(100).deposit(200).deposit(300));
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 5); // Simulate a crash while writing the last record of the batch
+        }
+
+        try (Ledger recovered = new Ledger(new Journal(file))) {
+            assertEquals(100L, recovered.getAccount("1111111").getBalanceCents(), "No part of a torn batch may apply.");
+            assertEquals(intactSize, Files.size(file), "The torn batch should be truncated.");
+        }
+    }
+}
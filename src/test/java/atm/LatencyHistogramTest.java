@@ -0,0 +1,87 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit and concurrency tests for the LatencyHistogram class.
+ */
+class LatencyHistogramTest {
+    /**
+     * Tests that every value falls into a bucket whose highest value is within 1/32 above it.
+     */
+    @Test
+    void testBucketPrecision() {
+        long[] values = {0, 1, 31, 32, 33, 63, 64, 1_000, 999_999, 123_456_789, 1L << 40, Long.MAX_VALUE};
+        int previous = -1;
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            long highest = LatencyHistogram.highestValueIn(bucket);
+            assertTrue(bucket > previous, "Buckets should grow with the value.");
+            assertTrue(highest >= value, "Bucket of " + value + " ends at " + highest);
+            assertTrue(highest - value <= value / 32, "Bucket of " + value + " is too wide: " + highest);
+            previous = bucket;
+        }
+    }
+
+    /**
+     * Tests percentiles, mean and maximum of a uniform distribution.
+     */
+    @Test
+    void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.record(i * 1_000L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(10_000, snapshot.count());
+        assertEquals(5_000_500.0, snapshot.mean(), 0.001);
+        assertEquals(5_000_000, snapshot.percentile(50), 5_000_000 / 32.0);
+        assertEquals(9_900_000, snapshot.percentile(99), 9_900_000 / 32.0);
+        assertEquals(10_000_000, snapshot.max(), 10_000_000 / 32.0);
+        assertThrows(IllegalArgumentException.class, () -> snapshot.percentile(101));
+    }
+
+    /**
+     * Tests that an empty histogram reports zeros.
+     */
+    @Test
+    void testEmpty() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertEquals(0, snapshot.count());
+        assertEquals(0, snapshot.percentile(99));
+        assertEquals(0, snapshot.max());
+        assertEquals(0.0, snapshot.mean());
+    }
+
+    /**
+     * Tests that concurrent recording from many threads loses no values.
+     */
+    @Test
+    void testConcurrentRecording() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    histogram.record(i % 100);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(400_000, snapshot.count());
+        assertEquals(49.5, snapshot.mean(), 0.001);
+    }
+}
@@ -0,0 +1,268 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntConsumer;
+
+/**
+ * Unit and stress tests for the Ledger class.
+ */
+class LedgerTest {
+    private static final int OPS_PER_THREAD = 200_000;
+
+    private Ledger ledger;
+
+    /**
+     * Initializes a fresh Ledger with two accounts before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        ledger = new Ledger();
+        ledger.openAccount("1111111", 1000.0);
+        ledger.openAccount("2222222", 500.0);
+    }
+
+    /**
+     * Tests that operations on one account do not affect another.
+     */
+    @Test
+    void testAccountsAreIndependent() {
+        assertTrue(ledger.deposit("1111111", 250.0));
+        assertTrue(ledger.withdraw("2222222", 100.0));
+
+        assertEquals(1250.0, ledger.getBalance("1111111"), 0.001);
+        assertEquals(400.0, ledger.getBalance("2222222"), 0.001);
+        assertEquals(1, ledger.getAccount("1111111").getHistory().getHistory().size());
+    }
+
+    /**
+     * Tests that opening the same account twice is rejected.
+     */
+    @Test
+    void testDuplicateAccount() {
+        assertThrows(IllegalArgumentException.class, () -> ledger.openAccount("1111111", 0.0));
+    }
+
+    /**
+     * Tests that retried deposits, withdrawals and transfers are applied once and return the first result.
+     */
+    @Test
+    void testIdempotentRequests() {
+        assertTrue(ledger.withdraw("1111111", 100.0, 1L));
+        assertTrue(ledger.withdraw("1111111", 100.0, 1L), "A retry returns the first result.");
+        assertTrue(ledger.deposit("2222222", 50.0, 2L));
+        assertTrue(ledger.deposit("2222222", 50.0, 2L));
+        assertFalse(ledger.withdraw("2222222", 5_000.0, 3L));
+        assertFalse(ledger.withdraw("2222222", 5_000.0, 3L), "A rejected request stays rejected.");
+        assertTrue(ledger.transfer("1111111", "2222222", 10.0, 4L));
+        assertTrue(ledger.transfer("1111111", "2222222", 10.0, 4L));
+
+        assertEquals(890.0, ledger.getBalance("1111111"), 0.001);
+        assertEquals(560.0, ledger.getBalance("2222222"), 0.001);
+        assertEquals(2, ledger.getAccount("1111111").getHistory().size());
+        assertEquals(2, ledger.getAccount("2222222").getHistory().size());
+        assertEquals(4, ledger.getRequestDeduplicator().getReplayCount());
+        assertThrows(IllegalArgumentException.class, () -> ledger.deposit("9999999", 1.0, 5L));
+        ledger.openAccount("9999999", 0.0);
+        assertTrue(ledger.deposit("9999999", 1.0, 5L), "A request that failed can be retried.");
+    }
+
+    /**
+     * Tests that request ids are scoped to the account and cannot be reused for a different request.
+     */
+    @Test
+    void testRequestIdsAreScopedAndChecked() {
+        assertTrue(ledger.deposit("1111111", 10.0, 1L));
+        assertTrue(ledger.deposit("2222222", 10.0, 1L), "The same id on another account is a new request.");
+        assertThrows(IllegalArgumentException.class, () -> ledger.withdraw("1111111", 10.0, 1L));
+        assertThrows(IllegalArgumentException.class, () -> ledger.deposit("1111111", 20.0, 1L));
+        assertThrows(IllegalArgumentException.class, () -> ledger.transfer("1111111", "2222222", 10.0, 1L));
+
+        assertEquals(1010.0, ledger.getBalance("1111111"), 0.001);
+        assertEquals(510.0, ledger.getBalance("2222222"), 0.001);
+    }
+
+    /**
+     * Tests that operations on an unknown account are rejected.
+     */
+    @Test
+    void testUnknownAccount() {
+        assertFalse(ledger.hasAccount("9999999"));
+        assertThrows(IllegalArgumentException.class, () -> ledger.deposit("9999999", 10.0));
+    }
+
+    /**
+     * Tests that a transfer moves money atomically and links both history entries.
+     */
+    @Test
+    void testTransfer() {
+        assertTrue(ledger.transfer("1111111", "2222222", 250.0));
+
+        assertEquals(750.0, ledger.getBalance("1111111"), 0.001);
+        assertEquals(750.0, ledger.getBalance("2222222"), 0.001);
+        String out = ledger.getAccount("1111111").getHistory().getHistory().get(0);
+        String in = ledger.getAccount("2222222").getHistory().getHistory().get(0);
+        assertTrue(out.contains("Transferred out: $250.00 (transfer #"), out);
+        assertTrue(in.contains("Transferred in: $250.00 (transfer #"), in);
+        assertEquals(out.substring(out.indexOf('#')), in.substring(in.indexOf('#')));
+        assertEquals(1, ledger.getAccount("2222222").getHistory().getFilteredHistory("transfer_in").size());
+    }
+
+    /**
+     * Tests that invalid transfers are rejected without changing either account.
+     */
+    @Test
+    void testRejectedTransfers() {
+        assertFalse(ledger.transfer("2222222", "1111111", 500.01), "Insufficient funds");
+        assertFalse(ledger.transfer("1111111", "2222222", 0.0));
+        assertFalse(ledger.transfer("1111111", "2222222", -5.0));
+        assertFalse(ledger.transfer("1111111", "1111111", 5.0), "Same account");
+        assertThrows(IllegalArgumentException.class, () -> ledger.transfer("1111111", "9999999", 5.0));
+
+        assertEquals(1000.0, ledger.getBalance("1111111"), 0.001);
+        assertEquals(500.0, ledger.getBalance("2222222"), 0.001);
+        assertEquals(0, ledger.getAccount("1111111").getHistory().size());
+    }
+
+    /**
+     * Stress test: random transfers between a few accounts in both directions conserve the total
+     * and finish without deadlock.
+     */
+    @Test
+    void testConcurrentTransfersConserveMoney() throws InterruptedException {
+        int accounts = 8;
+        Ledger shared = new Ledger();
+        for (int i = 0; i < accounts; i++) {
+            shared.openAccount("acct-" + i, 100.0);
+        }
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+        runConcurrently(threads, i -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int n = 0; n < 20_000; n++) {
+                int from = random.nextInt(accounts);
+                int to = random.nextInt(accounts);
+                shared.transferCents("acct-" + from, "acct-" + to, 1 + random.nextInt(5_000));
+            }
+        });
+
+        long total = 0;
+        int outEntries = 0;
+        int inEntries = 0;
+        for (int i = 0; i < accounts; i++) {
+            Balance balance = shared.getAccount("acct-" + i);
+            assertTrue(balance.getBalanceCents() >= 0);
+            total += balance.getBalanceCents();
+            outEntries += balance.getHistory().getFilteredHistory("transfer_out").size();
+            inEntries += balance.getHistory().getFilteredHistory("transfer_in").size();
+        }
+        assertEquals(accounts * 10_000L, total, "Transfers must conserve money.");
+        assertEquals(outEntries, inEntries);
+    }
+
+    /**
+     * Tests that a ledger recording history in the background shows every entry, including
+     * linked transfers, once the accounts await their history.
+     */
+    @Test
+    void testBackgroundHistory() throws Exception {
+        try (HistoryRecorder recorder = new HistoryRecorder()) {
+            Ledger async = new Ledger(recorder);
+            async.openAccount("1111111", 100.0);
+            async.openAccount("2222222", 0.0);
+            for (int i = 0; i < 100; i++) {
+                async.deposit("1111111", 1.0);
+                async.transfer("1111111", "2222222", 1.0);
+            }
+            async.getAccount("1111111").awaitHistory();
+            async.getAccount("2222222").awaitHistory();
+
+            assertEquals(200, async.getAccount("1111111").getHistory().size());
+            assertEquals(100, async.getAccount("2222222").getHistory().getFilteredHistory("transfer_in").size());
+            assertEquals(100.0, async.getBalance("2222222"), 0.001);
+            async.close();
+        }
+    }
+
+    /**
+     * Tests that concurrent updates to the same account lose no money.
+     */
+    @Test
+    void testConcurrentUpdatesOnSameAccount() throws InterruptedException {
+        Ledger shared = new Ledger();
+        shared.openAccount("hot", 0.0);
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        runConcurrently(threads, i -> {
+            for (int n = 0; n < 10_000; n++) {
+                shared.deposit("hot", 2.0);
+                shared.withdraw("hot", 1.0);
+            }
+        });
+
+        assertEquals(threads * 10_000.0, shared.getBalance("hot"), 0.001);
+        assertEquals(threads * 20_000, shared.getAccount("hot").getHistory().getHistory().size());
+    }
+
+    /**
+     * Stress test: one thread per core updates its own account with its own amount; every
+     * account ends with exactly its thread's updates and no other thread's.
+     */
+    @Test
+    void testDisjointAccountsLoseNoUpdates() throws InterruptedException {
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        Ledger stressLedger = new Ledger();
+        for (int i = 0; i < threads; i++) {
+            stressLedger.openAccount("acct-" + i, 0.0);
+        }
+
+        runConcurrently(threads, i -> {
+            Balance account = stressLedger.getAccount("acct-" + i);
+            for (int n = 0; n < OPS_PER_THREAD / 2; n++) {
+                account.depositCents(2L * (i + 1));
+                account.withdrawCents(i + 1);
+            }
+        });
+
+        for (int i = 0; i < threads; i++) {
+            Balance balance = stressLedger.getAccount("acct-" + i);
+            assertEquals((long) (OPS_PER_THREAD / 2) * (i + 1), balance.getBalanceCents());
+            assertEquals(OPS_PER_THREAD / 2, balance.getHistory().getFilteredHistory("deposit").size());
+            assertEquals(OPS_PER_THREAD / 2, balance.getHistory().getFilteredHistory("withdraw").size());
+        }
+    }
+
+    /**
+     * Starts the given number of threads together and waits for all of them.
+     */
+    private static void runConcurrently(int threads, IntConsumer task)
+            throws InterruptedException {
+        CountDownLatch startGate = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            int id = i;
+            Thread worker = new Thread(() -> {
+                try {
+                    startGate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                task.accept(id);
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        startGate.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+}
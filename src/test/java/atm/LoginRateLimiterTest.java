@@ -0,0 +1,129 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unit tests for the LoginRateLimiter class.
+ */
+class LoginRateLimiterTest {
+    private static final Duration RECOVERY = Duration.ofSeconds(10);
+
+    private final AtomicLong now = new AtomicLong(); // Fake clock, in nanoseconds
+
+    /**
+     * Tests that a burst of failures throttles a key, and that other keys are unaffected.
+     */
+    @Test
+    void testBurstThrottles() {
+        LoginRateLimiter limiter = new LoginRateLimiter(3, RECOVERY, 64, now::get);
+        for (int i = 0; i < 3; i++) {
+            assertFalse(limiter.isThrottled("a"));
+            limiter.recordFailure("a");
+        }
+
+        assertTrue(limiter.isThrottled("a"));
+        assertEquals(0, limiter.remaining("a"));
+        assertEquals(3, limiter.remaining("b"));
+    }
+
+    /**
+     * Tests that a throttled key regains one failure per recovery interval.
+     */
+    @Test
+    void testRecoveryOverTime() {
+        LoginRateLimiter limiter = new LoginRateLimiter(3, RECOVERY, 64, now::get);
+        for (int i = 0; i < 5; i++) {
+            limiter.recordFailure("a"); // Failures beyond the burst do not push recovery further out
+        }
+
+        now.set(RECOVERY.toNanos());
+        assertEquals(1, limiter.remaining("a"));
+        now.set(RECOVERY.multipliedBy(3).toNanos());
+        assertEquals(3, limiter.remaining("a"));
+    }
+
+    /**
+     * Tests that resetting a key clears its failures.
+     */
+    @Test
+    void testReset() {
+        LoginRateLimiter limiter = new LoginRateLimiter(3, RECOVERY, 64, now::get);
+        limiter.recordFailure("a");
+        limiter.recordFailure("a");
+        limiter.reset("a");
+
+        assertEquals(3, limiter.remaining("a"));
+    }
+
+    /**
+     * Tests that acquired attempts count as failures until settled, and that a key whose remaining
+     * failures are all in flight is busy rather than throttled.
+     */
+    @Test
+    void testAttemptsInFlight() {
+        LoginRateLimiter limiter = new LoginRateLimiter(3, RECOVERY, 64, now::get);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(LoginRateLimiter.ACQUIRED, limiter.tryAcquire("a"));
+        }
+        assertEquals(LoginRateLimiter.BUSY, limiter.tryAcquire("a"));
+        assertEquals(0, limiter.remaining("a"));
+
+        limiter.release("a");
+        assertEquals(1, limiter.remaining("a"), "A released attempt gives its failure back.");
+        limiter.complete("a");
+        limiter.complete("a");
+        assertEquals(LoginRateLimiter.ACQUIRED, limiter.tryAcquire("a"));
+        limiter.complete("a");
+        assertEquals(LoginRateLimiter.THROTTLED, limiter.tryAcquire("a"), "Settled failures throttle the key.");
+
+        assertEquals(LoginRateLimiter.ACQUIRED, limiter.tryAcquire("b"));
+        assertEquals(LoginRateLimiter.ACQUIRED, limiter.tryAcquire("b"));
+        limiter.release("b");
+        limiter.reset("b");
+        assertEquals(2, limiter.remaining("b"), "A reset keeps the failure of the attempt still in flight.");
+        limiter.release("b");
+        assertEquals(3, limiter.remaining("b"));
+    }
+
+    /**
+     * Tests that a full group never evicts a key with failures outstanding: new keys are
+     * throttled until a slot recovers, and a throttled key stays throttled.
+     */
+    @Test
+    void testFullGroupFailsClosed() {
+        LoginRateLimiter limiter = new LoginRateLimiter(3, RECOVERY, 4, now::get); // A single group of four slots
+        for (int i = 0; i < 3; i++) {
+            limiter.recordFailure("victim");
+        }
+        for (int i = 0; i < 3; i++) {
+            assertEquals(LoginRateLimiter.ACQUIRED, limiter.tryAcquire("key-" + i));
+            limiter.complete("key-" + i);
+        }
+
+        for (int i = 3; i < 100; i++) {
+            assertEquals(LoginRateLimiter.THROTTLED, limiter.tryAcquire("key-" + i), "No slot can be evicted.");
+            limiter.recordFailure("key-" + i);
+        }
+        assertEquals(0, limiter.remaining("key-50"));
+        assertTrue(limiter.isThrottled("victim"), "Filling the group does not reset the victim.");
+        assertEquals(2, limiter.remaining("key-0"));
+
+        now.addAndGet(RECOVERY.toNanos());
+        assertEquals(LoginRateLimiter.ACQUIRED, limiter.tryAcquire("key-4"), "Takes a recovered slot.");
+        assertEquals(1, limiter.remaining("victim"), "The victim recovers one failure at a time.");
+    }
+
+    /**
+     * Tests that invalid settings are rejected.
+     */
+    @Test
+    void testInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new LoginRateLimiter(0, RECOVERY, 4, now::get));
+        assertThrows(IllegalArgumentException.class, () -> new LoginRateLimiter(3, Duration.ZERO, 4, now::get));
+    }
+}
@@ -0,0 +1,209 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Unit tests for the MappedHistoryStore class and mapped History instances.
+ */
+class MappedHistoryStoreTest {
+    private static final int SEGMENT_SHIFT = 3; // 8 entries per segment
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Tests that appends roll over into new segments and read back by position.
+     */
+    @Test
+    void testSegmentRollover() throws IOException {
+        MappedHistoryStore store = new MappedHistoryStore(tempDir, SEGMENT_SHIFT);
+        for (int i = 0; i < 20; i++) {
+            store.append(1000L + i, TransactionType.DEPOSIT.code(), i * 100L);
+        }
+
+        assertEquals(20, store.size());
+        assertEquals(3, store.segmentCount());
+        assertEquals(1015L, store.timestamp(15));
+        assertEquals(1500L, store.amount(15));
+        assertEquals(TransactionType.DEPOSIT.code(), store.type(15));
+        store.close();
+    }
+
+    /**
+     * Tests that entries survive reopening the store, and that appends continue after them.
+     */
+    @Test
+    void testReopenKeepsEntries() throws IOException {
+        MappedHistoryStore store = new MappedHistoryStore(tempDir, SEGMENT_SHIFT);
+        for (int i = 0; i < 10; i++) {
+            store.append(i, i % 2 == 0 ? TransactionType.DEPOSIT.code() : TransactionType.WITHDRAW.code(), i);
+        }
+        store.close();
+
+        MappedHistoryStore reopened = new MappedHistoryStore(tempDir, SEGMENT_SHIFT);
+        assertEquals(10, reopened.size());
+        assertEquals(TransactionType.WITHDRAW.code(), reopened.type(9));
+        reopened.append(10, TransactionType.DEPOSIT.code(), 10);
+        assertEquals(11, reopened.size());
+        assertEquals(10L, reopened.amount(10));
+        reopened.close();
+    }
+
+    /**
+     * Tests that a sealed segment exactly at a boundary is followed by a new segment after reopening.
+     */
+    @Test
+    void testReopenAtSegmentBoundary() throws IOException {
+        MappedHistoryStore store = new MappedHistoryStore(tempDir, SEGMENT_SHIFT);
+        for (int i = 0; i < 8; i++) {
+            store.append(i, TransactionType.DEPOSIT.code(), i);
+        }
+        store.close();
+
+        MappedHistoryStore reopened = new MappedHistoryStore(tempDir, SEGMENT_SHIFT);
+        reopened.append(8, TransactionType.DEPOSIT.code(), 8);
+        assertEquals(2, reopened.segmentCount());
+        assertEquals(8L, reopened.amount(8));
+        reopened.close();
+    }
+
+    /**
+     * Tests that a missing segment in the middle of the sequence is reported.
+     */
+    @Test
+    void testMissingSegmentIsRejected() throws IOException {
+        MappedHistoryStore store = new MappedHistoryStore(tempDir, SEGMENT_SHIFT);
+        for (int i = 0; i < 20; i++) {
+            store.append(i, TransactionType.DEPOSIT.code(), i);
+        }
+        store.close();
+        Files.delete(tempDir.resolve("segment-00000001.dat"));
+
+        assertThrows(IOException.class, () -> new MappedHistoryStore(tempDir, SEGMENT_SHIFT));
+    }
+
+    /**
+     * Tests that a mapped History renders, filters and persists like a heap History.
+     */
+    @Test
+    void testMappedHistory() throws IOException {
+        try (History history = new History(new MappedHistoryStore(tempDir, SEGMENT_SHIFT))) {
+            history.recordTransaction("deposit", 100.0);
+            history.recordTransaction("withdraw", 40.0);
+            history.recordTransaction("deposit", 5.0);
+        }
+
+        try (History reopened = new History(new MappedHistoryStore(tempDir, SEGMENT_SHIFT))) {
+            assertTrue(reopened.isPersistent());
+            List<String> deposits = reopened.getFilteredHistory("deposit");
+            assertEquals(2, deposits.size());
+            assertTrue(deposits.get(1).endsWith("Deposited: $5.00"));
+            reopened.recordTransaction("withdraw", 1.0);
+            assertEquals(2, reopened.getFilteredHistory("withdraw").size());
+            assertTrue(reopened.getFormattedHistory().endsWith("Withdrawn: $1.00"));
+        }
+    }
+
+    /**
+     * Tests that a bulk append spanning several segments reads back like single appends.
+     */
+    @Test
+    void testAppendAllAcrossSegments() throws IOException {
+        MappedHistoryStore store = new MappedHistoryStore(tempDir, SEGMENT_SHIFT);
+        store.append(1L, TransactionType.DEPOSIT.code(), 1L);
+        byte[] types = new byte[20];
+        long[] amounts = new long[20];
+        for (int i = 0; i < 20; i++) {
+            types[i] = i % 2 == 0 ? TransactionType.DEPOSIT.code() : TransactionType.WITHDRAW.code();
+            amounts[i] = 100L + i;
+        }
+        store.appendAll(2L, types, amounts, 20);
+        store.close();
+
+        MappedHistoryStore reopened = new MappedHistoryStore(tempDir, SEGMENT_SHIFT);
+        assertEquals(21, reopened.size());
+        assertEquals(3, reopened.segmentCount());
+        assertEquals(119L, reopened.amount(20));
+        assertEquals(TransactionType.WITHDRAW.code(), reopened.type(20));
+        assertEquals(2L, reopened.timestamp(8));
+        reopened.close();
+    }
+
+    /**
+     * Tests that entry links survive a reopen next to the type code, and unlinked entries read as 0.
+     */
+    @Test
+    void testLinks() throws IOException {
+        long link = History.MAX_LINK - 1;
+        MappedHistoryStore store = new MappedHistoryStore(tempDir, SEGMENT_SHIFT);
+        store.append(1L, TransactionType.DEPOSIT.code(), 100L);
+        store.append(2L, TransactionType.TRANSFER_OUT.code(), 200L, link);
+        store.close();
+
+        MappedHistoryStore reopened = new MappedHistoryStore(tempDir, SEGMENT_SHIFT);
+        assertEquals(0L, reopened.link(0));
+        assertEquals(link, reopened.link(1));
+        assertEquals(TransactionType.TRANSFER_OUT.code(), reopened.type(1));
+        assertEquals(200L, reopened.amount(1));
+        reopened.close();
+    }
+
+    /**
+     * Tests that truncating deletes later segments, reopens a sealed segment for writing and survives a reopen.
+     */
+    @Test
+    void testTruncate() throws IOException {
+        MappedHistoryStore store = new MappedHistoryStore(tempDir, SEGMENT_SHIFT);
+        for (int i = 0; i < 20; i++) {
+            store.append(i, TransactionType.DEPOSIT.code(), i);
+        }
+        store.truncate(12);
+        assertEquals(12, store.size());
+        assertEquals(2, store.segmentCount());
+        assertFalse(Files.exists(tempDir.resolve("segment-00000002.dat")));
+
+        store.truncate(5); // Into the sealed first segment
+        store.append(50, TransactionType.WITHDRAW.code(), 50);
+        store.close();
+
+        MappedHistoryStore reopened = new MappedHistoryStore(tempDir, SEGMENT_SHIFT);
+        assertEquals(6, reopened.size());
+        assertEquals(1, reopened.segmentCount());
+        assertEquals(4L, reopened.amount(4));
+        assertEquals(TransactionType.WITHDRAW.code(), reopened.type(5));
+        reopened.truncate(0);
+        assertEquals(0, reopened.segmentCount());
+        reopened.append(1, TransactionType.DEPOSIT.code(), 1);
+        assertEquals(1, reopened.size());
+        reopened.close();
+    }
+
+    /**
+     * Crash-recovery test: a segment whose creation was cut off before it was renamed into place is discarded.
+     */
+    @Test
+    void testUnfinishedSegmentIsDiscarded() throws IOException {
+        MappedHistoryStore store = new MappedHistoryStore(tempDir, SEGMENT_SHIFT);
+        for (int i = 0; i < 8; i++) {
+            store.append(i, TransactionType.DEPOSIT.code(), i);
+        }
+        store.close();
+        Path unfinished = tempDir.resolve("segment-00000001.tmp");
+        Files.write(unfinished, new byte[64 + 8 * 24]); // Sized, but the header was never written
+
+        MappedHistoryStore reopened = new MappedHistoryStore(tempDir, SEGMENT_SHIFT);
+        assertEquals(8, reopened.size());
+        assertFalse(Files.exists(unfinished));
+        reopened.append(8, TransactionType.DEPOSIT.code(), 8);
+        assertEquals(2, reopened.segmentCount());
+        reopened.close();
+    }
+}
@@ -0,0 +1,66 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Unit tests for the Metrics class.
+ */
+class MetricsTest {
+    /**
+     * Tests that records are counted per operation, with failures counted separately.
+     */
+    @Test
+    void testRecord() {
+        Metrics metrics = new Metrics();
+        long start = Metrics.start();
+        metrics.record(Metrics.Operation.DEPOSIT, start, true);
+        metrics.record(Metrics.Operation.DEPOSIT, start, false);
+        metrics.record(Metrics.Operation.LOGIN_FAILURE, start, true);
+
+        OperationStats deposits = metrics.getStats(Metrics.Operation.DEPOSIT);
+        assertEquals("deposit", deposits.getOperation());
+        assertEquals(2, deposits.getCount());
+        assertEquals(1, deposits.getFailures());
+        assertTrue(deposits.getMaxMicros() >= deposits.getP99Micros());
+        assertEquals(1, metrics.getStats(Metrics.Operation.LOGIN_FAILURE).getCount());
+        assertEquals(0, metrics.getStats(Metrics.Operation.WITHDRAW).getCount());
+    }
+
+    /**
+     * Tests that the text report has a header and one line per operation.
+     */
+    @Test
+    void testReport() {
+        Metrics metrics = new Metrics();
+        metrics.record(Metrics.Operation.WITHDRAW, Metrics.start(), true);
+
+        String[] lines = metrics.getReport().split("\\R");
+        assertEquals(Metrics.Operation.values().length + 1, lines.length);
+        assertTrue(lines[0].contains("p99_us"));
+        assertTrue(lines[2].matches("withdraw\\s+1\\s+0\\s.*"), lines[2]);
+    }
+
+    /**
+     * Tests that the global metrics can be read over JMX.
+     */
+    @Test
+    void testMBean() throws Exception {
+        Metrics.registerMBean();
+        Metrics.registerMBean(); // Registering twice is harmless
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+
+        CompositeData[] operations = (CompositeData[]) server.getAttribute(name, "Operations");
+        assertEquals(Metrics.Operation.values().length, operations.length);
+        assertEquals("deposit", operations[0].get("operation"));
+        assertTrue(operations[0].containsKey("p99Micros"));
+        assertTrue(((String) server.getAttribute(name, "Report")).startsWith("operation"));
+    }
+}
@@ -0,0 +1,69 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the Money class.
+ */
+class MoneyTest {
+
+    /**
+     * Tests conversion from doubles to cents and back.
+     */
+    @Test
+    void testDoubleConversion() {
+        assertEquals(50000L, Money.fromDouble(500.0));
+        assertEquals(30L, Money.fromDouble(0.1 + 0.2), "Float drift should round to the nearest cent.");
+        assertEquals(12.34, Money.toDouble(1234L), 0.0);
+    }
+
+    /**
+     * Tests that amounts that do not fit in a long in cents are rejected instead of saturating.
+     */
+    @Test
+    void testDoubleConversionOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> Money.fromDouble(1e17));
+        assertThrows(IllegalArgumentException.class, () -> Money.fromDouble(-1e17));
+        assertThrows(IllegalArgumentException.class, () -> Money.fromDouble(Double.NaN));
+        assertThrows(IllegalArgumentException.class, () -> Money.fromDouble(Double.POSITIVE_INFINITY));
+        assertEquals(0L, Money.requestedCents(1e17));
+        assertEquals(0L, Money.requestedCents(-5.0));
+        assertEquals(500L, Money.requestedCents(5.0));
+    }
+
+    /**
+     * Tests parsing decimal amounts without floating point.
+     */
+    @Test
+    void testParse() {
+        assertEquals(1200L, Money.parse("12"));
+        assertEquals(1250L, Money.parse("12.5"));
+        assertEquals(1205L, Money.parse("12.05"));
+        assertEquals(-75L, Money.parse("-0.75"));
+        assertEquals(50L, Money.parse(".5"));
+    }
+
+    /**
+     * Tests that malformed amounts are rejected.
+     */
+    @Test
+    void testParseInvalid() {
+        assertThrows(NumberFormatException.class, () -> Money.parse(""));
+        assertThrows(NumberFormatException.class, () -> Money.parse("1.234"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("12a"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("-"));
+    }
+
+    /**
+     * Tests formatting cents with two fraction digits.
+     */
+    @Test
+    void testFormat() {
+        assertEquals("500.00", Money.format(50000L));
+        assertEquals("0.05", Money.format(5L));
+        assertEquals("-12.30", Money.format(-1230L));
+        assertEquals("-92233720368547758.08", Money.format(Long.MIN_VALUE));
+    }
+}
@@ -0,0 +1,259 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Integration tests for the NioATMServer class, driven over real loopback sockets.
+ */
+class NioATMServerTest {
+    private Ledger ledger;
+    private Authenticator authenticator;
+    private NioATMServer server;
+
+    /**
+     * Starts a server with two I/O threads and two accounts.
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        ledger = new Ledger();
+        ledger.openAccount("1234567", 100.0);
+        ledger.openAccount("7654321", 0.0);
+        authenticator = new Authenticator();
+        authenticator.addUser("7654321", "secret");
+        server = new NioATMServer(ledger, authenticator, 2);
+        server.start(0);
+    }
+
+    /**
+     * Stops the server.
+     */
+    @AfterEach
+    void tearDown() throws IOException {
+        server.close();
+        authenticator.close();
+    }
+
+    /**
+     * Tests every operation of the protocol, one request at a time.
+     */
+    @Test
+    void testOperations() throws IOException {
+        try (Client client = new Client()) {
+            assertEquals("ERR AUTH", client.call("BAL"));
+            assertEquals("ERR DENIED", client.call("LOGIN 1234567 wrong"));
+            assertEquals("OK", client.call("LOGIN 1234567 abcdef"));
+            assertEquals("OK 125.50", client.call("DEP 25.5"));
+            assertEquals("OK 100.50", client.call("WDR 25"));
+            assertEquals("ERR FUNDS", client.call("WDR 1000"));
+            assertEquals("ERR AMOUNT", client.call("DEP -1"));
+            assertEquals("ERR AMOUNT", client.call("DEP 1.234"));
+            assertEquals("OK 100.50", client.call("BAL"));
+            assertEquals("OK 2", client.call("HIST"));
+            assertTrue(client.readLine().endsWith("Deposited: $25.50"));
+            assertTrue(client.readLine().endsWith("Withdrawn: $25.00"));
+            assertEquals("ERR DENIED", client.call("PWD wrong newpass"));
+            assertEquals("OK", client.call("PWD abcdef newpass"));
+            assertEquals("ERR SYNTAX", client.call("FOO"));
+            assertEquals("BYE", client.call("EXIT"));
+            assertNull(client.readLine(), "The server should close the connection after EXIT.");
+        }
+        assertTrue(authenticator.authenticate("1234567", "newpass"));
+    }
+
+    /**
+     * Tests that requests pipelined behind a login are answered in order once the login completes.
+     */
+    @Test
+    void testPipelinedRequests() throws IOException {
+        try (Client client = new Client()) {
+            client.send("LOGIN 7654321 secret\nDEP 10\nDEP 5\r\nBAL\nEXIT\n");
+            assertEquals("OK", client.readLine());
+            assertEquals("OK 10.00", client.readLine());
+            assertEquals("OK 15.00", client.readLine());
+            assertEquals("OK 15.00", client.readLine());
+            assertEquals("BYE", client.readLine());
+        }
+    }
+
+    /**
+     * Tests that a request split across several writes is reassembled.
+     */
+    @Test
+    void testPartialRequest() throws Exception {
+        try (Client client = new Client()) {
+            client.send("LOG");
+            Thread.sleep(50);
+            client.send("IN 7654321 sec");
+            Thread.sleep(50);
+            client.send("ret\n");
+            assertEquals("OK", client.readLine());
+        }
+    }
+
+    /**
+     * Tests that an overlong request is rejected and the connection closed.
+     */
+    @Test
+    void testOverlongRequest() throws IOException {
+        try (Client client = new Client()) {
+            client.send("X".repeat(5000));
+            assertEquals("ERR TOOLONG", client.readLine());
+            assertNull(client.readLine());
+        }
+    }
+
+    /**
+     * Tests many concurrent terminals multiplexed on the two I/O threads.
+     */
+    @Test
+    void testManyConcurrentTerminals() throws Exception {
+        int terminals = 200;
+        int depositsPerTerminal = 20;
+        List<Client> clients = new ArrayList<>();
+        try {
+            for (int i = 0; i < terminals; i++) {
+                Client client = new Client();
+                client.send("LOGIN 7654321 secret\n");
+                clients.add(client);
+            }
+            for (Client client : clients) {
+                assertEquals("OK", client.readLine());
+                client.send("DEP 1\n".repeat(depositsPerTerminal));
+            }
+            for (Client client : clients) {
+                for (int i = 0; i < depositsPerTerminal; i++) {
+                    assertTrue(client.readLine().startsWith("OK "));
+                }
+            }
+            assertEquals(terminals, server.getActiveConnections());
+        } finally {
+            for (Client client : clients) {
+                client.close();
+            }
+        }
+        assertEquals(terminals * depositsPerTerminal * 100L, ledger.getAccount("7654321").getBalanceCents());
+    }
+
+    /**
+     * Tests that a deposit blocked in the ledger does not hold up other terminals on the same I/O thread.
+     */
+    @Test
+    void testBlockedDepositLeavesLoopFree() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Ledger blocking = new Ledger() {
+            @Override
+            boolean depositCents(String client, String account, long amountCents, long requestId) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.depositCents(client, account, amountCents, requestId);
+            }
+        };
+        blocking.openAccount("1234567", 100.0);
+        server.close();
+        server = new NioATMServer(blocking, authenticator, 1);
+        server.start(0);
+        try (Client first = new Client(); Client second = new Client()) {
+            assertEquals("OK", first.call("LOGIN 1234567 abcdef"));
+            assertEquals("OK", second.call("LOGIN 1234567 abcdef"));
+            first.send("DEP 1 #7\n");
+            entered.await();
+
+            assertEquals("OK 100.00", second.call("BAL"), "The I/O thread is not blocked by the deposit.");
+            assertEquals("OK 0", second.call("HIST"));
+            release.countDown();
+            assertEquals("OK 101.00", first.readLine());
+        }
+    }
+
+    /**
+     * Tests that a terminal that disconnects without EXIT is logged out.
+     */
+    @Test
+    void testDisconnectLogsOut() throws Exception {
+        try (Client client = new Client()) {
+            assertEquals("OK", client.call("LOGIN 1234567 abcdef"));
+            assertEquals(1, authenticator.getSessionCache().size());
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (authenticator.getSessionCache().size() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, authenticator.getSessionCache().size());
+    }
+
+    /**
+     * Tests that connections from the same host are separate terminals: a request id is scoped
+     * to its connection, and one connection's failed logins do not lock out another.
+     */
+    @Test
+    void testTerminalsArePerConnection() throws IOException {
+        try (Client first = new Client(); Client second = new Client()) {
+            for (int i = 0; i < Authenticator.MAX_ATTEMPTS; i++) {
+                assertEquals("ERR DENIED", first.call("LOGIN 999999" + i + " wrong"));
+            }
+            assertEquals("OK", second.call("LOGIN 7654321 secret"));
+            assertEquals("OK 5.00", second.call("DEP 5 #7"));
+            assertEquals("OK 5.00", second.call("DEP 5 #7"), "A retry on the same connection is not applied again.");
+            assertEquals("ERR LOCKED", first.call("LOGIN 1234567 abcdef"), "Only the first connection is locked.");
+        }
+        try (Client third = new Client()) {
+            assertEquals("OK", third.call("LOGIN 7654321 secret"));
+            assertEquals("OK 10.00", third.call("DEP 5 #7"), "Another connection's id is its own.");
+        }
+    }
+
+    /**
+     * A blocking test terminal.
+     */
+    private final class Client implements AutoCloseable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final OutputStream out;
+
+        Client() throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            out = socket.getOutputStream();
+        }
+
+        void send(String text) throws IOException {
+            out.write(text.getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        }
+
+        String readLine() throws IOException {
+            return in.readLine();
+        }
+
+        String call(String request) throws IOException {
+            send(request + "\n");
+            return readLine();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+/**
+ * Unit tests for the PasswordHasher class.
+ */
+class PasswordHasherTest {
+    private final PasswordHasher hasher = new PasswordHasher(1000);
+
+    /**
+     * Tests that a hash verifies the right password and rejects others.
+     */
+    @Test
+    void testVerify() {
+        PasswordHasher.Hash hash = hasher.hash("abcdef");
+        assertTrue(hasher.verify("abcdef", hash));
+        assertFalse(hasher.verify("abcdeg", hash));
+        assertFalse(hasher.verify("", hash));
+    }
+
+    /**
+     * Tests that the same password hashed twice gets different salts, and both hashes verify.
+     */
+    @Test
+    void testHashesAreSalted() {
+        PasswordHasher.Hash first = hasher.hash("abcdef");
+        PasswordHasher.Hash second = hasher.hash("abcdef");
+        assertFalse(Arrays.equals(first.salt(), second.salt()));
+        assertEquals(1000, first.iterations());
+        assertTrue(hasher.verify("abcdef", first));
+        assertTrue(hasher.verify("abcdef", second));
+    }
+
+    /**
+     * Tests that a hash keeps verifying with its own iteration count after the configured count changes.
+     */
+    @Test
+    void testVerifyUsesStoredIterations() {
+        PasswordHasher.Hash hash = hasher.hash("abcdef");
+        assertTrue(new PasswordHasher(2000).verify("abcdef", hash));
+    }
+
+    /**
+     * Tests that a non-positive iteration count is rejected.
+     */
+    @Test
+    void testInvalidIterations() {
+        assertThrows(IllegalArgumentException.class, () -> new PasswordHasher(0));
+    }
+}
@@ -0,0 +1,215 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit and concurrency tests for the RequestDeduplicator class.
+ */
+class RequestDeduplicatorTest {
+    private final TestClock clock = new TestClock(Instant.parse("2024-01-01T00:00:00Z"), ZoneOffset.UTC);
+
+    /**
+     * Tests that a retried request returns the first result without running again.
+     */
+    @Test
+    void testReplayReturnsFirstResult() {
+        RequestDeduplicator requests = new RequestDeduplicator(1_000, Duration.ofMinutes(1), clock);
+        AtomicInteger runs = new AtomicInteger();
+
+        assertTrue(requests.execute(7, () -> runs.incrementAndGet() > 0));
+        assertTrue(requests.execute(7, () -> runs.incrementAndGet() < 0));
+        assertFalse(requests.execute(8, () -> runs.incrementAndGet() < 0));
+        assertFalse(requests.execute(8, () -> runs.incrementAndGet() > 0));
+
+        assertEquals(2, runs.get());
+        assertEquals(2, requests.getReplayCount());
+        assertEquals(2, requests.size());
+        assertThrows(IllegalArgumentException.class, () -> requests.execute(0, () -> true));
+    }
+
+    /**
+     * Tests that a request that throws is forgotten, so its retry runs.
+     */
+    @Test
+    void testFailedRequestIsRetried() {
+        RequestDeduplicator requests = new RequestDeduplicator(1_000, Duration.ofMinutes(1), clock);
+
+        assertThrows(IllegalArgumentException.class, () -> requests.execute(42, () -> {
+            throw new IllegalArgumentException("Unknown account");
+        }));
+        assertTrue(requests.execute(42, () -> true));
+        assertTrue(requests.execute(42, () -> false));
+        assertEquals(1, requests.getReplayCount());
+    }
+
+    /**
+     * Tests that results expire after their time to live.
+     */
+    @Test
+    void testTimeToLive() {
+        RequestDeduplicator requests = new RequestDeduplicator(1_000, Duration.ofSeconds(30), clock);
+        requests.execute(1, () -> true);
+        clock.advance(Duration.ofSeconds(20));
+        requests.execute(2, () -> true);
+        clock.advance(Duration.ofSeconds(20));
+
+        assertFalse(requests.execute(1, () -> false), "Id 1 expired and runs again.");
+        assertTrue(requests.execute(2, () -> false), "Id 2 is still remembered.");
+    }
+
+    /**
+     * Tests that the table never holds more ids than its capacity and forgets the oldest first.
+     */
+    @Test
+    void testCapacityEvictsOldest() {
+        RequestDeduplicator requests = new RequestDeduplicator(16 * 64, Duration.ofDays(1), clock);
+        for (long id = 1; id <= 100_000; id++) {
+            requests.execute(id, () -> true);
+        }
+
+        assertTrue(requests.size() <= 16 * 64);
+        assertTrue(requests.size() > 16 * 60, "Every segment fills up.");
+        assertTrue(requests.execute(100_000, () -> false), "The newest ids are remembered.");
+        assertFalse(requests.execute(1, () -> false), "The oldest ids are forgotten.");
+    }
+
+    /**
+     * Tests that ids are scoped and that reusing an id for a different request is rejected.
+     */
+    @Test
+    void testScopesAndFingerprints() {
+        RequestDeduplicator requests = new RequestDeduplicator(1_000, Duration.ofMinutes(1), clock);
+        long first = RequestDeduplicator.hash("1111111");
+        long second = RequestDeduplicator.hash("2222222");
+
+        assertTrue(requests.execute(first, 1, 10, () -> true));
+        assertFalse(requests.execute(second, 1, 10, () -> false), "The same id in another scope runs.");
+        assertTrue(requests.execute(first, 1, 10, () -> false));
+        assertThrows(IllegalArgumentException.class, () -> requests.execute(first, 1, 11, () -> false));
+        assertEquals(2, requests.size());
+        assertEquals(1, requests.getReplayCount());
+    }
+
+    /**
+     * Tests that a running request is never evicted, even when its segment is full.
+     */
+    @Test
+    void testPendingRequestIsNotEvicted() throws InterruptedException {
+        RequestDeduplicator requests = new RequestDeduplicator(16, Duration.ofDays(1), clock);
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread first = new Thread(() -> requests.execute(99, () -> {
+            runs.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        }));
+        first.start();
+        started.await();
+        for (long id = 1_000; id < 2_000; id++) {
+            requests.execute(id, () -> true);
+        }
+        AtomicBoolean duplicateResult = new AtomicBoolean();
+        Thread duplicate = new Thread(() -> duplicateResult.set(requests.execute(99, () -> {
+            runs.incrementAndGet();
+            return false;
+        })));
+        duplicate.start();
+        Thread.sleep(50);
+        assertTrue(duplicate.isAlive(), "The duplicate waits for the first request.");
+        for (long id = 2_000; id < 3_000; id++) {
+            requests.execute(id, () -> true); // Fills the table while the duplicate waits
+        }
+        release.countDown();
+        first.join();
+        duplicate.join();
+
+        assertEquals(1, runs.get(), "The running request was still known to its duplicate.");
+        assertTrue(duplicateResult.get());
+    }
+
+    /**
+     * Tests that an expired id claimed again moves behind newer ids, so they still expire on time.
+     */
+    @Test
+    void testReclaimedIdMovesToTail() {
+        RequestDeduplicator requests = new RequestDeduplicator(1_000, Duration.ofSeconds(30), clock);
+        requests.execute(1, () -> true);
+        clock.advance(Duration.ofSeconds(20));
+        requests.execute(2, () -> true);
+        clock.advance(Duration.ofSeconds(20));
+        requests.execute(1, () -> true); // Expired, claimed again
+        clock.advance(Duration.ofSeconds(20));
+
+        assertFalse(requests.execute(2, () -> false), "Id 2 expired behind the re-claimed id.");
+        assertTrue(requests.execute(1, () -> false), "Id 1 is remembered from its second run.");
+    }
+
+    /**
+     * Tests that many ids survive growth and eviction with their results intact.
+     */
+    @Test
+    void testManyIds() {
+        RequestDeduplicator requests = new RequestDeduplicator(1 << 20, Duration.ofDays(1), clock);
+        for (long id = 1; id <= 500_000; id++) {
+            long value = id * 31;
+            requests.execute(value, () -> value % 3 == 0);
+        }
+        for (long id = 1; id <= 500_000; id++) {
+            long value = id * 31;
+            assertEquals(value % 3 == 0, requests.execute(value, () -> value % 3 != 0));
+        }
+        assertEquals(500_000, requests.size());
+    }
+
+    /**
+     * Tests that concurrent duplicates wait for the running request and run it only once.
+     */
+    @Test
+    void testConcurrentDuplicatesRunOnce() throws InterruptedException {
+        RequestDeduplicator requests = new RequestDeduplicator();
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean duplicateResult = new AtomicBoolean();
+        Thread first = new Thread(() -> requests.execute(99, () -> {
+            runs.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        }));
+        first.start();
+        started.await();
+        Thread duplicate = new Thread(() -> duplicateResult.set(requests.execute(99, () -> {
+            runs.incrementAndGet();
+            return false;
+        })));
+        duplicate.start();
+        Thread.sleep(50);
+        assertTrue(duplicate.isAlive(), "The duplicate waits for the first request.");
+        release.countDown();
+        first.join();
+        duplicate.join();
+
+        assertEquals(1, runs.get());
+        assertTrue(duplicateResult.get());
+    }
+}
@@ -1,6 +1,7 @@
 package atm;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -53,4 +54,32 @@ class SecurityTest {
     void testChangePasswordToSameValue() {
         assertFalse(security.changePassword("1234567", "abcdef", "abcdef"));
     }
+
+    /**
+     * Tests that a password change within a session checks the old password against the session
+     * instead of authenticating again.
+     */
+    @Test
+    void testChangePasswordWithSession() {
+        Authenticator spied = spy(authenticator);
+        Security sessionSecurity = new Security(spied);
+        String token = spied.login("1234567", "abcdef");
+        clearInvocations(spied);
+
+        assertTrue(sessionSecurity.changePassword(token, "1234567", "abcdef", "newpass"));
+        verify(spied, never()).authenticate(anyString(), anyString());
+        assertTrue(spied.validateSession(token, "1234567"), "The session should survive its own password change.");
+        assertTrue(spied.authenticate("1234567", "newpass"));
+    }
+
+    /**
+     * Tests that a wrong old password within a session still counts as a failed attempt.
+     */
+    @Test
+    void testChangePasswordWithSessionAndIncorrectOldPassword() {
+        String token = authenticator.login("1234567", "abcdef");
+
+        assertFalse(security.changePassword(token, "1234567", "wrongpass", "newpass"));
+        assertEquals(Authenticator.MAX_ATTEMPTS - 1, authenticator.getAttemptsLeft("1234567"));
+    }
 }
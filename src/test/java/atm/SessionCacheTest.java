@@ -0,0 +1,92 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unit tests for the SessionCache class.
+ */
+class SessionCacheTest {
+    private final AtomicLong now = new AtomicLong(); // Fake clock, in nanoseconds
+
+    private static SessionCache.Session session(String account) {
+        return new SessionCache.Session(account, new byte[0], 0);
+    }
+
+    /**
+     * Tests that lookups are counted as hits and misses.
+     */
+    @Test
+    void testHitsAndMisses() {
+        SessionCache cache = new SessionCache(4, Duration.ofSeconds(10), now::get);
+        cache.put("t1", session("a"));
+
+        assertEquals("a", cache.get("t1").account);
+        assertNull(cache.get("unknown"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    /**
+     * Tests that a full cache evicts the least recently used session.
+     */
+    @Test
+    void testLeastRecentlyUsedEviction() {
+        SessionCache cache = new SessionCache(2, Duration.ofSeconds(10), now::get);
+        cache.put("t1", session("a"));
+        cache.put("t2", session("b"));
+        cache.get("t1"); // t2 is now least recently used
+        cache.put("t3", session("c"));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNotNull(cache.get("t1"));
+        assertNull(cache.get("t2"));
+        assertNotNull(cache.get("t3"));
+    }
+
+    /**
+     * Tests that sessions expire after being idle for the time-to-live, and that lookups extend it.
+     */
+    @Test
+    void testIdleExpiry() {
+        SessionCache cache = new SessionCache(4, Duration.ofSeconds(10), now::get);
+        cache.put("t1", session("a"));
+        cache.put("t2", session("b"));
+
+        now.set(Duration.ofSeconds(8).toNanos());
+        assertNotNull(cache.get("t1"));
+        now.set(Duration.ofSeconds(12).toNanos());
+        assertNotNull(cache.get("t1"), "A used session should stay alive.");
+        assertNull(cache.get("t2"), "An idle session should expire.");
+        assertEquals(1, cache.getEvictions());
+        assertEquals(1, cache.size());
+    }
+
+    /**
+     * Tests that removing a session is not counted as an eviction.
+     */
+    @Test
+    void testRemove() {
+        SessionCache cache = new SessionCache(4, Duration.ofSeconds(10), now::get);
+        cache.put("t1", session("a"));
+        cache.remove("t1");
+
+        assertNull(cache.get("t1"));
+        assertEquals(0, cache.getEvictions());
+    }
+
+    /**
+     * Tests that invalid settings are rejected.
+     */
+    @Test
+    void testInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new SessionCache(0, Duration.ofSeconds(1), now::get));
+        assertThrows(IllegalArgumentException.class, () -> new SessionCache(1, Duration.ZERO, now::get));
+    }
+}
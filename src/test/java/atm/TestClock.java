@@ -0,0 +1,52 @@
+package atm;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+
+/**
+ * The TestClock class is a deterministic Clock for tests: it stands still until advanced.
+ */
+final class TestClock extends Clock {
+    private final ZoneId zone;
+    private volatile long millis; // Current time in epoch milliseconds
+
+    /**
+     * Constructor creates a clock stopped at the given instant.
+     * @param start The initial time.
+     * @param zone The zone reported to users of the clock.
+     */
+    TestClock(Instant start, ZoneId zone) {
+        this.millis = start.toEpochMilli();
+        this.zone = zone;
+    }
+
+    /**
+     * Moves the clock forward.
+     * @param duration The time to add.
+     */
+    void advance(Duration duration) {
+        millis += duration.toMillis();
+    }
+
+    @Override
+    public long millis() {
+        return millis;
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(millis);
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return new TestClock(instant(), zone);
+    }
+}
@@ -0,0 +1,139 @@
+package atm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the WireProtocol class, without any network transport.
+ */
+class WireProtocolTest {
+    private Authenticator authenticator;
+    private WireProtocol protocol;
+    private WireProtocol.Session session;
+
+    /**
+     * Sets up a protocol over a ledger with the default account.
+     */
+    @BeforeEach
+    void setUp() {
+        Ledger ledger = new Ledger();
+        ledger.openAccount("1234567", 10.0);
+        authenticator = new Authenticator();
+        protocol = new WireProtocol(ledger, authenticator, Runnable::run);
+        session = new WireProtocol.Session("terminal-1");
+    }
+
+    /**
+     * Shuts down the authenticator.
+     */
+    @AfterEach
+    void tearDown() {
+        authenticator.close();
+    }
+
+    /**
+     * Sends one request and returns its reply, waiting for pending replies.
+     */
+    private String call(String request) {
+        StringBuilder reply = new StringBuilder();
+        if (protocol.handle(session, request, reply) == WireProtocol.Reply.PENDING) {
+            return session.pendingReply().join();
+        }
+        return reply.toString();
+    }
+
+    /**
+     * Tests that logins and password changes are reported as pending and complete with their reply.
+     */
+    @Test
+    void testPendingReplies() {
+        StringBuilder reply = new StringBuilder();
+        assertEquals(WireProtocol.Reply.PENDING, protocol.handle(session, "LOGIN 1234567 abcdef", reply));
+        assertEquals("", reply.toString());
+        assertEquals("OK\n", session.pendingReply().join());
+        assertEquals("OK\n", call("PWD abcdef newpass"));
+    }
+
+    /**
+     * Tests that malformed requests are rejected.
+     */
+    @Test
+    void testSyntaxErrors() {
+        assertEquals("ERR SYNTAX\n", call(""));
+        assertEquals("ERR SYNTAX\n", call("LOGIN 1234567"));
+        assertEquals("ERR SYNTAX\n", call("bal"));
+        assertEquals("OK\n", call("LOGIN 1234567 abcdef"));
+        assertEquals("ERR SYNTAX\n", call("DEP"));
+        assertEquals("ERR SYNTAX\n", call("DEP 1 2"));
+        assertEquals("ERR AMOUNT\n", call("DEP 99999999999999999999"));
+    }
+
+    /**
+     * Tests the replies for locked and unknown accounts.
+     */
+    @Test
+    void testLoginFailures() {
+        authenticator.addUser("7654321", "secret");
+        assertEquals("ERR NOACCOUNT\n", call("LOGIN 7654321 secret"));
+        for (int i = 1; i < Authenticator.MAX_ATTEMPTS; i++) {
+            assertEquals("ERR DENIED\n", call("LOGIN 1234567 wrong"));
+        }
+        assertEquals("ERR LOCKED\n", call("LOGIN 1234567 wrong"));
+        assertEquals("ERR AUTH\n", call("BAL"));
+    }
+
+    /**
+     * Tests that a connection whose failed logins used up its attempts is locked and closed,
+     * even for an account that is not locked.
+     */
+    @Test
+    void testConnectionAttemptsRunOut() {
+        for (int i = 0; i < Authenticator.MAX_ATTEMPTS; i++) {
+            authenticator.addUser("user-" + i, "secret");
+            assertEquals("ERR DENIED\n", call("LOGIN user-" + i + " wrong"));
+        }
+        StringBuilder reply = new StringBuilder();
+        assertEquals(WireProtocol.Reply.CLOSE, protocol.handle(session, "LOGIN 1234567 abcdef", reply));
+        assertEquals("ERR LOCKED\n", reply.toString());
+        assertTrue(authenticator.hasAttemptsLeft("1234567"), "The attempt is refused before any password check.");
+
+        session = new WireProtocol.Session("terminal-1");
+        assertEquals("OK\n", call("LOGIN 1234567 abcdef"), "A new connection starts with fresh attempts.");
+    }
+
+    /**
+     * Tests that EXIT closes the session.
+     */
+    @Test
+    void testExit() {
+        call("LOGIN 1234567 abcdef");
+        StringBuilder reply = new StringBuilder();
+        assertEquals(WireProtocol.Reply.CLOSE, protocol.handle(session, "EXIT", reply));
+        assertEquals("BYE\n", reply.toString());
+        assertEquals("ERR AUTH\n", call("BAL"));
+    }
+
+    /**
+     * Tests that a retried deposit or withdrawal with a request id is answered without being applied again.
+     */
+    @Test
+    void testRequestIds() {
+        assertEquals("OK\n", call("LOGIN 1234567 abcdef"));
+        assertEquals("OK 7.50\n", call("WDR 2.50 #1001"));
+        assertEquals("OK 7.50\n", call("WDR 2.50 #1001"));
+        assertEquals("ERR FUNDS\n", call("WDR 50.00 #1002"));
+        assertEquals("ERR FUNDS\n", call("WDR 50.00 #1002"));
+        assertEquals("OK 8.50\n", call("DEP 1.00 #1003"));
+        assertEquals("OK 8.50\n", call("DEP 1.00 #1003"));
+        assertEquals("OK 9.50\n", call("DEP 1.00"));
+        assertEquals("ERR SYNTAX\n", call("DEP 1.00 #0"));
+        assertEquals("ERR SYNTAX\n", call("DEP 1.00 #x"));
+        assertEquals("ERR SYNTAX\n", call("DEP 1.00 1003"));
+        assertEquals("ERR REUSED\n", call("WDR 1.00 #1003"));
+        assertEquals("ERR REUSED\n", call("DEP 2.00 #1003"));
+        assertEquals("OK 9.50\n", call("BAL"));
+    }
+}